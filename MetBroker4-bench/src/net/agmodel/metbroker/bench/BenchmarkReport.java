@@ -0,0 +1,165 @@
+package net.agmodel.metbroker.bench;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files and reports the change in each score.<br>
+ * The benchmarks in this project are run with the JMH runner from the
+ * MetBroker4-bench directory, writing CSV results, and compared with a
+ * baseline recorded the same way:
+ *
+ * <pre>
+ * java -cp "bin:../MetBroker4/bin:/home/kiura/workspace/MetBroker4/lib/*" org.openjdk.jmh.Main -rf csv -rff current.csv
+ * java -cp bin net.agmodel.metbroker.bench.BenchmarkReport baseline.csv current.csv [threshold %]
+ * </pre>
+ *
+ * The lib directory is the one the jar entries in .classpath point to
+ * (javolution, jscience, jmh-core, jopt-simple and commons-math3); use the
+ * directory they are in on the machine running the benchmarks. The quotes
+ * keep the shell from expanding the wildcard.
+ *
+ * No baseline is kept in the repository. Scores depend on the machine and the
+ * benchmarks need the whole MetBroker library, so record baseline.csv with
+ * {@code -rff baseline.csv} in one run of all benchmarks on the machine used
+ * for the comparison, before making the change to be measured.
+ *
+ * A benchmark with parameters is matched on its name and parameter values.
+ * Throughput scores are better when higher, all other modes when lower.
+ * A benchmark is reported as a regression when it is worse than the baseline
+ * by more than the threshold (default 10%) and by more than the two score
+ * errors together, and the report then exits with status 1.
+ */
+public class BenchmarkReport {
+
+	/**
+	 * One row of a JMH CSV result file.
+	 */
+	static final class Result {
+		final String mode;
+		final double score;
+		final double error;
+		final String unit;
+
+		Result(String mode, double score, double error, String unit) {
+			this.mode = mode;
+			this.score = score;
+			this.error = error;
+			this.unit = unit;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: BenchmarkReport baseline.csv current.csv [threshold %]");
+			System.exit(2);
+		}
+		double threshold = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.10;
+		Map<String, Result> baseline = read(args[0]);
+		Map<String, Result> current = read(args[1]);
+
+		int regressions = 0;
+		System.out.println(String.format("%-72s %14s %14s %8s", "Benchmark", "Baseline",
+				"Current", "Change"));
+		for (Map.Entry<String, Result> e : current.entrySet()) {
+			Result now = e.getValue();
+			Result before = baseline.get(e.getKey());
+			if (before == null || !before.mode.equals(now.mode) || !before.unit.equals(now.unit)) {
+				System.out.println(String.format("%-72s %14s %14.3f %8s", e.getKey(), "-",
+						now.score, "new"));
+				continue;
+			}
+			boolean higherIsBetter = "thrpt".equals(now.mode);
+			double change = (now.score - before.score) / before.score;
+			double worse = higherIsBetter ? before.score - now.score : now.score - before.score;
+			boolean regressed = worse > before.score * threshold
+					&& worse > before.error + now.error;
+			if (regressed)
+				regressions++;
+			System.out.println(String.format("%-72s %14.3f %14.3f %+7.1f%%%s", e.getKey(),
+					before.score, now.score, change * 100, regressed ? "  REGRESSION" : ""));
+		}
+		for (String name : baseline.keySet()) {
+			if (!current.containsKey(name))
+				System.out.println(String.format("%-72s %14.3f %14s %8s", name,
+						baseline.get(name).score, "-", "removed"));
+		}
+		System.out.println(regressions + " regression(s) beyond "
+				+ Math.round(threshold * 100) + "%");
+		System.exit(regressions == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Reads a JMH CSV result file ({@code -rf csv}).
+	 * @param file the file name
+	 * @return results keyed by benchmark name and parameters, in file order
+	 */
+	static Map<String, Result> read(String file) throws IOException {
+		Map<String, Result> results = new LinkedHashMap<String, Result>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try {
+			List<String> header = null;
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() == 0)
+					continue;
+				List<String> fields = split(line);
+				if (header == null) {
+					header = fields;
+					continue;
+				}
+				StringBuilder name = new StringBuilder(fields.get(0));
+				for (int i = 7; i < fields.size() && i < header.size(); i++) {
+					if (fields.get(i).length() > 0)
+						name.append(i == 7 ? ':' : ',').append(header.get(i).replace("Param: ", ""))
+								.append('=').append(fields.get(i));
+				}
+				results.put(name.toString(), new Result(fields.get(1), number(fields.get(4)),
+						number(fields.get(5)), fields.get(6)));
+			}
+		} finally {
+			in.close();
+		}
+		return results;
+	}
+
+	private static double number(String s) {
+		if (s.length() == 0 || "NaN".equals(s))
+			return 0;
+		return Double.parseDouble(s);
+	}
+
+	/**
+	 * Splits one CSV line, removing the quotes JMH puts around every field.
+	 */
+	private static List<String> split(String line) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
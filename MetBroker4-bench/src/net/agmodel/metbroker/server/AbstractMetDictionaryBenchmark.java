@@ -0,0 +1,108 @@
+package net.agmodel.metbroker.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for MetDictionary.getWord() throughput, run by a subclass
+ * for each dictionary implementation.<br>
+ * A default and a Japanese dictionary of {@code words} entries are written
+ * to a temporary directory; the Japanese one holds only every other word so
+ * that half of the lookups fall back to the default bundle, as the station
+ * and region names do in practice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class AbstractMetDictionaryBenchmark {
+
+	@Param({ "1000" })
+	public int words;
+
+	private File directory;
+	private MetDictionary dictionary;
+	private String[] single;
+	private String[] page;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = File.createTempFile("dictionary", "");
+		directory.delete();
+		directory.mkdir();
+		Properties base = new Properties();
+		Properties ja = new Properties();
+		for (int i = 0; i < words; i++) {
+			base.setProperty("station." + i, "Station " + i);
+			if (i % 2 == 0)
+				ja.setProperty("station." + i, "観測地点" + i);
+		}
+		store(base, new File(directory, ResourceBundleDictionary.BASE_NAME + ".properties"));
+		store(ja, new File(directory, ResourceBundleDictionary.BASE_NAME + "_ja.properties"));
+
+		dictionary = createDictionary(directory);
+		dictionary.setLocale(Locale.JAPANESE);
+
+		single = new String[] { "station." + (words / 2 + 1) };
+		page = new String[50];
+		for (int i = 0; i < page.length; i++)
+			page[i] = "station." + (i * 7 % words);
+	}
+
+	/**
+	 * Creates the dictionary under test.
+	 * @param directory the directory holding dictionary*.properties
+	 */
+	protected abstract MetDictionary createDictionary(File directory) throws IOException;
+
+	private static void store(Properties p, File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			p.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		dictionary.UpdateForm();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++)
+				files[i].delete();
+		}
+		directory.delete();
+	}
+
+	@Benchmark
+	public String[] getWordSingle() {
+		return dictionary.getWord(single);
+	}
+
+	@Benchmark
+	public String[] getWordPage() {
+		return dictionary.getWord(page);
+	}
+}
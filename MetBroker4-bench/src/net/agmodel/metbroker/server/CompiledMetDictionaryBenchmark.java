@@ -0,0 +1,20 @@
+package net.agmodel.metbroker.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * The AbstractMetDictionaryBenchmark lookups against CompiledMetDictionary,
+ * for comparison with MetDictionaryBenchmark.
+ * There is no cacheTTL parameter: CompiledMetDictionary only stores the TTL,
+ * so every value would run the same code.
+ */
+public class CompiledMetDictionaryBenchmark extends AbstractMetDictionaryBenchmark {
+
+	protected MetDictionary createDictionary(File directory) throws IOException {
+		ClassLoader loader = new URLClassLoader(new URL[] { directory.toURI().toURL() }, null);
+		return new CompiledMetDictionary(ResourceBundleDictionary.BASE_NAME, loader);
+	}
+}
@@ -0,0 +1,26 @@
+package net.agmodel.metbroker.server;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * The AbstractMetDictionaryBenchmark lookups against ResourceBundleDictionary,
+ * with and without bundle caching.
+ */
+public class MetDictionaryBenchmark extends AbstractMetDictionaryBenchmark {
+
+	/**
+	 * Bundle cache TTL in milliseconds; -1 is TTL_DONT_CACHE, the
+	 * MetDictionary default.
+	 */
+	@Param({ "-1", "60000" })
+	public long cacheTTL;
+
+	protected MetDictionary createDictionary(File directory) throws IOException {
+		MetDictionary dictionary = new ResourceBundleDictionary(directory);
+		dictionary.setCacheTTL(cacheTTL);
+		return dictionary;
+	}
+}
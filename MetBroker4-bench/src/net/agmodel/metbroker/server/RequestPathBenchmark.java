@@ -0,0 +1,128 @@
+package net.agmodel.metbroker.server;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import net.agmodel.metbroker.server.cache.ResultCache;
+import net.agmodel.metbroker.server.cache.SingleFlight;
+import net.agmodel.metbroker.server.metrics.BrokerMetrics;
+import net.agmodel.metbroker_common.physical.Interval;
+import net.agmodel.metbroker_common.weatherData.BenchmarkRequest;
+import net.agmodel.metbroker_common.weatherData.MetDuration;
+import net.agmodel.metbroker_common.weatherData.MetElement;
+import net.agmodel.metbroker_common.weatherData.MetRequest;
+import net.agmodel.metbroker_common.weatherData.MetRequestKey;
+import net.agmodel.metbroker_common.weatherData.RequestPhase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the doRequestCache() path against a stub driver:
+ * request key, ResultCache lookup, single-flight driver call on a miss,
+ * cache store, phase timing and metrics.<br>
+ * The stub driver returns {@code rows} pre-built CSV rows after
+ * {@code driverMicros} of busy work, standing in for a remote database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestPathBenchmark {
+
+	private static final String DRIVER = "stub";
+	private static final String MISS_DRIVER = "stub-miss";
+
+	@Param({ "720" })
+	public int rows;
+
+	@Param({ "0", "50" })
+	public int driverMicros;
+
+	private ResultCache cache;
+	private SingleFlight<MetRequestKey, String[]> singleFlight;
+	private BrokerMetrics metrics;
+	private Interval interval;
+	private Set<MetElement> elements;
+	private String[] result;
+
+	@Setup
+	public void setUp() {
+		cache = new ResultCache(64L * 1024 * 1024, 4096);
+		singleFlight = new SingleFlight<MetRequestKey, String[]>();
+		metrics = new BrokerMetrics(cache, singleFlight);
+		long start = 1400000000000L;
+		interval = new Interval(new Date(start), new Date(start + 30 * 24 * 3600000L));
+		elements = new HashSet<MetElement>();
+		int n = 0;
+		for (MetElement m = MetElement.first(); m != null && n < 4; m = m.next(), n++)
+			elements.add(m);
+		result = new String[rows];
+		for (int i = 0; i < rows; i++)
+			result[i] = "2014-05-13T" + (i % 24) + ":00,12.5,3.2,0.0,71";
+		cache.put(DRIVER, request("hit").getKey(), result);
+	}
+
+	private MetRequest request(String station) {
+		return new BenchmarkRequest(station, interval, elements, MetDuration.HOURLY, Locale.JAPAN);
+	}
+
+	/**
+	 * Stands in for MetaDataRepositoryServer.doRequestCache().
+	 */
+	private String[] doRequestCache(MetRequest request, String driver) throws Exception {
+		metrics.requestStarted();
+		try {
+			request.setProcessingCommenced();
+			request.startPhase(RequestPhase.CACHE_LOOKUP);
+			MetRequestKey key = request.getKey();
+			String[] cached = cache.get(driver, key);
+			request.endPhase(RequestPhase.CACHE_LOOKUP);
+			if (cached != null)
+				return cached;
+			request.startPhase(RequestPhase.DRIVER_QUERY);
+			String[] fetched = singleFlight.execute(key, new Callable<String[]>() {
+				public String[] call() {
+					if (driverMicros > 0) {
+						long until = System.nanoTime() + driverMicros * 1000L;
+						while (System.nanoTime() < until)
+							;
+					}
+					return result.clone();
+				}
+			});
+			request.endPhase(RequestPhase.DRIVER_QUERY);
+			cache.put(driver, key, fetched);
+			return fetched;
+		} finally {
+			metrics.requestFinished(driver, request);
+		}
+	}
+
+	@Benchmark
+	public String[] cacheHit() throws Exception {
+		return doRequestCache(request("hit"), DRIVER);
+	}
+
+	@Benchmark
+	public String[] cacheMiss() throws Exception {
+		MetRequest request = request("miss");
+		cache.invalidate(MISS_DRIVER);
+		return doRequestCache(request, MISS_DRIVER);
+	}
+}
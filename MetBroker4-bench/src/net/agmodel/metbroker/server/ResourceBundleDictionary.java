@@ -0,0 +1,108 @@
+package net.agmodel.metbroker.server;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.ResourceBundle.Control;
+
+/**
+ * MetDictionary as described by its interface comments: every lookup goes
+ * through ResourceBundle.getBundle() with a Control whose TTL is cacheTTL,
+ * and the bundle chain is walked key by key.<br>
+ * Used as the baseline in the dictionary benchmarks.
+ */
+class ResourceBundleDictionary implements MetDictionary {
+
+	static final String BASE_NAME = "dictionary";
+
+	private final ClassLoader loader;
+	private Locale locale = Locale.getDefault();
+	private long cacheTTL = Control.TTL_DONT_CACHE;
+	private Control control;
+
+	/**
+	 * @param directory the directory holding dictionary*.properties
+	 */
+	ResourceBundleDictionary(File directory) throws MalformedURLException {
+		loader = new URLClassLoader(new URL[] { directory.toURI().toURL() }, null);
+		createControl();
+	}
+
+	private ResourceBundle bundle() {
+		return ResourceBundle.getBundle(BASE_NAME, locale, loader, control);
+	}
+
+	public String[] getWord(String[] data) {
+		ResourceBundle bundle = bundle();
+		String[] words = new String[data.length];
+		for (int i = 0; i < data.length; i++) {
+			try {
+				words[i] = bundle.getString(data[i]);
+			} catch (MissingResourceException e) {
+				words[i] = data[i];
+			}
+		}
+		return words;
+	}
+
+	public HashMap<String, String> getWordMap() {
+		ResourceBundle bundle = bundle();
+		HashMap<String, String> map = new HashMap<String, String>();
+		for (Enumeration<String> e = bundle.getKeys(); e.hasMoreElements();) {
+			String key = e.nextElement();
+			map.put(key, bundle.getString(key));
+		}
+		return map;
+	}
+
+	public void setCacheTTL(long ttl) {
+		cacheTTL = ttl;
+		createControl();
+	}
+
+	public long getCacheTTL() {
+		return cacheTTL;
+	}
+
+	public void setLocale(Locale locale) {
+		this.locale = locale;
+	}
+
+	public Locale getLocale() {
+		return locale;
+	}
+
+	public void createControl() {
+		final long ttl = cacheTTL;
+		control = new Control() {
+			public List<String> getFormats(String baseName) {
+				return FORMAT_PROPERTIES;
+			}
+
+			public long getTimeToLive(String baseName, Locale locale) {
+				return ttl;
+			}
+		};
+	}
+
+	public Boolean isUpdateFrom(String[] data) {
+		ResourceBundle bundle = bundle();
+		for (int i = 0; i < data.length; i++) {
+			if (!bundle.containsKey(data[i]))
+				return Boolean.TRUE;
+		}
+		return Boolean.FALSE;
+	}
+
+	public int UpdateForm() {
+		ResourceBundle.clearCache(loader);
+		return 0;
+	}
+}
@@ -0,0 +1,77 @@
+package net.agmodel.metbroker_common.physical;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+import org.jscience.physics.amount.Amount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks comparing Length arithmetic and unit conversion with the
+ * JScience Amount operations Length used to be built on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LengthBenchmark {
+
+	private static final Unit<javax.measure.quantity.Length> MM = SI.MILLI(SI.METRE);
+
+	private Amount<javax.measure.quantity.Length> amountX;
+	private Amount<javax.measure.quantity.Length> amountY;
+	private Length lengthX;
+	private Length lengthY;
+
+	@Setup
+	public void setUp() {
+		amountX = Amount.valueOf(12.5, MM);
+		amountY = Amount.valueOf(3.0, NonSI.INCH);
+		lengthX = new Length(12.5, MM);
+		lengthY = new Length(3.0, NonSI.INCH);
+	}
+
+	@Benchmark
+	public double amountAdd() {
+		return amountX.plus(amountY).doubleValue(SI.METRE);
+	}
+
+	@Benchmark
+	public double lengthAdd() {
+		return lengthX.add(lengthY).getValue(SI.METRE);
+	}
+
+	@Benchmark
+	public double amountMultiply() {
+		return amountX.times(1.0001).divide(1.0001).doubleValue(SI.METRE);
+	}
+
+	@Benchmark
+	public double lengthMultiply() {
+		return lengthX.multiply(1.0001).divide(1.0001).getValue(SI.METRE);
+	}
+
+	@Benchmark
+	public double amountConvert() {
+		return amountX.doubleValue(NonSI.INCH);
+	}
+
+	@Benchmark
+	public double lengthConvert() {
+		return lengthX.getValue(NonSI.INCH);
+	}
+}
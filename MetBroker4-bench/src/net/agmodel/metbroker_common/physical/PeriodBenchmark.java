@@ -0,0 +1,66 @@
+package net.agmodel.metbroker_common.physical;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for Period construction and comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeriodBenchmark {
+
+	private static final long HOUR = 3600000L;
+
+	private long start;
+	private Period a;
+	private Period b;
+	private Period c;
+
+	@Setup
+	public void setUp() {
+		start = 1400000000000L;
+		a = new Period(start, start + 24 * HOUR);
+		b = new Period(start + 12 * HOUR, start + 36 * HOUR);
+		c = new Period(start + 48 * HOUR, start + 72 * HOUR);
+	}
+
+	@Benchmark
+	public Period construct() {
+		return new Period(start, start + 24 * HOUR);
+	}
+
+	@Benchmark
+	public Object constructAndCalendar() {
+		return new Period(start, start + 24 * HOUR).getcStart();
+	}
+
+	@Benchmark
+	public boolean coincidesWithOverlapping() {
+		return a.coincidesWith(b);
+	}
+
+	@Benchmark
+	public boolean coincidesWithDisjoint() {
+		return a.coincidesWith(c);
+	}
+
+	@Benchmark
+	public int compareTo() {
+		return a.compareTo(b);
+	}
+}
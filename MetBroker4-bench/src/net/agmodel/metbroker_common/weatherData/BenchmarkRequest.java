@@ -0,0 +1,25 @@
+package net.agmodel.metbroker_common.weatherData;
+
+import java.util.Locale;
+import java.util.Set;
+
+import net.agmodel.metbroker_common.physical.Interval;
+
+/**
+ * A minimal concrete MetRequest for benchmarks, located by a station id.
+ */
+public class BenchmarkRequest extends MetRequest {
+  private static final long serialVersionUID = 1L;
+
+  private final String station;
+
+  public BenchmarkRequest(String station, Interval dateExtremes, Set requestedElements,
+      MetDuration resolution, Locale locale) {
+    super(dateExtremes, requestedElements, resolution, true, false, locale);
+    this.station = station;
+  }
+
+  protected Object getLocationKey() {
+    return station;
+  }
+}
@@ -0,0 +1,62 @@
+package net.agmodel.metbroker_common.weatherData;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.agmodel.metbroker_common.physical.Interval;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for MetRequest construction, getRequested and getKey.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetRequestBenchmark {
+
+  private Interval interval;
+  private Set<MetElement> elements;
+  private MetRequest request;
+
+  @Setup
+  public void setUp() {
+    long start = 1400000000000L;
+    interval = new Interval(new Date(start), new Date(start + 30 * 24 * 3600000L));
+    elements = new HashSet<MetElement>();
+    int n = 0;
+    for (MetElement m = MetElement.first(); m != null && n < 6; m = m.next(), n++)
+      elements.add(m);
+    request = new BenchmarkRequest("47662", interval, elements, MetDuration.HOURLY, Locale.JAPAN);
+  }
+
+  @Benchmark
+  public MetRequest construct() {
+    return new BenchmarkRequest("47662", interval, elements, MetDuration.HOURLY, Locale.JAPAN);
+  }
+
+  @Benchmark
+  public MetElement[] getRequested() {
+    return request.getRequested();
+  }
+
+  @Benchmark
+  public MetRequestKey getKey() {
+    return request.getKey();
+  }
+}
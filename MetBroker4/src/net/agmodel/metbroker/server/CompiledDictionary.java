@@ -0,0 +1,313 @@
+/**
+ * CompiledDictionary
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.Properties;
+import java.util.ResourceBundle.Control;
+
+/**
+ * 1つのロケールの用語集を読み込んで固めたもの。
+ * <br>
+ * ResourceBundleは用語を引くたびにdictionary_ja_JP→dictionary_ja→dictionaryと親のバンドルを辿るが、
+ * このクラスは作成時にその順で上書きした1つのMapにしておくので、用語の取得はハッシュ表の1回の検索で済む。
+ * 作成後は変更しないので、ロックを取らずに複数のスレッドから参照できる。
+ * 用語集が更新された場合は新しいインスタンスを作成して差し替える。
+ * <br>
+ * propertiesファイルの読み込みはPropertyResourceBundleと同じくProperties.load(InputStream)で行う。
+ *
+ * @see CompiledMetDictionary
+ */
+public final class CompiledDictionary {
+
+	private final String baseName;
+	private final Locale locale;
+	private final Map<String, String> words;
+	private final ClassLoader loader;
+	private final String[] resources;
+	private final URL[] urls;
+	private final long[] lastModified;
+	private final long compiledAt;
+
+	private CompiledDictionary(String baseName, Locale locale, Map<String, String> words,
+			ClassLoader loader, String[] resources, URL[] urls, long[] lastModified) {
+		this.baseName = baseName;
+		this.locale = locale;
+		this.words = Collections.unmodifiableMap(words);
+		this.loader = loader;
+		this.resources = resources;
+		this.urls = urls;
+		this.lastModified = lastModified;
+		this.compiledAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * 用語集を読み込む。
+	 * control.getCandidateLocales()の順に親のバンドルまで読み込み、子の用語で上書きする。
+	 * ロケール固有のファイルが1つもない場合は、ResourceBundle.getBundle()と同じく
+	 * control.getFallbackLocale()のロケールで読み直す。localeがLocale.ROOTの場合は読み直さない。
+	 * @param baseName 用語集の基底名。通常は"dictionary"
+	 * @param locale ロケール
+	 * @param loader propertiesファイルを読み込むクラスローダ
+	 * @param control 候補ロケールを決めるControl
+	 * @return 読み込んだ用語集
+	 * @throws IOException ファイルの読み込みに失敗した場合
+	 * @throws MissingResourceException 用語集のファイルが1つもない場合
+	 */
+	public static CompiledDictionary compile(String baseName, Locale locale, ClassLoader loader,
+			Control control) throws IOException {
+		List<Locale> own = control.getCandidateLocales(baseName, locale);
+		List<Locale> candidates = candidates(baseName, locale, own, loader, control);
+		List<String> resources = new ArrayList<String>();
+		List<URL> urls = new ArrayList<URL>();
+		List<Long> modified = new ArrayList<Long>();
+		if (candidates != own) {
+			// remember the missing files, so that creating one is noticed
+			for (Locale l : own) {
+				if (!Locale.ROOT.equals(l)) {
+					resources.add(resourceName(baseName, l, control));
+					urls.add(null);
+					modified.add(Long.valueOf(lastModified(null)));
+				}
+			}
+		}
+
+		Map<String, String> words = new HashMap<String, String>();
+		boolean found = false;
+		// the root bundle first, so that more specific locales overwrite it
+		for (int i = candidates.size() - 1; i >= 0; i--) {
+			String resource = resourceName(baseName, candidates.get(i), control);
+			URL url = loader.getResource(resource);
+			resources.add(resource);
+			urls.add(url);
+			// taken before reading, so that a change made while reading makes the dictionary stale
+			modified.add(Long.valueOf(lastModified(url)));
+			if (url == null)
+				continue;
+			found = true;
+			Properties p = new Properties();
+			InputStream in = url.openStream();
+			try {
+				p.load(in);
+			} finally {
+				in.close();
+			}
+			for (String key : p.stringPropertyNames())
+				words.put(key, p.getProperty(key));
+		}
+		if (!found)
+			throw new MissingResourceException("Can't find bundle for base name " + baseName
+					+ ", locale " + locale, baseName + "_" + locale, "");
+
+		long[] times = new long[modified.size()];
+		for (int i = 0; i < times.length; i++)
+			times[i] = modified.get(i).longValue();
+		return new CompiledDictionary(baseName, locale, words, loader,
+				resources.toArray(new String[resources.size()]),
+				urls.toArray(new URL[urls.size()]), times);
+	}
+
+	/**
+	 * compile()で読み込むpropertiesファイルのうち、存在するもののリソース名を読み込む順(親から)に返す。
+	 * ファイルの有無を調べるだけで、読み込みは行わない。
+	 * 返す一覧が同じロケールは、同じ用語集になる。
+	 * @param baseName 用語集の基底名。通常は"dictionary"
+	 * @param locale ロケール
+	 * @param loader propertiesファイルを読み込むクラスローダ
+	 * @param control 候補ロケールを決めるControl
+	 * @return リソース名。用語集のファイルが1つもない場合は空
+	 */
+	public static List<String> resolve(String baseName, Locale locale, ClassLoader loader,
+			Control control) {
+		List<Locale> candidates = candidates(baseName, locale,
+				control.getCandidateLocales(baseName, locale), loader, control);
+		List<String> result = new ArrayList<String>(candidates.size());
+		for (int i = candidates.size() - 1; i >= 0; i--) {
+			String resource = resourceName(baseName, candidates.get(i), control);
+			if (loader.getResource(resource) != null)
+				result.add(resource);
+		}
+		return result;
+	}
+
+	/**
+	 * 読み込む候補ロケールを返す。ロケール固有のファイルが1つもない場合は代替ロケールの候補を返す。
+	 * @return 代替ロケールを使わない場合はown
+	 */
+	private static List<Locale> candidates(String baseName, Locale locale, List<Locale> own,
+			ClassLoader loader, Control control) {
+		if (!Locale.ROOT.equals(locale) && !hasSpecific(baseName, own, loader, control)) {
+			Locale fallback = control.getFallbackLocale(baseName, locale);
+			if (fallback != null && !fallback.equals(locale))
+				return control.getCandidateLocales(baseName, fallback);
+		}
+		return own;
+	}
+
+	private static boolean hasSpecific(String baseName, List<Locale> candidates,
+			ClassLoader loader, Control control) {
+		for (Locale l : candidates) {
+			if (!Locale.ROOT.equals(l) && loader.getResource(resourceName(baseName, l, control)) != null)
+				return true;
+		}
+		return false;
+	}
+
+	private static String resourceName(String baseName, Locale locale, Control control) {
+		return control.toResourceName(control.toBundleName(baseName, locale), "properties");
+	}
+
+	private static long lastModified(URL url) {
+		if (url == null)
+			return 0;
+		if (!"file".equals(url.getProtocol()))
+			return -1;
+		try {
+			return new File(url.toURI()).lastModified();
+		} catch (URISyntaxException e) {
+			return -1;
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * 読み込んだファイルが作成後に追加・変更・削除されたかを返す。
+	 * jarの中のファイルなど、更新時刻が取れないものは変更されていないものとする。
+	 * @return 読み直しが必要な場合はtrue
+	 */
+	public boolean isStale() {
+		for (int i = 0; i < resources.length; i++) {
+			URL url = loader.getResource(resources[i]);
+			if (url == null ? urls[i] != null : !url.equals(urls[i]))
+				return true;
+			if (url != null && lastModified[i] >= 0 && lastModified(url) != lastModified[i])
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 用語を返す。
+	 * @param key 用語のキー
+	 * @return 用語。用語集にない場合はkeyをそのまま返す
+	 */
+	public String getWord(String key) {
+		String word = words.get(key);
+		return word == null ? key : word;
+	}
+
+	/**
+	 * 用語をまとめて返す。
+	 * @param keys 用語のキー
+	 * @return keysと同じ順の用語。用語集にないものはキーをそのまま返す
+	 */
+	public String[] getWord(String[] keys) {
+		String[] result = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			String word = words.get(keys[i]);
+			result[i] = word == null ? keys[i] : word;
+		}
+		return result;
+	}
+
+	/**
+	 * 用語集にキーがあるかを返す。
+	 * @param key 用語のキー
+	 * @return ある場合はtrue
+	 */
+	public boolean containsKey(String key) {
+		return words.containsKey(key);
+	}
+
+	/**
+	 * 全ての用語を返す。
+	 * 返すMapは変更できない共有のビューで、呼出しごとに複製はしない。
+	 * @return キーと用語のMap
+	 */
+	public Map<String, String> getWordMap() {
+		return words;
+	}
+
+	/**
+	 * 用語の数を返す。
+	 * @return 用語の数
+	 */
+	public int size() {
+		return words.size();
+	}
+
+	/**
+	 * 用語集の基底名を返す。
+	 * @return 基底名
+	 */
+	public String getBaseName() {
+		return baseName;
+	}
+
+	/**
+	 * ロケールを返す。
+	 * @return ロケール
+	 */
+	public Locale getLocale() {
+		return locale;
+	}
+
+	/**
+	 * 読み込んだpropertiesファイルのリソース名を親から順に返す。
+	 * 存在しなかった候補も含む。代替ロケールで読み込んだ場合は、元のロケールの候補が先頭に入る。
+	 * @return リソース名
+	 */
+	public String[] getResources() {
+		return resources.clone();
+	}
+
+	/**
+	 * このファイル名のpropertiesファイルが追加・変更・削除された場合に、読み直しが必要かを返す。
+	 * @param fileName ディレクトリを含まないファイル名。例えばdictionary_ja.properties
+	 * @return 読み込んだ、または読み込む候補だったファイルの場合はtrue
+	 */
+	public boolean dependsOn(String fileName) {
+		for (int i = 0; i < resources.length; i++) {
+			String r = resources[i];
+			if (r.equals(fileName) || r.endsWith("/" + fileName))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 作成した時刻を返す。
+	 * @return 作成時刻(エポックミリ秒)
+	 */
+	public long getCompiledAt() {
+		return compiledAt;
+	}
+}
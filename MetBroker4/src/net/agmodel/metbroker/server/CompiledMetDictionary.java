@@ -0,0 +1,324 @@
+/**
+ * CompiledMetDictionary
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle.Control;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ロケールごとにCompiledDictionaryを保持するMetDictionary。
+ * <br>
+ * 各ロケールの用語集は初めて使われたときに読み込み、AtomicReferenceで公開する。
+ * 用語の取得はその時点のCompiledDictionaryを参照するだけなので、ロックを取らず、
+ * ResourceBundleのキャッシュ検索や親バンドルの探索も行わない。
+ * 読み直しは新しいCompiledDictionaryを作成してから差し替えるので、
+ * 描画中のページは最初に取得したCompiledDictionaryを使い続けられる。
+ * <br>
+ * 用語集は実際に読み込むpropertiesファイルの組(CompiledDictionary.resolve())ごとに1つだけ保持する。
+ * ja_JPとja_JP_xxのようにファイルの組が同じロケールは同じ用語集を共有するので、
+ * クライアントが様々なロケールを指定しても、保持する用語集の数はファイルの組の数を超えない。
+ * ロケールとファイルの組の対応は{@link #MAX_RESOLVED_LOCALES}件まで覚えておくので、用語の取得は
+ * 通常ハッシュの検索1回で済む。それを超えた新しいロケールはファイルの有無を調べずに、覚えている言語だけの
+ * ロケール(jaなど)の用語集を使い、それもなければLocale.ROOTの用語集を使う。
+ * 読み込みに失敗した場合はその失敗を覚えておき、ファイルが変更されるまでは読み直さずに同じ例外を投げる。
+ * <br>
+ * 用語集の読み直しはDictionaryWatcherがファイルの変更を検知して、そのファイルを使うロケールだけに行う。
+ * キャッシュのTTLは読み直しの時期には使用しない。
+ *
+ * @see CompiledDictionary
+ * @see DictionaryWatcher
+ */
+public class CompiledMetDictionary implements MetDictionary {
+
+	/** 用語集の基底名 */
+	public static final String BASE_NAME = "dictionary";
+
+	/** ロケールとファイルの組の対応を覚えておく最大数 */
+	public static final int MAX_RESOLVED_LOCALES = 1024;
+
+	/**
+	 * 1つのファイルの組の用語集。
+	 */
+	private static final class Entry {
+		/** 最初にこの組を使ったロケール。読み直しに使用する */
+		final Locale locale;
+		/** 読み込むファイルのリソース名 */
+		final List<String> resources;
+		final AtomicReference<CompiledDictionary> compiled = new AtomicReference<CompiledDictionary>();
+		/** 読み込みに失敗した場合の例外。読み直しに成功するとnullに戻す */
+		volatile RuntimeException failure;
+		/** entriesから削除済みの場合はtrue */
+		volatile boolean removed;
+
+		Entry(Locale locale, List<String> resources) {
+			this.locale = locale;
+			this.resources = resources;
+		}
+
+		boolean dependsOn(String fileName) {
+			for (String r : resources) {
+				if (r.equals(fileName) || r.endsWith("/" + fileName))
+					return true;
+			}
+			CompiledDictionary d = compiled.get();
+			return d != null && d.dependsOn(fileName);
+		}
+	}
+
+	private final String baseName;
+	private final ClassLoader loader;
+	private final ConcurrentMap<List<String>, Entry> entries = new ConcurrentHashMap<List<String>, Entry>();
+	private final ConcurrentMap<Locale, Entry> resolved = new ConcurrentHashMap<Locale, Entry>();
+	private volatile Locale locale = Locale.getDefault();
+	private volatile long cacheTTL = MetDictionary.cacheTTL;
+	private volatile Control control;
+
+	/**
+	 * クラスパス上のdictionary*.propertiesを使用する。
+	 */
+	public CompiledMetDictionary() {
+		this(BASE_NAME, CompiledMetDictionary.class.getClassLoader());
+	}
+
+	/**
+	 * @param baseName 用語集の基底名
+	 * @param loader propertiesファイルを読み込むクラスローダ
+	 */
+	public CompiledMetDictionary(String baseName, ClassLoader loader) {
+		this.baseName = baseName;
+		this.loader = loader;
+		createControl();
+	}
+
+	/**
+	 * ロケールが使うファイルの組の用語集を返す。なければ作成する。
+	 */
+	private Entry entry(Locale locale) {
+		Entry e = resolved.get(locale);
+		if (e != null && !e.removed)
+			return e;
+		if (resolved.size() >= MAX_RESOLVED_LOCALES && !Locale.ROOT.equals(locale)) {
+			// a client sending ever new locales must not make each lookup search the class path
+			e = resolved.get(new Locale(locale.getLanguage()));
+			return e != null && !e.removed ? e : entry(Locale.ROOT);
+		}
+		List<String> resources = CompiledDictionary.resolve(baseName, locale, loader, control);
+		e = entries.get(resources);
+		if (e == null) {
+			Entry created = new Entry(locale, resources);
+			e = entries.putIfAbsent(resources, created);
+			if (e == null)
+				e = created;
+		}
+		resolved.put(locale, e);
+		return e;
+	}
+
+	/**
+	 * ロケールの用語集を返す。
+	 * 1つのページを描画する間はここで取得したものを使うと、途中で読み直されても用語が混在しない。
+	 * @param locale ロケール
+	 * @return 用語集
+	 * @throws MissingResourceException 用語集のファイルがない、または読み込めない場合。
+	 * 失敗はファイルが変更されるまで覚えておき、同じ例外を投げる
+	 */
+	public CompiledDictionary getCompiled(Locale locale) {
+		Entry e = entry(locale);
+		CompiledDictionary d = e.compiled.get();
+		if (d != null)
+			return d;
+		synchronized (e) {
+			d = e.compiled.get();
+			if (d != null)
+				return d;
+			if (e.failure != null)
+				throw e.failure;
+			try {
+				d = compile(e.locale);
+			} catch (RuntimeException x) {
+				// a missing or malformed file stays broken until the watcher sees it change
+				e.failure = x;
+				throw x;
+			}
+			e.compiled.set(d);
+			return d;
+		}
+	}
+
+	private CompiledDictionary compile(Locale locale) {
+		try {
+			return CompiledDictionary.compile(baseName, locale, loader, control);
+		} catch (IOException e) {
+			MissingResourceException m = new MissingResourceException("Can't read bundle for base name "
+					+ baseName + ", locale " + locale, baseName + "_" + locale, "");
+			m.initCause(e);
+			throw m;
+		}
+	}
+
+	/**
+	 * ロケールの用語集を読み直して差し替える。
+	 * 同じファイルの組を使う全てのロケールに反映される。他の組の用語集はそのまま使い続ける。
+	 * 成功した場合は、覚えていた読み込みの失敗も消す。
+	 * 読み込みと差し替えは同じ組ごとに1つずつ行うので、DictionaryWatcherとUpdateForm()が同時に読み直しても、
+	 * 後から読み込んだ用語集が残る。用語の取得は待たされない。
+	 * @param locale ロケール
+	 * @return 読み直した用語集
+	 * @throws IOException ファイルの読み込みに失敗した場合。用語集は差し替えない
+	 */
+	public CompiledDictionary reload(Locale locale) throws IOException {
+		Entry e = entry(locale);
+		synchronized (e) {
+			CompiledDictionary d = CompiledDictionary.compile(baseName, e.locale, loader, control);
+			e.compiled.set(d);
+			e.failure = null;
+			return d;
+		}
+	}
+
+	/**
+	 * ロケールとファイルの組の対応を調べ直す。
+	 * 用語集のファイルが追加・削除された場合にDictionaryWatcherが呼び出す。
+	 * ファイルの組が変わった用語集は破棄し、次に使われたときに新しい組で読み込む。
+	 */
+	public void resolveAgain() {
+		for (Map.Entry<List<String>, Entry> e : entries.entrySet()) {
+			Entry entry = e.getValue();
+			if (!CompiledDictionary.resolve(baseName, entry.locale, loader, control).equals(e.getKey())
+					&& entries.remove(e.getKey(), entry))
+				entry.removed = true;
+		}
+		resolved.clear();
+	}
+
+	/**
+	 * 読み込み済みのロケールの用語集を返す。getCompiled()と異なり、読み込まれていない場合も読み込まない。
+	 * @param locale ロケール
+	 * @return 用語集。読み込まれていない場合はnull
+	 */
+	public CompiledDictionary getLoaded(Locale locale) {
+		Entry e = resolved.get(locale);
+		if (e == null || e.removed)
+			e = entries.get(CompiledDictionary.resolve(baseName, locale, loader, control));
+		return e == null ? null : e.compiled.get();
+	}
+
+	/**
+	 * 読み込み済みの用語集のロケールを返す。ファイルの組ごとに、最初にその組を使ったロケールを返す。
+	 * 読み込みに失敗した組のロケールも含む。
+	 * @return ロケール
+	 */
+	public Locale[] getLoadedLocales() {
+		List<Locale> result = new ArrayList<Locale>();
+		for (Entry e : entries.values())
+			result.add(e.locale);
+		return result.toArray(new Locale[result.size()]);
+	}
+
+	/**
+	 * 読み込み済みのロケールのうち、このファイルが変更された場合に読み直しが必要なものを返す。
+	 * @param fileName ディレクトリを含まないファイル名。例えばdictionary_ja.properties
+	 * @return ロケール
+	 * @see CompiledDictionary#dependsOn(String)
+	 */
+	public List<Locale> getLocalesDependingOn(String fileName) {
+		List<Locale> result = new ArrayList<Locale>();
+		for (Entry e : entries.values()) {
+			if (e.dependsOn(fileName))
+				result.add(e.locale);
+		}
+		return result;
+	}
+
+	public String[] getWord(String[] data) {
+		return getCompiled(locale).getWord(data);
+	}
+
+	public Map<String, String> getWordMap() {
+		return getCompiled(locale).getWordMap();
+	}
+
+	/**
+	 * キャッシュのTTLを設定する。
+	 * 値は保持するだけで、用語集の読み直しには影響しない。
+	 */
+	public void setCacheTTL(long ttl) {
+		cacheTTL = ttl;
+	}
+
+	public long getCacheTTL() {
+		return cacheTTL;
+	}
+
+	public void setLocale(Locale locale) {
+		this.locale = locale;
+	}
+
+	public Locale getLocale() {
+		return locale;
+	}
+
+	/**
+	 * 候補ロケールを決めるControlを作成する。propertiesファイルだけを対象とする。
+	 */
+	public void createControl() {
+		control = Control.getControl(Control.FORMAT_PROPERTIES);
+	}
+
+	/**
+	 * 現在のロケールの用語集のファイルが変更されたか、dataに用語集にないキーがあるかを返す。
+	 */
+	public Boolean isUpdateFrom(String[] data) {
+		CompiledDictionary d = getCompiled(locale);
+		if (d.isStale())
+			return Boolean.TRUE;
+		for (int i = 0; i < data.length; i++) {
+			if (!d.containsKey(data[i]))
+				return Boolean.TRUE;
+		}
+		return Boolean.FALSE;
+	}
+
+	/**
+	 * 読み込み済みの全てのロケールの用語集を読み直して差し替える。
+	 * ResourceBundle.clearCache()は呼び出さないので、読み直している間も古い用語集で用語を取得できる。
+	 * 読み直せなかったロケールは古い用語集を使い続ける。
+	 * @return 読み直したロケールの数
+	 */
+	public int UpdateForm() {
+		int reloaded = 0;
+		for (Locale l : getLoadedLocales()) {
+			try {
+				reload(l);
+				reloaded++;
+			} catch (IOException | MissingResourceException e) {
+				// the previous words stay in place
+			}
+		}
+		return reloaded;
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ * DictionaryWatcher
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 用語集のディレクトリをWatchServiceで監視し、変更されたpropertiesファイルを使うロケールだけを読み直す。
+ * <br>
+ * dictionary_ja.propertiesが変更された場合はjaとja_JPなど、そのファイルを親に持つ読み込み済みのロケールだけを
+ * CompiledMetDictionary.reload()で読み直して差し替える。dictionary.propertiesの変更は全てのロケールに影響する。
+ * ファイルが追加・削除された場合に備えて、先にCompiledMetDictionary.resolveAgain()でロケールが使うファイルを調べ直す。
+ * 読み込まれていないロケールは、初めて使われたときに新しいファイルから読み込まれる。
+ * <br>
+ * エディタの保存では1つのファイルに対して複数のイベントが届くので、
+ * 最後のイベントから{@link #QUIET_PERIOD}ミリ秒待ってからまとめて読み直す。
+ * 読み直しは監視スレッドで行い、用語の取得は読み直しが終わるまで古い用語集で続けられる。
+ * 読み直しに失敗した場合は古い用語集を使い続け、次の変更で再度読み直す。
+ * ファイルの書式の誤りなど、読み直しで発生したRuntimeExceptionも失敗として数え、監視は続ける。
+ * <br>
+ * ディレクトリが削除されるなどして監視が終了した場合はisRunning()がfalseになる。
+ * その後の変更は読み直されないので、start()からやり直す必要がある。
+ *
+ * @see CompiledMetDictionary
+ */
+public class DictionaryWatcher implements Closeable {
+
+	/** 最後のイベントから読み直しまでの待ち時間(ミリ秒) */
+	public static final long QUIET_PERIOD = 200;
+
+	private final CompiledMetDictionary dictionary;
+	private final Path directory;
+	private final ExecutorService executor;
+	private final LongAdder reloaded = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private volatile WatchService watcher;
+	private volatile boolean running;
+
+	/**
+	 * @param dictionary 読み直す用語集
+	 * @param directory propertiesファイルのあるディレクトリ
+	 * @param executor 監視を実行するExecutorService。停止はこのクラスでは行わない
+	 */
+	public DictionaryWatcher(CompiledMetDictionary dictionary, File directory,
+			ExecutorService executor) {
+		this.dictionary = dictionary;
+		this.directory = directory.toPath();
+		this.executor = executor;
+	}
+
+	/**
+	 * 監視を開始する。監視が終了していた場合は、新しく監視をやり直す。
+	 * @throws IOException ディレクトリを監視できない場合
+	 * @throws IllegalStateException 監視中の場合
+	 */
+	public synchronized void start() throws IOException {
+		if (running)
+			throw new IllegalStateException("DictionaryWatcher.start called twice for " + directory);
+		if (watcher != null)
+			watcher.close();
+		final WatchService w = FileSystems.getDefault().newWatchService();
+		directory.register(w, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		watcher = w;
+		running = true;
+		executor.execute(new Runnable() {
+			public void run() {
+				watch(w);
+			}
+		});
+	}
+
+	private void watch(WatchService w) {
+		Set<String> changed = new LinkedHashSet<String>();
+		try {
+			while (true) {
+				WatchKey key = changed.isEmpty() ? w.take() : w.poll(QUIET_PERIOD,
+						TimeUnit.MILLISECONDS);
+				if (key == null) {
+					reload(changed);
+					changed.clear();
+					continue;
+				}
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						// events were lost; every loaded locale may be out of date
+						dictionary.resolveAgain();
+						for (Locale l : dictionary.getLoadedLocales())
+							reload(l);
+						continue;
+					}
+					String name = event.context().toString();
+					if (name.endsWith(".properties"))
+						changed.add(name);
+				}
+				if (!key.reset()) {
+					// the directory can no longer be watched, e.g. it was deleted
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// close() was called
+		} finally {
+			// a watch restarted after close() must not be reported as stopped
+			synchronized (this) {
+				if (watcher == w)
+					running = false;
+			}
+		}
+	}
+
+	private void reload(Set<String> fileNames) {
+		// a created or deleted file changes which files a locale uses
+		dictionary.resolveAgain();
+		Set<Locale> locales = new LinkedHashSet<Locale>();
+		for (String name : fileNames)
+			locales.addAll(dictionary.getLocalesDependingOn(name));
+		for (Locale l : locales)
+			reload(l);
+	}
+
+	private void reload(Locale locale) {
+		try {
+			dictionary.reload(locale);
+			reloaded.increment();
+		} catch (IOException | RuntimeException e) {
+			// the previous words stay in place; a malformed file, e.g. a broken unicode escape
+			// rejected by Properties.load, must not end the watch
+			failed.increment();
+		}
+	}
+
+	/**
+	 * ロケールの用語集を読み直した回数を返す。
+	 * @return 読み直した回数
+	 */
+	public long getReloadCount() {
+		return reloaded.sum();
+	}
+
+	/**
+	 * 読み直しに失敗した回数を返す。
+	 * @return 失敗した回数
+	 */
+	public long getFailureCount() {
+		return failed.sum();
+	}
+
+	/**
+	 * 監視中かどうかを返す。
+	 * @return 監視中の場合はtrue。開始前、close()の後、監視できなくなった場合はfalse
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * 監視を終了する。
+	 */
+	public synchronized void close() throws IOException {
+		WatchService w = watcher;
+		running = false;
+		if (w != null)
+			w.close();
+	}
+}
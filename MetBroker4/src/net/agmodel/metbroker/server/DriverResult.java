@@ -0,0 +1,108 @@
+/**
+ * DriverResult
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server;
+
+/**
+ * ドライバ1つ分の処理結果。
+ * 
+ * @see RefreshReport
+ */
+public class DriverResult {
+
+	/**
+	 * 処理結果の状態。
+	 */
+	public enum Status {
+		/** 処理が正常に終了した */
+		SUCCEEDED,
+		/** 処理が例外で終了した */
+		FAILED,
+		/** 期限までに処理が終わらなかった */
+		TIMED_OUT,
+		/** 同じドライバの処理が実行中のため、期限までに開始できなかった */
+		REJECTED
+	}
+
+	private final String driver;
+	private final Status status;
+	private final int code;
+	private final long elapsedMillis;
+	private final Throwable error;
+
+	/**
+	 * @param driver ドライバ名
+	 * @param status 状態
+	 * @param code DriverTask.run()の戻り値。SUCCEEDED以外では0
+	 * @param elapsedMillis 処理時間。単位はミリ秒
+	 * @param error FAILEDの場合の例外。それ以外ではnull
+	 */
+	public DriverResult(String driver, Status status, int code, long elapsedMillis, Throwable error) {
+		this.driver = driver;
+		this.status = status;
+		this.code = code;
+		this.elapsedMillis = elapsedMillis;
+		this.error = error;
+	}
+
+	/**
+	 * ドライバ名を返す。
+	 * @return ドライバ名
+	 */
+	public String getDriver() {
+		return driver;
+	}
+
+	/**
+	 * 状態を返す。
+	 * @return 状態
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * DriverTask.run()の戻り値を返す。
+	 * @return 実行結果。SUCCEEDED以外では0
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * 処理時間を返す。
+	 * @return 処理時間。単位はミリ秒
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * 処理が失敗した原因を返す。
+	 * ユーザクライアントには表示しないように留意する。
+	 * @return 例外。FAILED以外ではnull
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	public String toString() {
+		return driver + "\t" + status + "\t" + code + "\t" + elapsedMillis + "ms"
+				+ (error == null ? "" : "\t" + error);
+	}
+}
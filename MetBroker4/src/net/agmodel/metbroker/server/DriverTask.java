@@ -0,0 +1,38 @@
+/**
+ * DriverTask
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server;
+
+/**
+ * ドライバ1つ分の処理。
+ * ParallelRefresherで全ドライバに対して並行に実行する処理を表す。
+ * 例えばMetaDataRepositoryServer.reloadMetaData(String)やupdateCache(String)を呼び出す。
+ * 
+ * @see ParallelRefresher
+ */
+public interface DriverTask {
+
+	/**
+	 * ドライバ1つ分の処理を行う。
+	 * 処理が中断された場合はInterruptedExceptionを投げて速やかに終了すること。
+	 * @param driver ドライバ名
+	 * @return 実行結果
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public int run(String driver) throws Exception;
+}
@@ -18,6 +18,8 @@
  */
 package net.agmodel.metbroker.server;
 
+import net.agmodel.metbroker_common.driver.MetaDataFilter;
+
 /**
  * クライアントからリクエスト(MetRequest)を受け付けて、結果を返す。
  * MetaDataRepositoryServer,MetaDataRepositoryClinetから結果を得る。
@@ -74,6 +76,16 @@ public interface MetBrokerServer {
 	 */
 	public String[] listStaion();
 	
+	/**
+	 * MetaDataから条件に合う観測地点一覧を取得する。
+	 * MetaDataRepositoryServer.iterateMetaData()でMetaDataを読みながら選択するので、
+	 * 条件に合わない観測地点は保持しない。
+	 * MetDictionaryを使用して、適切な言語で観測地点を返す。
+	 * @param filter 観測地点の条件。観測地点以外のレコードは条件によらず含めない
+	 * @return 観測地点一覧
+	 */
+	public String[] listStaion(MetaDataFilter filter);
+	
 	/**
 	 * 検査条件一覧を作成する。
 	 * MetDictionaryを使用して、適切な言語でデータ区分を返す。
@@ -18,8 +18,8 @@
  */
 package net.agmodel.metbroker.server;
 
-import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.ResourceBundle.Control;
 
@@ -32,6 +32,13 @@ import java.util.ResourceBundle.Control;
  * <br>
  * 多言語化した場合のセキュリティ対策として、charset宣言等は明確にするように留意する。
  * <br>
+ * 用語集はロケールごとにCompiledDictionaryとして親のバンドルまで展開して保持し、
+ * 用語の取得はハッシュ表の1回の検索で行う。
+ * 用語集のファイルが変更された場合は、DictionaryWatcherがそのファイルを使うロケールだけを読み直して差し替える。
+ * <br>
+ * @see CompiledDictionary
+ * @see CompiledMetDictionary
+ * @see DictionaryWatcher
  * @see <a href=http://www.atmarkit.co.jp/fjava/rensai4/programer05/programer05_2.html>参考外部サイト</a>
  */
 public interface MetDictionary {
@@ -55,12 +62,15 @@ public interface MetDictionary {
 	 * BundleのキャッシュのTTL。
 	 * long型で単位はミリ秒を指定する。
 	 * デフォルト(-1L)はキャッシュを使用しない(TTL_DONT_CACHE)。
+	 * CompiledMetDictionaryでは用語集の読み直しの時期には使用しない。
+	 * 読み直しはDictionaryWatcherがファイルの変更を検知して行う。
 	 */
 	public long cacheTTL = -1L;
 	
 	
 	/**
 	 * localeをもとに用語集から用語を取得する。
+	 * 用語集にないキーはそのまま返す。
 	 * @param data 取得するデータ
 	 * @return 用語集から取得したデータ
 	 */
@@ -69,9 +79,10 @@ public interface MetDictionary {
 	/**
 	 * localeをもとに用語集から用語を取得する。
 	 * 一連の用語を連想配列で返す。
+	 * 返す連想配列は変更できない共有のビューで、呼出しごとに複製はしない。
 	 * @return 用語集から取得したデータの連想配列。
 	 */
-	public HashMap<String,String> getWordMap();
+	public Map<String,String> getWordMap();
 	
 	/**
 	 * キャッシュのTTLを設定する。
@@ -105,21 +116,25 @@ public interface MetDictionary {
 	/**
 	 * ResourceBundle.Controlのインスタンスを作成する。
 	 * 作成時にキャッシュのTTLを変更するため、getTimeToLiveをオーバーライドする。
+	 * CompiledMetDictionaryでは候補ロケールの決定だけに使用する。
 	 */
 	public void createControl();
 	
 	/**
 	 * 用語集が変更になって、キャッシュのアップデートが必要かどうかを判別する。
+	 * 判別するだけで、キャッシュのクリアや読み直しは行わない。
 	 * @param data
 	 * @return true(アップデートされている) or false(されていない)
 	 */
 	public Boolean isUpdateFrom(String data[]);
 	
 	/**
-	 * キャッシュをクリアし、用語集をアップデートする。
-	 * clearCache()を呼び出す。
-	 * @return 実行結果
-	 * @see java.util.ResourceBundle#clearCache()
+	 * 用語集をアップデートする。
+	 * 読み込み済みのロケールを1つずつ読み直して差し替える。
+	 * ResourceBundle.clearCache()で全てのロケールを一度に捨てることはしないので、
+	 * 読み直している間も古い用語集で用語を取得できる。
+	 * ファイルの変更に合わせた読み直しはDictionaryWatcherが行うので、通常は呼び出す必要はない。
+	 * @return 読み直したロケールの数
 	 */
 	public int UpdateForm();
 }
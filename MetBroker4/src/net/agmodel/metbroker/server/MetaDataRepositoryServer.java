@@ -18,6 +18,14 @@
  */
 package net.agmodel.metbroker.server;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.agmodel.metbroker.server.metrics.BrokerMetrics;
+import net.agmodel.metbroker.server.spatial.StationIndex;
+import net.agmodel.metbroker_common.driver.MetaDataChangeEvent;
+import net.agmodel.metbroker_common.driver.MetaDataFilter;
+import net.agmodel.metbroker_common.driver.MetaDataReader;
 import net.agmodel.metbroker_common.weatherData.MetRequest;
 
 /**
@@ -34,6 +42,10 @@ import net.agmodel.metbroker_common.weatherData.MetRequest;
  *  
  *  @see net.agmodel.metbroker_common.driver.MetaDataRepositoryClient
  *  @see net.agmodel.metbroker_common.weatherData.MetRequest
+ *  @see net.agmodel.metbroker.server.cache.SingleFlight
+ *  @see net.agmodel.metbroker.server.cache.ResultCache
+ *  @see net.agmodel.metbroker.server.cache.ObservationStore
+ *  @see net.agmodel.metbroker.server.metrics.RequestMetrics
  */
 public interface MetaDataRepositoryServer {
 	
@@ -50,6 +62,19 @@ public interface MetaDataRepositoryServer {
 	 * @return 取得したMetaData
 	 */
 	public String[] getMetaData(String driver);
+
+	/**
+	 * 指定されたドライバのMetaDataを、レコード単位で順に読み出すようMetaDataRepositoryClientに依頼する。
+	 * 大きなMetaDataはgetMetaData()でなくこちらを使用する。
+	 * 使い終わったらMetaDataReader.close()を呼ぶこと。
+	 * MetaDataReader.stream()でStreamとしても処理できる。
+	 * @param driver ドライバ
+	 * @param filter 読み出すレコードの条件。nullの場合は全て
+	 * @return レコードのイテレータ
+	 * @throws IOException MetaDataを読めない場合
+	 * @see net.agmodel.metbroker_common.driver.MetaDataReader
+	 */
+	public MetaDataReader iterateMetaData(String driver, MetaDataFilter filter) throws IOException;
 	
 	/**
 	 * MetaDataの更新処理を行う。
@@ -66,6 +91,28 @@ public interface MetaDataRepositoryServer {
 	 */
 	public int reloadMetaDataAll();
 
+	/**
+	 * ドライバの観測地点の空間索引を返す。
+	 * SpatialMetRequestの範囲に含まれる観測地点を求めるのに使用する。
+	 * 索引はMetaDataの更新のたびにStationIndexRegistryで作り直す。
+	 * @param driver ドライバ
+	 * @return 空間索引。MetaDataを読み込んでいない場合はnull
+	 * @see net.agmodel.metbroker.server.spatial.StationIndex
+	 */
+	public StationIndex getStationIndex(String driver);
+
+	/**
+	 * 全MetaDataの更新処理を並行に行う。
+	 * ドライバ一覧を取得し、ParallelRefresherを使用してそれぞれの更新処理を並行にMetaDataRepositoryClientに依頼する。
+	 * 遅いドライバがあっても他のドライバの更新は待たされない。
+	 * 期限までに終わらなかったドライバの処理は中断する。
+	 * @param timeout 全体の期限
+	 * @param unit timeoutの単位
+	 * @return ドライバごとの実行結果
+	 * @see ParallelRefresher
+	 */
+	public RefreshReport reloadMetaDataAll(long timeout, TimeUnit unit);
+
 	/**
 	 * 設定用のpropertiesファイルを調べて、そのキーに設定内容を返す。
 	 * 対応するキーがなければエラーコードを返す。
@@ -92,12 +139,29 @@ public interface MetaDataRepositoryServer {
 	 * @return 稼働状態を返す。 trueは停止中、falseは稼働中を表す。
 	 */
 	public boolean checkRepose();
+
+	/**
+	 * MetBrokerの稼働状況を返す。
+	 * キャッシュの状態、ドライバごとの問合せ数・エラー率・処理時間、処理中のリクエスト数、
+	 * MetaDataの更新時刻と所要時間、用語集の状態を集計する。
+	 * 起動時にBrokerMetrics.register()でJMXにも公開する。
+	 * @return 稼働状況
+	 * @see net.agmodel.metbroker.server.metrics.BrokerMetricsMXBean
+	 */
+	public BrokerMetrics getMetrics();
 	
 	/**
 	 * ドライバーを利用して、リクエストの内容でキャッシュから検索を行う。
 	 * エラーが生じた場合はそのエラー結果を返す。
 	 * ユーザクライアントにはエラー内容は表示しない。
 	 * 検索結果の言語はMetRequest.localeに従う。
+	 * 同じMetRequest.getKey()のリクエストが同時に届いた場合は、
+	 * SingleFlightを使用してドライバの呼出しを1回にまとめ、その結果をそれぞれに返す。
+	 * getKey()がnullのリクエストは、ResultCacheへの登録も呼出しのまとめも行わない。
+	 * ResultCacheは結果を複製して保持・返却するが、まとめた呼出しの結果は同時に届いたリクエストで
+	 * 同じ配列を共有するので、返した配列は変更しないこと。
+	 * キャッシュ検索、ドライバ呼出しなどの各段階の時間をMetRequest.startPhase()/endPhase()で記録し、
+	 * 結果を返す直前にRequestMetricsに渡す。
 	 * @param request リクエスト
 	 * @param driver ドライバー
 	 * @return 検索結果
@@ -107,6 +171,7 @@ public interface MetaDataRepositoryServer {
 	/**
 	 * キャッシュの更新をする。
 	 * ドライバーを使用してキャッシュの情報をMetaDataの内容でアップロードする。
+	 * ResultCacheに保持しているこのドライバの検索結果は破棄する。
 	 * エラーが発生した場合はそのエラーを返す。
 	 * ユーザクライアントにはエラー内容は表示しない。
 	 * @param driver ドライバー
@@ -121,4 +186,26 @@ public interface MetaDataRepositoryServer {
 	 * @return 実行結果
 	 */
 	public int updateAllCache();
+
+	/**
+	 * 全てのキャッシュの更新を並行に行う。
+	 * プロパティからドライバーの一覧を取得し、ParallelRefresherを使用してそれぞれのupdateCache()を並行に実行する。
+	 * 期限までに終わらなかったドライバの処理は中断する。
+	 * @param timeout 全体の期限
+	 * @param unit timeoutの単位
+	 * @return ドライバごとの実行結果
+	 * @see ParallelRefresher
+	 */
+	public RefreshReport updateAllCache(long timeout, TimeUnit unit);
+
+	/**
+	 * MetaDataの差分に対応するキャッシュだけを破棄する。
+	 * MetaDataRepositoryClientにMetaDataChangeListenerとして登録し、差分更新のたびに呼ばれる。
+	 * 変更・削除された観測地点の検索結果だけをResultCacheから削除し、他の結果は残す。
+	 * 地域・気象データベースが変更された場合は、そのドライバの結果を全て削除する。
+	 * @param event MetaDataの差分
+	 * @return 削除した検索結果の件数
+	 * @see net.agmodel.metbroker_common.driver.MetaDataChangeListener
+	 */
+	public int invalidateCache(MetaDataChangeEvent event);
 }
@@ -0,0 +1,200 @@
+/**
+ * ParallelRefresher
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 全ドライバに対する処理を並行に実行する。
+ * reloadMetaDataAll()やupdateAllCache()で、ドライバを1つずつ処理する代わりに使用する。
+ * 全体の処理時間は全ドライバの合計ではなく、最も遅いドライバ(または期限)で決まる。
+ * <br>
+ * 処理は与えられたExecutorServiceで実行する。スレッド数はExecutorServiceの設定で制限する。
+ * 同じドライバに対して同時に実行できる処理の数はドライバごとのSemaphoreで制限する(デフォルトは1)。
+ * 期限までに終わらなかった処理は割り込んで中断し、TIMED_OUTとする。
+ * 
+ * @see DriverTask
+ * @see RefreshReport
+ */
+public class ParallelRefresher {
+
+	/**
+	 * 上限を変更できるSemaphore。
+	 * 上限を下げても実行中の処理はそのまま続け、それらが終わるまで新たな処理は開始しない。
+	 */
+	private static final class Permits extends Semaphore {
+		private static final long serialVersionUID = 1L;
+
+		private int limit;
+
+		Permits(int limit) {
+			super(limit);
+			this.limit = limit;
+		}
+
+		synchronized void setLimit(int newLimit) {
+			int delta = newLimit - limit;
+			limit = newLimit;
+			if (delta > 0)
+				release(delta);
+			else if (delta < 0)
+				reducePermits(-delta);
+		}
+	}
+
+	private final ExecutorService executor;
+	private final int defaultPermits;
+	private final ConcurrentMap<String, Permits> permits = new ConcurrentHashMap<String, Permits>();
+
+	/**
+	 * @param executor 処理を実行するExecutorService。停止はこのクラスでは行わない
+	 * @param defaultPermits ドライバごとの同時実行数の上限のデフォルト値。1以上
+	 */
+	public ParallelRefresher(ExecutorService executor, int defaultPermits) {
+		checkLimit(defaultPermits);
+		this.executor = executor;
+		this.defaultPermits = defaultPermits;
+	}
+
+	private static void checkLimit(int limit) {
+		if (limit <= 0)
+			throw new IllegalArgumentException("ParallelRefresher concurrency limit ("
+					+ limit + ") must be at least 1");
+	}
+
+	/**
+	 * ドライバの同時実行数の上限を設定する。
+	 * 実行中の処理にも直ちに適用し、実行中の数が新しい上限を下回るまで次の処理は開始しない。
+	 * @param driver ドライバ名
+	 * @param limit 同時実行数の上限。1以上
+	 */
+	public void setConcurrencyLimit(String driver, int limit) {
+		checkLimit(limit);
+		getPermits(driver).setLimit(limit);
+	}
+
+	private Permits getPermits(String driver) {
+		Permits s = permits.get(driver);
+		if (s == null) {
+			Permits created = new Permits(defaultPermits);
+			s = permits.putIfAbsent(driver, created);
+			if (s == null)
+				s = created;
+		}
+		return s;
+	}
+
+	/**
+	 * 全ドライバに対してtaskを並行に実行し、結果を返す。
+	 * 期限を過ぎると、終わっていない処理を中断して結果を返す。
+	 * @param drivers ドライバ一覧。通常はgetListDriver()
+	 * @param task ドライバ1つ分の処理
+	 * @param timeout 全体の期限
+	 * @param unit timeoutの単位
+	 * @return ドライバごとの結果
+	 * @throws InterruptedException 待機中に割り込まれた場合。実行中の処理は中断する
+	 */
+	public RefreshReport refresh(String[] drivers, final DriverTask task, long timeout,
+			TimeUnit unit) throws InterruptedException {
+		final long started = System.nanoTime();
+		final long deadline = started + unit.toNanos(timeout);
+		List<Future<DriverResult>> futures = new ArrayList<Future<DriverResult>>(drivers.length);
+		for (int i = 0; i < drivers.length; i++) {
+			final String driver = drivers[i];
+			try {
+				futures.add(executor.submit(new Callable<DriverResult>() {
+					public DriverResult call() throws Exception {
+						return runOne(driver, task, deadline);
+					}
+				}));
+			} catch (RejectedExecutionException e) {
+				futures.add(null);
+			}
+		}
+
+		List<DriverResult> results = new ArrayList<DriverResult>(drivers.length);
+		try {
+			for (int i = 0; i < drivers.length; i++) {
+				Future<DriverResult> f = futures.get(i);
+				if (f == null) {
+					results.add(new DriverResult(drivers[i], DriverResult.Status.REJECTED, 0, 0, null));
+					continue;
+				}
+				try {
+					results.add(f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+				} catch (TimeoutException e) {
+					f.cancel(true);
+					results.add(new DriverResult(drivers[i], DriverResult.Status.TIMED_OUT, 0,
+							elapsedMillis(started), null));
+				} catch (CancellationException e) {
+					results.add(new DriverResult(drivers[i], DriverResult.Status.TIMED_OUT, 0,
+							elapsedMillis(started), null));
+				} catch (ExecutionException e) {
+					results.add(new DriverResult(drivers[i], DriverResult.Status.FAILED, 0,
+							elapsedMillis(started), e.getCause()));
+				}
+			}
+		} finally {
+			if (results.size() < drivers.length) {
+				for (int i = 0; i < futures.size(); i++) {
+					if (futures.get(i) != null)
+						futures.get(i).cancel(true);
+				}
+			}
+		}
+		return new RefreshReport(results, elapsedMillis(started));
+	}
+
+	private DriverResult runOne(String driver, DriverTask task, long deadline) {
+		long started = System.nanoTime();
+		Semaphore s = getPermits(driver);
+		try {
+			if (!s.tryAcquire(Math.max(0, deadline - started), TimeUnit.NANOSECONDS))
+				return new DriverResult(driver, DriverResult.Status.REJECTED, 0, elapsedMillis(started), null);
+		} catch (InterruptedException e) {
+			return new DriverResult(driver, DriverResult.Status.TIMED_OUT, 0, elapsedMillis(started), null);
+		}
+		try {
+			int code = task.run(driver);
+			return new DriverResult(driver, DriverResult.Status.SUCCEEDED, code, elapsedMillis(started), null);
+		} catch (InterruptedException e) {
+			return new DriverResult(driver, DriverResult.Status.TIMED_OUT, 0, elapsedMillis(started), null);
+		} catch (Exception e) {
+			return new DriverResult(driver, DriverResult.Status.FAILED, 0, elapsedMillis(started), e);
+		} finally {
+			s.release();
+		}
+	}
+
+	private static long elapsedMillis(long startedNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+	}
+}
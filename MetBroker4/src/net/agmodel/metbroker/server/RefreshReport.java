@@ -0,0 +1,105 @@
+/**
+ * RefreshReport
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 全ドライバに対する更新処理の結果。
+ * ドライバごとのDriverResultを、ドライバ一覧の順に保持する。
+ * 
+ * @see ParallelRefresher
+ * @see MetaDataRepositoryServer#reloadMetaDataAll(long, java.util.concurrent.TimeUnit)
+ * @see MetaDataRepositoryServer#updateAllCache(long, java.util.concurrent.TimeUnit)
+ */
+public class RefreshReport {
+
+	private final List<DriverResult> results;
+	private final long elapsedMillis;
+
+	/**
+	 * @param results ドライバごとの結果
+	 * @param elapsedMillis 全体の処理時間。単位はミリ秒
+	 */
+	public RefreshReport(List<DriverResult> results, long elapsedMillis) {
+		this.results = Collections.unmodifiableList(new ArrayList<DriverResult>(results));
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * ドライバごとの結果を返す。
+	 * @return 変更できないリスト
+	 */
+	public List<DriverResult> getResults() {
+		return results;
+	}
+
+	/**
+	 * 指定したドライバの結果を返す。
+	 * @param driver ドライバ名
+	 * @return 結果。対象でなかった場合はnull
+	 */
+	public DriverResult getResult(String driver) {
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i).getDriver().equals(driver))
+				return results.get(i);
+		}
+		return null;
+	}
+
+	/**
+	 * 指定した状態のドライバの数を返す。
+	 * @param status 状態
+	 * @return ドライバの数
+	 */
+	public int count(DriverResult.Status status) {
+		int n = 0;
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i).getStatus() == status)
+				n++;
+		}
+		return n;
+	}
+
+	/**
+	 * 全てのドライバの処理が成功したかを返す。
+	 * @return 全て成功した場合はtrue
+	 */
+	public boolean isAllSucceeded() {
+		return count(DriverResult.Status.SUCCEEDED) == results.size();
+	}
+
+	/**
+	 * 全体の処理時間を返す。
+	 * @return 処理時間。単位はミリ秒
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public String toString() {
+		StringBuffer output = new StringBuffer(64 * (results.size() + 1));
+		output.append("elapsed\t" + elapsedMillis + "ms\n");
+		for (int i = 0; i < results.size(); i++)
+			output.append(results.get(i)).append('\n');
+		return output.toString();
+	}
+}
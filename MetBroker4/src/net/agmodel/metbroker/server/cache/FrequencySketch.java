@@ -0,0 +1,101 @@
+/**
+ * FrequencySketch
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.cache;
+
+/**
+ * アクセス頻度を近似的に数えるCount-Min Sketch。
+ * ResultCacheの登録可否(TinyLFU)の判定に使用する。
+ * <br>
+ * カウンタは4行で、各カウンタの上限は15とする。
+ * 各行の幅は想定登録数の4倍とし、記録回数が想定登録数の10倍に達するたびに
+ * 全カウンタを半分にして、古いアクセスの影響を減らす。
+ * <br>
+ * 検索時のロックを避けるため、カウンタの更新は同期しない。
+ * 並行更新で一部の加算が失われることがあるが、頻度の比較には影響しない。
+ */
+class FrequencySketch {
+
+	private static final int DEPTH = 4;
+	private static final int MAX_COUNT = 15;
+	private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+	private final byte[][] table;
+	private final int mask;
+	private final int sampleSize;
+	private int additions;
+
+	/**
+	 * @param expectedEntries 想定するキャッシュの登録数
+	 */
+	FrequencySketch(int expectedEntries) {
+		int entries = Math.max(16, expectedEntries);
+		// four counters per entry keeps collisions from a scan of unrelated
+		// keys low enough not to outweigh a genuinely frequent key
+		int width = Integer.highestOneBit(entries * 4 - 1) << 1;
+		table = new byte[DEPTH][width];
+		mask = width - 1;
+		sampleSize = entries * 10;
+	}
+
+	private int index(int hash, int row) {
+		int h = hash * SEEDS[row];
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * アクセスを1回記録する。
+	 * @param hash キーのハッシュ値
+	 */
+	void increment(int hash) {
+		boolean added = false;
+		for (int row = 0; row < DEPTH; row++) {
+			int i = index(hash, row);
+			if (table[row][i] < MAX_COUNT) {
+				table[row][i]++;
+				added = true;
+			}
+		}
+		if (added && ++additions >= sampleSize)
+			reset();
+	}
+
+	/**
+	 * アクセス頻度の推定値を返す。
+	 * @param hash キーのハッシュ値
+	 * @return 頻度(0～15)
+	 */
+	int frequency(int hash) {
+		int f = MAX_COUNT;
+		for (int row = 0; row < DEPTH; row++)
+			f = Math.min(f, table[row][index(hash, row)]);
+		return f;
+	}
+
+	/**
+	 * 全カウンタを半分にする。
+	 */
+	private void reset() {
+		additions = 0;
+		for (int row = 0; row < DEPTH; row++) {
+			byte[] r = table[row];
+			for (int i = 0; i < r.length; i++)
+				r[i] = (byte) (r[i] >>> 1);
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * IntervalTree
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 時間範囲をキーとした拡張区間木。
+ * 各ノードに部分木内の最大終了時刻を持たせたAVL木で、重なり検索・点検索をO(log n + k)で行う。
+ * <br>
+ * 区間は(start,end]として扱い、Period.coincidesWith(Period)と同じく端点が接するだけの区間は重ならないものとする。
+ * 同じ(start,end]の区間は1つだけ保持し、putした場合は値を置き換える。
+ * <br>
+ * 木は不変ノードで構成し、更新時は経路上のノードだけを作り直してルートを差し替える。
+ * 読み出しはその時点のルートを辿るだけなのでロックを取らず、更新中でも並行して検索できる。
+ * 更新同士はこのオブジェクトで同期する。
+ *
+ * @param <V> 区間に対応付ける値
+ * @see net.agmodel.metbroker_common.physical.Period#coincidesWith(Period)
+ */
+public class IntervalTree<V> {
+
+	/**
+	 * 検索結果を1件ずつ受け取るコールバック。
+	 * 結果をリストに詰めずに処理するために使用する。
+	 * @param <V> 区間に対応付けた値
+	 */
+	public interface Visitor<V> {
+		/**
+		 * 条件に一致した区間を受け取る。
+		 * @param start 区間の開始(エポックミリ秒)
+		 * @param end 区間の終了(エポックミリ秒)
+		 * @param value 区間の値
+		 * @return 検索を続ける場合はtrue、打ち切る場合はfalse
+		 */
+		public boolean visit(long start, long end, V value);
+	}
+
+	private static final class Node<V> {
+		final long start;
+		final long end;
+		final V value;
+		final Node<V> left;
+		final Node<V> right;
+		final int height;
+		final long maxEnd;
+
+		Node(long start, long end, V value, Node<V> left, Node<V> right) {
+			this.start = start;
+			this.end = end;
+			this.value = value;
+			this.left = left;
+			this.right = right;
+			this.height = 1 + Math.max(height(left), height(right));
+			long m = end;
+			if (left != null && left.maxEnd > m)
+				m = left.maxEnd;
+			if (right != null && right.maxEnd > m)
+				m = right.maxEnd;
+			this.maxEnd = m;
+		}
+
+		Node<V> with(Node<V> newLeft, Node<V> newRight) {
+			return new Node<V>(start, end, value, newLeft, newRight);
+		}
+	}
+
+	private volatile Node<V> root;
+	private volatile int size;
+
+	/**
+	 * 区間を登録する。
+	 * 同じ区間が登録済みの場合は値を置き換える。
+	 * @param start 区間の開始(エポックミリ秒)
+	 * @param end 区間の終了(エポックミリ秒)
+	 * @param value 値
+	 * @return 置き換えた以前の値。新規の場合はnull
+	 */
+	public synchronized V put(long start, long end, V value) {
+		if (end < start)
+			throw new IllegalArgumentException("IntervalTree.put called with end ("
+					+ end + ") earlier than start (" + start + ")");
+		Node<V> old = find(root, start, end);
+		root = insert(root, start, end, value);
+		if (old == null) {
+			size++;
+			return null;
+		}
+		return old.value;
+	}
+
+	/**
+	 * 区間を削除する。
+	 * @param start 区間の開始(エポックミリ秒)
+	 * @param end 区間の終了(エポックミリ秒)
+	 * @return 削除した値。登録されていない場合はnull
+	 */
+	public synchronized V remove(long start, long end) {
+		Node<V> old = find(root, start, end);
+		if (old == null)
+			return null;
+		root = delete(root, start, end);
+		size--;
+		return old.value;
+	}
+
+	/**
+	 * 全ての区間を削除する。
+	 */
+	public synchronized void clear() {
+		root = null;
+		size = 0;
+	}
+
+	/**
+	 * 登録されている区間の数を返す。
+	 * @return 区間の数
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 区間が登録されていないかを返す。
+	 * @return 登録がない場合はtrue
+	 */
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/**
+	 * 区間に対応付けた値を返す。
+	 * @param start 区間の開始(エポックミリ秒)
+	 * @param end 区間の終了(エポックミリ秒)
+	 * @return 値。登録されていない場合はnull
+	 */
+	public V get(long start, long end) {
+		Node<V> n = find(root, start, end);
+		return n == null ? null : n.value;
+	}
+
+	/**
+	 * (start,end]と重なる区間を開始時刻の順に渡す。
+	 * @param start 検索範囲の開始(エポックミリ秒)
+	 * @param end 検索範囲の終了(エポックミリ秒)
+	 * @param visitor 結果を受け取るコールバック
+	 * @return 最後まで検索した場合はtrue、visitorが打ち切った場合はfalse
+	 */
+	public boolean forEachOverlapping(long start, long end, Visitor<? super V> visitor) {
+		return overlapping(root, start, end, visitor);
+	}
+
+	/**
+	 * (start,end]と重なる区間の値を開始時刻の順に返す。
+	 * @param start 検索範囲の開始(エポックミリ秒)
+	 * @param end 検索範囲の終了(エポックミリ秒)
+	 * @return 値のリスト
+	 */
+	public List<V> getOverlapping(long start, long end) {
+		final List<V> result = new ArrayList<V>();
+		overlapping(root, start, end, new Visitor<V>() {
+			public boolean visit(long s, long e, V value) {
+				result.add(value);
+				return true;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * 時刻instantを含む区間を開始時刻の順に渡す。
+	 * 区間は(start,end]として扱うので、instantが開始時刻と等しい区間は含まない。
+	 * @param instant 時刻(エポックミリ秒)
+	 * @param visitor 結果を受け取るコールバック
+	 * @return 最後まで検索した場合はtrue、visitorが打ち切った場合はfalse
+	 */
+	public boolean forEachContaining(long instant, Visitor<? super V> visitor) {
+		return overlapping(root, instant - 1, instant, visitor);
+	}
+
+	/**
+	 * 時刻instantを含む区間の値を開始時刻の順に返す。
+	 * @param instant 時刻(エポックミリ秒)
+	 * @return 値のリスト
+	 */
+	public List<V> getContaining(long instant) {
+		return getOverlapping(instant - 1, instant);
+	}
+
+	private static <V> boolean overlapping(Node<V> n, long start, long end,
+			Visitor<? super V> visitor) {
+		while (n != null) {
+			// nothing in this subtree ends after the query starts
+			if (n.maxEnd <= start)
+				return true;
+			if (!overlapping(n.left, start, end, visitor))
+				return false;
+			// this node and everything to its right start too late
+			if (n.start >= end)
+				return true;
+			if (n.end > start && !visitor.visit(n.start, n.end, n.value))
+				return false;
+			n = n.right;
+		}
+		return true;
+	}
+
+	private static int compare(long s1, long e1, long s2, long e2) {
+		if (s1 != s2)
+			return s1 < s2 ? -1 : 1;
+		if (e1 != e2)
+			return e1 < e2 ? -1 : 1;
+		return 0;
+	}
+
+	private static int height(Node<?> n) {
+		return n == null ? 0 : n.height;
+	}
+
+	private static <V> Node<V> find(Node<V> n, long start, long end) {
+		while (n != null) {
+			int c = compare(start, end, n.start, n.end);
+			if (c == 0)
+				return n;
+			n = c < 0 ? n.left : n.right;
+		}
+		return null;
+	}
+
+	private static <V> Node<V> insert(Node<V> n, long start, long end, V value) {
+		if (n == null)
+			return new Node<V>(start, end, value, null, null);
+		int c = compare(start, end, n.start, n.end);
+		if (c < 0)
+			return balance(n.with(insert(n.left, start, end, value), n.right));
+		if (c > 0)
+			return balance(n.with(n.left, insert(n.right, start, end, value)));
+		return new Node<V>(start, end, value, n.left, n.right);
+	}
+
+	private static <V> Node<V> delete(Node<V> n, long start, long end) {
+		if (n == null)
+			return null;
+		int c = compare(start, end, n.start, n.end);
+		if (c < 0)
+			return balance(n.with(delete(n.left, start, end), n.right));
+		if (c > 0)
+			return balance(n.with(n.left, delete(n.right, start, end)));
+		if (n.left == null)
+			return n.right;
+		if (n.right == null)
+			return n.left;
+		Node<V> min = n.right;
+		while (min.left != null)
+			min = min.left;
+		return balance(new Node<V>(min.start, min.end, min.value, n.left,
+				deleteMin(n.right)));
+	}
+
+	private static <V> Node<V> deleteMin(Node<V> n) {
+		if (n.left == null)
+			return n.right;
+		return balance(n.with(deleteMin(n.left), n.right));
+	}
+
+	private static <V> Node<V> balance(Node<V> n) {
+		int diff = height(n.left) - height(n.right);
+		if (diff > 1) {
+			Node<V> l = n.left;
+			if (height(l.left) < height(l.right))
+				l = rotateLeft(l);
+			return rotateRight(n.with(l, n.right));
+		}
+		if (diff < -1) {
+			Node<V> r = n.right;
+			if (height(r.right) < height(r.left))
+				r = rotateRight(r);
+			return rotateLeft(n.with(n.left, r));
+		}
+		return n;
+	}
+
+	private static <V> Node<V> rotateRight(Node<V> n) {
+		Node<V> l = n.left;
+		return l.with(l.left, n.with(l.right, n.right));
+	}
+
+	private static <V> Node<V> rotateLeft(Node<V> n) {
+		Node<V> r = n.right;
+		return r.with(n.with(n.left, r.left), r.right);
+	}
+}
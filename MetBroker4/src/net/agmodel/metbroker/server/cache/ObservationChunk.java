@@ -0,0 +1,171 @@
+/**
+ * ObservationChunk
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * ObservationStoreの1系列の連続した観測値を、ヒープ外のバッファに列形式で保持する。
+ * <br>
+ * バッファは時刻列(先頭の行からのミリ秒数、long)、値列(double)、有効ビット列の順に並べる。
+ * 時刻も値もドライバから受け取ったとおりに保持し、丸めや切捨ては行わない。1行は16バイトと1ビットとなる。
+ * 欠測の行は有効ビットを0にする。
+ * <br>
+ * 系列の最後のチャンクは行数より大きい容量で確保し、追記はバッファの空きに書き込む。
+ * 容量が足りなくなった場合は倍の容量のチャンクに写す。
+ * 行の追加は書込み側だけが行い、読出し側はObservationStoreのスナップショットに記録した行数までしか読まないので、
+ * 追記中でも読み出してよい。有効ビットはバイト単位で更新するので、読出し中の行のビットは変わらない。
+ */
+final class ObservationChunk {
+
+	/** 1チャンクの最大行数 */
+	static final int CAPACITY = 4096;
+
+	/** 追記用に確保する最小の行数 */
+	static final int MIN_CAPACITY = 128;
+
+	private final long base;
+	private final int capacity;
+	private final ByteBuffer buffer;
+	private final int valueOffset;
+	private final int validOffset;
+	/** 書き込んだ行数。書込み側だけが参照する */
+	private int size;
+
+	/**
+	 * 空のチャンクを作成する。
+	 * @param base 先頭の行の時刻(エポックミリ秒)
+	 * @param capacity 行数の上限
+	 */
+	ObservationChunk(long base, int capacity) {
+		if (capacity <= 0 || capacity > CAPACITY)
+			throw new IllegalArgumentException("ObservationChunk called with capacity " + capacity);
+		this.base = base;
+		this.capacity = capacity;
+		valueOffset = 8 * capacity;
+		validOffset = 16 * capacity;
+		buffer = ByteBuffer.allocateDirect(validOffset + ((capacity + 7) >>> 3))
+				.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * 追記用の容量を返す。rows以上の2のべき乗で、MIN_CAPACITY以上CAPACITY以下とする。
+	 */
+	static int capacityFor(int rows) {
+		if (rows >= CAPACITY)
+			return CAPACITY;
+		return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, rows - 1)) << 1);
+	}
+
+	/**
+	 * times[from,to)とvalues[from,to)からチャンクを作成する。
+	 * 値がNaNの行は欠測とする。
+	 * @param capacity 行数の上限。to - from以上
+	 */
+	static ObservationChunk of(long[] times, double[] values, int from, int to, int capacity) {
+		ObservationChunk c = new ObservationChunk(times[from], capacity);
+		for (int i = from; i < to; i++)
+			c.append(times[i], values[i]);
+		return c;
+	}
+
+	/**
+	 * 行を追加する。
+	 * @param time 時刻(エポックミリ秒)。最後の行より後であること
+	 * @param value 値。NaNの場合は欠測
+	 * @return 容量が足りない場合はfalse
+	 */
+	boolean append(long time, double value) {
+		if (size == capacity)
+			return false;
+		int i = size;
+		buffer.putLong(8 * i, time - base);
+		buffer.putDouble(valueOffset + 8 * i, value);
+		if (!Double.isNaN(value)) {
+			int b = validOffset + (i >>> 3);
+			buffer.put(b, (byte) (buffer.get(b) | (1 << (i & 7))));
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * 書き込んだ行をcapacity行の新しいチャンクに写す。
+	 */
+	ObservationChunk grow(int capacity) {
+		ObservationChunk c = new ObservationChunk(base, capacity);
+		for (int i = 0; i < size; i++)
+			c.append(time(i), isValid(i) ? value(i) : Double.NaN);
+		return c;
+	}
+
+	/** 書き込んだ行数を返す。書込み側だけが使用する */
+	int size() {
+		return size;
+	}
+
+	/** 行数の上限を返す */
+	int capacity() {
+		return capacity;
+	}
+
+	/** ヒープ外に確保したバイト数を返す */
+	int getBytes() {
+		return buffer.capacity();
+	}
+
+	/** 先頭の行の時刻を返す */
+	long first() {
+		return base;
+	}
+
+	/** i行目の時刻(エポックミリ秒)を返す */
+	long time(int i) {
+		return base + buffer.getLong(8 * i);
+	}
+
+	/** i行目の値を返す。欠測の場合はNaN */
+	double value(int i) {
+		return buffer.getDouble(valueOffset + 8 * i);
+	}
+
+	/** i行目が欠測でないかを返す */
+	boolean isValid(int i) {
+		return (buffer.get(validOffset + (i >>> 3)) & (1 << (i & 7))) != 0;
+	}
+
+	/**
+	 * 先頭のsize行のうち、時刻がinstantより後の最初の行を返す。
+	 * 範囲(start,end]の読出しはindexAfter(start)からindexAfter(end)の手前までとなる。
+	 * @return 行番号。全ての行がinstant以前の場合はsize
+	 */
+	int indexAfter(long instant, int size) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (time(mid) <= instant)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * ObservationCursor
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.cache;
+
+/**
+ * ObservationStoreの範囲読出しで、観測値を1行ずつ辿るカーソル。
+ * <br>
+ * 行ごとにオブジェクトを作らないよう、値はカーソルのメソッドで取り出す。
+ * カーソルは使い回すことを前提とし、ObservationStore.scan()に渡すたびに新しい範囲の先頭に戻る。
+ * 1つのカーソルを複数のスレッドで同時に使用してはならない。
+ * <pre>
+ * ObservationCursor c = new ObservationCursor();
+ * store.scan(driver, station, element, resolution, start, end, c);
+ * while (c.next()) {
+ *     if (c.isValid())
+ *         sum += c.getValue();
+ * }
+ * </pre>
+ *
+ * @see ObservationStore#scan(String, String, net.agmodel.metbroker_common.weatherData.MetElement, net.agmodel.metbroker_common.weatherData.MetDuration, long, long, ObservationCursor)
+ */
+public final class ObservationCursor {
+
+	private ObservationChunk[] chunks = new ObservationChunk[8];
+	private int[] sizes = new int[8];
+	private int chunkCount;
+	private int chunkIndex;
+	private ObservationChunk chunk;
+	private int row;
+	private int rowEnd;
+	private long start;
+	private long end;
+
+	/**
+	 * 範囲(start,end]の読出しを始める。チャンクはadd()で開始時刻の順に加える。
+	 */
+	void reset(long start, long end) {
+		for (int i = 0; i < chunkCount; i++)
+			chunks[i] = null;
+		this.start = start;
+		this.end = end;
+		chunkCount = 0;
+		chunkIndex = -1;
+		chunk = null;
+		row = 0;
+		rowEnd = 0;
+	}
+
+	/**
+	 * 読み出すチャンクを加える。
+	 * @param size 読み出す行数。スナップショットに記録した行数で、チャンクにその後追記された行は読まない
+	 */
+	void add(ObservationChunk c, int size) {
+		if (chunkCount == chunks.length) {
+			ObservationChunk[] grown = new ObservationChunk[chunkCount * 2];
+			System.arraycopy(chunks, 0, grown, 0, chunkCount);
+			chunks = grown;
+			int[] grownSizes = new int[chunkCount * 2];
+			System.arraycopy(sizes, 0, grownSizes, 0, chunkCount);
+			sizes = grownSizes;
+		}
+		chunks[chunkCount] = c;
+		sizes[chunkCount++] = size;
+	}
+
+	/**
+	 * 次の行に進む。
+	 * @return 行がある場合はtrue、範囲の終わりに達した場合はfalse
+	 */
+	public boolean next() {
+		if (++row < rowEnd)
+			return true;
+		while (++chunkIndex < chunkCount) {
+			chunk = chunks[chunkIndex];
+			int size = sizes[chunkIndex];
+			row = chunk.indexAfter(start, size);
+			rowEnd = chunk.time(size - 1) <= end ? size : chunk.indexAfter(end, size);
+			if (row < rowEnd)
+				return true;
+		}
+		chunk = null;
+		row = rowEnd = 0;
+		return false;
+	}
+
+	/**
+	 * 現在の行の時刻を返す。
+	 * @return エポックミリ秒
+	 */
+	public long getTime() {
+		return chunk.time(row);
+	}
+
+	/**
+	 * 現在の行の値を返す。
+	 * @return 値。欠測の場合はNaN
+	 */
+	public double getValue() {
+		return chunk.value(row);
+	}
+
+	/**
+	 * 現在の行が欠測でないかを返す。
+	 * @return 値がある場合はtrue
+	 */
+	public boolean isValid() {
+		return chunk.isValid(row);
+	}
+}
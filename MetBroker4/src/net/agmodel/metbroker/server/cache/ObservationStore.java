@@ -0,0 +1,525 @@
+/**
+ * ObservationStore
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.agmodel.metbroker_common.physical.PeriodSet;
+import net.agmodel.metbroker_common.weatherData.MetDuration;
+import net.agmodel.metbroker_common.weatherData.MetElement;
+
+/**
+ * doRequestCache()でキャッシュする観測値を、列形式でヒープ外に保持する。
+ * ドライバ・観測地点・気象要素・時間分解能の組(系列)ごとに、観測値を最大4096行のチャンクに分けて保持する。
+ * <br>
+ * チャンクは時刻列・値列・有効ビット列をまとめたダイレクトバッファで、観測値1件ごとのオブジェクトは作らない。
+ * 時刻はミリ秒、値はdoubleのまま保持するので、キャッシュから返す観測値はドライバが返したものと同じになる。
+ * 何年分もの毎時データをキャッシュしてもヒープ上にあるのはチャンク数程度のオブジェクトだけなので、
+ * ヒープ使用量とGCの停止時間は観測値の件数に比例しない。
+ * ヒープ外のメモリはチャンクが参照されなくなった時点で解放される。
+ * <br>
+ * 系列の最後のチャンクは空きを持たせて確保し、最新の観測値の追記はその空きに書き込むので、
+ * 追記のたびにバッファを確保し直すことはない。
+ * ヒープ外に確保するバイト数には上限を設け、超えた場合は最も長く使われていない系列から削除する。
+ * <br>
+ * 系列のチャンクは時刻順の配列で保持し、dateExtremesと重なるチャンクだけを二分探索で求めてObservationCursorで辿る。
+ * 範囲はPeriodと同じく(start,end]とする。
+ * 取得済みの範囲はPeriodSetで記録するので、観測値のない範囲も取得済みかどうかを判定できる。
+ * <br>
+ * 書込みは系列ごとに同期する。チャンクの配列・各チャンクの行数・取得済みの範囲は1つの変更しないスナップショットにまとめ、
+ * 書込みの最後に1回の代入で差し替える。読出しはロックを取らずにその時点のスナップショットを読むので、
+ * 書込み中の範囲を同時に読んでも、取得済みと判定した範囲の行が欠けて見えることはない。
+ *
+ * @see ObservationCursor
+ */
+public class ObservationStore {
+
+	/**
+	 * ドライバ・観測地点・気象要素・時間分解能の組。
+	 */
+	private static final class SeriesKey {
+		final String driver;
+		final String station;
+		final int element;
+		final MetDuration resolution;
+		final int hash;
+
+		SeriesKey(String driver, String station, MetElement element, MetDuration resolution) {
+			this.driver = driver;
+			this.station = station;
+			this.element = element.ord;
+			this.resolution = resolution;
+			int h = driver.hashCode();
+			h = h * 31 + station.hashCode();
+			h = h * 31 + this.element;
+			h = h * 31 + (resolution == null ? 0 : resolution.hashCode());
+			this.hash = h;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof SeriesKey))
+				return false;
+			SeriesKey k = (SeriesKey) o;
+			return hash == k.hash && element == k.element && driver.equals(k.driver)
+					&& station.equals(k.station)
+					&& (resolution == null ? k.resolution == null : resolution.equals(k.resolution));
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * 1系列のチャンクと取得済みの範囲のスナップショット。作成後は変更しない。
+	 * <br>
+	 * 最後のチャンクにはその後も行が追記されるので、読み出す行数はsizesに記録した値とする。
+	 */
+	private static final class Snapshot {
+		static final Snapshot EMPTY = new Snapshot(new ObservationChunk[0], new int[0], PeriodSet.EMPTY);
+
+		/** 時刻順に並べた、互いに重ならないチャンク */
+		final ObservationChunk[] chunks;
+		/** 各チャンクの行数 */
+		final int[] sizes;
+		final PeriodSet coverage;
+
+		Snapshot(ObservationChunk[] chunks, int[] sizes, PeriodSet coverage) {
+			this.chunks = chunks;
+			this.sizes = sizes;
+			this.coverage = coverage;
+		}
+
+		/** i番目のチャンクの最後の行の時刻を返す */
+		long last(int i) {
+			return chunks[i].time(sizes[i] - 1);
+		}
+
+		/** 最後の行の時刻がinstantより後の最初のチャンクを返す。ない場合はchunks.length */
+		int firstEndingAfter(long instant) {
+			int lo = 0;
+			int hi = chunks.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (last(mid) <= instant)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+	}
+
+	/**
+	 * 1系列の現在のスナップショット。
+	 */
+	private static final class Series {
+		volatile Snapshot snapshot = Snapshot.EMPTY;
+		/** 最後に読み書きした時刻(System.nanoTime())。削除する系列の選択に使用する */
+		volatile long lastAccess = System.nanoTime();
+		/** storeから削除済みの場合はtrue。系列のロックを取って参照する */
+		boolean removed;
+	}
+
+	/**
+	 * 削除する系列の候補。比較中に最終アクセス時刻が変わらないよう値を写して保持する。
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+		final SeriesKey key;
+		final Series series;
+		final long lastAccess;
+
+		Candidate(SeriesKey key, Series series) {
+			this.key = key;
+			this.series = series;
+			this.lastAccess = series.lastAccess;
+		}
+
+		public int compareTo(Candidate o) {
+			long d = lastAccess - o.lastAccess;
+			return d < 0 ? -1 : d > 0 ? 1 : 0;
+		}
+	}
+
+	/** ヒープ外に確保するバイト数の既定の上限 */
+	public static final long DEFAULT_MAXIMUM_OFF_HEAP_BYTES = 256L * 1024 * 1024;
+
+	private final ConcurrentMap<SeriesKey, Series> series = new ConcurrentHashMap<SeriesKey, Series>();
+	private final long maximumOffHeapBytes;
+	private final Object evictionLock = new Object();
+	private final AtomicLong offHeapBytes = new AtomicLong();
+	private final AtomicLong rows = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * ヒープ外に確保するバイト数の上限をDEFAULT_MAXIMUM_OFF_HEAP_BYTESとして作成する。
+	 */
+	public ObservationStore() {
+		this(DEFAULT_MAXIMUM_OFF_HEAP_BYTES);
+	}
+
+	/**
+	 * @param maximumOffHeapBytes ヒープ外に確保するバイト数の上限。
+	 * 書込みで超えた場合は、上限の9割を下回るまで最も長く使われていない系列から削除する。
+	 */
+	public ObservationStore(long maximumOffHeapBytes) {
+		if (maximumOffHeapBytes <= 0)
+			throw new IllegalArgumentException("ObservationStore called with maximumOffHeapBytes "
+					+ maximumOffHeapBytes);
+		this.maximumOffHeapBytes = maximumOffHeapBytes;
+	}
+
+	private Series series(SeriesKey key) {
+		Series s = series.get(key);
+		if (s == null) {
+			Series created = new Series();
+			s = series.putIfAbsent(key, created);
+			if (s == null)
+				s = created;
+		}
+		return s;
+	}
+
+	/**
+	 * 範囲(start,end]の観測値を書き込む。
+	 * 範囲内に保持していた観測値は全て置き換え、範囲を取得済みとして記録する。
+	 * 値がNaNの行は欠測として保持する。
+	 * @param driver ドライバ名
+	 * @param station 観測地点ID
+	 * @param element 気象要素
+	 * @param resolution 時間分解能
+	 * @param start 範囲の開始(エポックミリ秒)
+	 * @param end 範囲の終了(エポックミリ秒)
+	 * @param times 観測時刻(エポックミリ秒)。昇順で、範囲(start,end]に含まれること
+	 * @param values 観測値
+	 * @param count 書き込む行数
+	 */
+	public void write(String driver, String station, MetElement element, MetDuration resolution,
+			long start, long end, long[] times, double[] values, int count) {
+		for (int i = 0; i < count; i++) {
+			if (times[i] <= start || times[i] > end || (i > 0 && times[i] <= times[i - 1]))
+				throw new IllegalArgumentException("ObservationStore.write called with time "
+						+ times[i] + " at row " + i + " not ascending within (" + start + "," + end + "]");
+		}
+		SeriesKey key = new SeriesKey(driver, station, element, resolution);
+		Series s;
+		for (;;) {
+			s = series(key);
+			synchronized (s) {
+				// the series may have been invalidated or evicted since it was looked up
+				if (!s.removed) {
+					Snapshot old = s.snapshot;
+					PeriodSet coverage = old.coverage.union(PeriodSet.of(start, end));
+					s.snapshot = old.firstEndingAfter(start) == old.chunks.length
+							? append(old, coverage, times, values, count)
+							: replace(old, coverage, start, end, times, values, count);
+					s.lastAccess = System.nanoTime();
+					break;
+				}
+			}
+		}
+		if (offHeapBytes.get() > maximumOffHeapBytes)
+			evict(s);
+	}
+
+	/**
+	 * 全てのチャンクより後の観測値を、最後のチャンクの空きに追記する。
+	 * 最後のチャンクの容量が足りない場合は倍の容量のチャンクに写し、CAPACITY行に達したら新しいチャンクを作る。
+	 * 追記する行は既存のスナップショットの行数より後なので、そのスナップショットを読んでいるcursorには影響しない。
+	 */
+	private Snapshot append(Snapshot old, PeriodSet coverage, long[] times, double[] values, int count) {
+		int n = old.chunks.length;
+		List<ObservationChunk> added = new ArrayList<ObservationChunk>();
+		ObservationChunk tail = n == 0 ? null : old.chunks[n - 1];
+		int i = 0;
+		if (tail != null && count > 0 && tail.size() < ObservationChunk.CAPACITY) {
+			int needed = Math.min(ObservationChunk.CAPACITY, tail.size() + count);
+			if (needed > tail.capacity()) {
+				ObservationChunk grown = tail.grow(ObservationChunk.capacityFor(needed));
+				offHeapBytes.addAndGet(grown.getBytes() - tail.getBytes());
+				tail = grown;
+			}
+			while (i < count && tail.append(times[i], values[i]))
+				i++;
+		}
+		while (i < count) {
+			int to = Math.min(count, i + ObservationChunk.CAPACITY);
+			ObservationChunk c = ObservationChunk.of(times, values, i, to,
+					ObservationChunk.capacityFor(to - i));
+			offHeapBytes.addAndGet(c.getBytes());
+			added.add(c);
+			i = to;
+		}
+		rows.addAndGet(count);
+
+		ObservationChunk[] chunks = new ObservationChunk[n + added.size()];
+		int[] sizes = new int[chunks.length];
+		System.arraycopy(old.chunks, 0, chunks, 0, n);
+		System.arraycopy(old.sizes, 0, sizes, 0, n);
+		if (tail != null) {
+			chunks[n - 1] = tail;
+			sizes[n - 1] = tail.size();
+		}
+		for (int k = 0; k < added.size(); k++) {
+			chunks[n + k] = added.get(k);
+			sizes[n + k] = added.get(k).size();
+		}
+		return new Snapshot(chunks, sizes, coverage);
+	}
+
+	/**
+	 * 範囲(start,end]と重なるチャンクを、範囲外の行と新しい観測値を併合したチャンクに置き換える。
+	 * 置き換えたチャンクは変更しないので、既存のスナップショットを読んでいるcursorには影響しない。
+	 */
+	private Snapshot replace(Snapshot old, PeriodSet coverage, long start, long end, long[] times,
+			double[] values, int count) {
+		int n = old.chunks.length;
+		int from = old.firstEndingAfter(start);
+		int to = from;
+		while (to < n && old.chunks[to].first() <= end)
+			to++;
+
+		int total = count;
+		for (int k = from; k < to; k++)
+			total += old.sizes[k];
+		long[] t = new long[total];
+		double[] v = new double[total];
+		int m = 0;
+		// rows kept from the replaced chunks before the range
+		for (int k = from; k < to; k++) {
+			ObservationChunk c = old.chunks[k];
+			for (int i = 0, e = c.indexAfter(start, old.sizes[k]); i < e; i++) {
+				t[m] = c.time(i);
+				v[m++] = c.isValid(i) ? c.value(i) : Double.NaN;
+			}
+		}
+		System.arraycopy(times, 0, t, m, count);
+		System.arraycopy(values, 0, v, m, count);
+		m += count;
+		// and after it
+		for (int k = from; k < to; k++) {
+			ObservationChunk c = old.chunks[k];
+			for (int i = c.indexAfter(end, old.sizes[k]); i < old.sizes[k]; i++) {
+				t[m] = c.time(i);
+				v[m++] = c.isValid(i) ? c.value(i) : Double.NaN;
+			}
+		}
+		for (int k = from; k < to; k++)
+			release(old.chunks[k], old.sizes[k]);
+
+		List<ObservationChunk> merged = new ArrayList<ObservationChunk>();
+		for (int i = 0; i < m; i += ObservationChunk.CAPACITY) {
+			int e = Math.min(m, i + ObservationChunk.CAPACITY);
+			// only the last chunk of the series is appended to
+			int capacity = e == m && to == n ? ObservationChunk.capacityFor(e - i) : e - i;
+			ObservationChunk c = ObservationChunk.of(t, v, i, e, capacity);
+			offHeapBytes.addAndGet(c.getBytes());
+			rows.addAndGet(c.size());
+			merged.add(c);
+		}
+
+		ObservationChunk[] chunks = new ObservationChunk[n - (to - from) + merged.size()];
+		int[] sizes = new int[chunks.length];
+		System.arraycopy(old.chunks, 0, chunks, 0, from);
+		System.arraycopy(old.sizes, 0, sizes, 0, from);
+		for (int k = 0; k < merged.size(); k++) {
+			chunks[from + k] = merged.get(k);
+			sizes[from + k] = merged.get(k).size();
+		}
+		System.arraycopy(old.chunks, to, chunks, from + merged.size(), n - to);
+		System.arraycopy(old.sizes, to, sizes, from + merged.size(), n - to);
+		return new Snapshot(chunks, sizes, coverage);
+	}
+
+	private void release(ObservationChunk c, int size) {
+		offHeapBytes.addAndGet(-c.getBytes());
+		rows.addAndGet(-size);
+	}
+
+	/**
+	 * ヒープ外のバイト数が上限の9割を下回るまで、最も長く使われていない系列から削除する。
+	 * 書き込んだばかりの系列は削除しない。
+	 */
+	private void evict(Series written) {
+		synchronized (evictionLock) {
+			if (offHeapBytes.get() <= maximumOffHeapBytes)
+				return;
+			long target = maximumOffHeapBytes - maximumOffHeapBytes / 10;
+			List<Candidate> candidates = new ArrayList<Candidate>(series.size());
+			for (Map.Entry<SeriesKey, Series> e : series.entrySet())
+				candidates.add(new Candidate(e.getKey(), e.getValue()));
+			Collections.sort(candidates);
+			for (Candidate c : candidates) {
+				if (offHeapBytes.get() <= target)
+					break;
+				if (c.series != written && series.remove(c.key, c.series)) {
+					clear(c.series);
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 範囲(start,end]の観測値の読出しを始める。
+	 * 範囲に取得済みでない部分がある場合もcursorを準備し、保持している観測値だけを辿る。
+	 * @param driver ドライバ名
+	 * @param station 観測地点ID
+	 * @param element 気象要素
+	 * @param resolution 時間分解能
+	 * @param start 範囲の開始(エポックミリ秒)
+	 * @param end 範囲の終了(エポックミリ秒)
+	 * @param cursor 読出しに使用するカーソル
+	 * @return 範囲全体が取得済みの場合はtrue
+	 */
+	public boolean scan(String driver, String station, MetElement element, MetDuration resolution,
+			long start, long end, ObservationCursor cursor) {
+		cursor.reset(start, end);
+		Series s = series.get(new SeriesKey(driver, station, element, resolution));
+		if (s == null)
+			return false;
+		s.lastAccess = System.nanoTime();
+		Snapshot snapshot = s.snapshot;
+		for (int i = snapshot.firstEndingAfter(start); i < snapshot.chunks.length
+				&& snapshot.chunks[i].first() <= end; i++)
+			cursor.add(snapshot.chunks[i], snapshot.sizes[i]);
+		return snapshot.coverage.covers(start, end);
+	}
+
+	/**
+	 * 範囲(start,end]のうち取得済みの部分を返す。
+	 * @param driver ドライバ名
+	 * @param station 観測地点ID
+	 * @param element 気象要素
+	 * @param resolution 時間分解能
+	 * @param start 範囲の開始(エポックミリ秒)
+	 * @param end 範囲の終了(エポックミリ秒)
+	 * @return 取得済みの範囲
+	 */
+	public PeriodSet getCoverage(String driver, String station, MetElement element,
+			MetDuration resolution, long start, long end) {
+		Series s = series.get(new SeriesKey(driver, station, element, resolution));
+		if (s == null)
+			return PeriodSet.EMPTY;
+		return s.snapshot.coverage.intersection(PeriodSet.of(start, end));
+	}
+
+	/**
+	 * ドライバの観測値を全て削除する。updateCache()で使用する。
+	 * @param driver ドライバ名
+	 * @return 削除した系列の数
+	 */
+	public int invalidate(String driver) {
+		return removeIf(driver, null);
+	}
+
+	/**
+	 * 観測地点の観測値を全て削除する。MetaDataの差分更新で使用する。
+	 * @param driver ドライバ名
+	 * @param station 観測地点ID
+	 * @return 削除した系列の数
+	 */
+	public int invalidate(String driver, String station) {
+		return removeIf(driver, station);
+	}
+
+	private int removeIf(String driver, String station) {
+		int n = 0;
+		Iterator<Map.Entry<SeriesKey, Series>> i = series.entrySet().iterator();
+		while (i.hasNext()) {
+			Map.Entry<SeriesKey, Series> e = i.next();
+			SeriesKey k = e.getKey();
+			if (k.driver.equals(driver) && (station == null || k.station.equals(station))) {
+				i.remove();
+				clear(e.getValue());
+				n++;
+			}
+		}
+		return n;
+	}
+
+	private void clear(Series s) {
+		synchronized (s) {
+			Snapshot snapshot = s.snapshot;
+			for (int i = 0; i < snapshot.chunks.length; i++)
+				release(snapshot.chunks[i], snapshot.sizes[i]);
+			s.snapshot = Snapshot.EMPTY;
+			s.removed = true;
+		}
+	}
+
+	/**
+	 * 全ての観測値を削除する。
+	 */
+	public void invalidateAll() {
+		Iterator<Series> i = series.values().iterator();
+		while (i.hasNext()) {
+			Series s = i.next();
+			i.remove();
+			clear(s);
+		}
+	}
+
+	/**
+	 * 系列の数を返す。
+	 * @return 系列の数
+	 */
+	public int getSeriesCount() {
+		return series.size();
+	}
+
+	/**
+	 * 保持している観測値の行数を返す。欠測の行も含む。
+	 * @return 行数
+	 */
+	public long getRowCount() {
+		return rows.get();
+	}
+
+	/**
+	 * ヒープ外に確保しているバイト数を返す。
+	 * @return バイト数
+	 */
+	public long getOffHeapBytes() {
+		return offHeapBytes.get();
+	}
+
+	/**
+	 * ヒープ外に確保するバイト数の上限を返す。
+	 * @return バイト数
+	 */
+	public long getMaximumOffHeapBytes() {
+		return maximumOffHeapBytes;
+	}
+
+	/**
+	 * 上限を超えたために削除した系列の数を返す。
+	 * @return 系列の数
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+}
@@ -0,0 +1,488 @@
+/**
+ * ResultCache
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.cache;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.agmodel.metbroker_common.weatherData.MetDuration;
+import net.agmodel.metbroker_common.weatherData.MetRequestKey;
+
+/**
+ * doRequestCache()の検索結果を保持するメモリ上のキャッシュ。
+ * ドライバ名とMetRequest.getKey()の組をキーとする。
+ * <br>
+ * <b>容量</b><br>
+ * 結果の推定バイト数の合計がmaximumWeightを超えないようにする。
+ * 登録時に容量が足りない場合は古いものから追出し候補とし、
+ * FrequencySketchで数えたアクセス頻度が登録しようとする結果より高い候補は残して次の候補を調べる(TinyLFU)。
+ * 候補が全て登録しようとする結果より頻繁に使われている場合は登録しない。
+ * これにより、一度しか使われない大量の検索で頻繁に使われる結果が追い出されることを防ぐ。
+ * <br>
+ * <b>有効期限</b><br>
+ * 有効期限は解像度(MetDuration)ごとに設定する。最近の毎時データは更新されるが、古い日別データは変わらないため、
+ * dateExtremesの終了がsettledAgeより前のリクエストの結果は期限切れにしない。
+ * <br>
+ * <b>並行性</b><br>
+ * 検索はConcurrentHashMapの参照だけでロックを取らない。登録・追出しはこのオブジェクトで同期する。
+ * ヒット・ミス・追出し・登録拒否の回数はドライバごとにLongAdderで数える。
+ *
+ * @see net.agmodel.metbroker.server.MetaDataRepositoryServer#doRequestCache(net.agmodel.metbroker_common.weatherData.MetRequest, String)
+ * @see net.agmodel.metbroker.server.MetaDataRepositoryServer#updateCache(String)
+ */
+public class ResultCache {
+
+	/**
+	 * 有効期限を設けないことを表す値。
+	 */
+	public static final long NO_EXPIRATION = -1L;
+
+	/**
+	 * 追出し候補を調べる最大数。
+	 */
+	private static final int MAX_CANDIDATES = 8;
+
+	/**
+	 * ドライバごとの統計。
+	 */
+	public static class Statistics {
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder evictions = new LongAdder();
+		private final LongAdder rejections = new LongAdder();
+
+		/**
+		 * キャッシュから結果を返した回数。
+		 * @return ヒット数
+		 */
+		public long getHitCount() {
+			return hits.sum();
+		}
+
+		/**
+		 * キャッシュに結果がなかった回数。期限切れを含む。
+		 * @return ミス数
+		 */
+		public long getMissCount() {
+			return misses.sum();
+		}
+
+		/**
+		 * 容量不足または期限切れで追い出した回数。
+		 * @return 追出し数
+		 */
+		public long getEvictionCount() {
+			return evictions.sum();
+		}
+
+		/**
+		 * 登録しなかった回数。アクセス頻度が低いため拒否した場合と、
+		 * 結果が最大の重みより大きい場合を含む。
+		 * @return 登録拒否数
+		 */
+		public long getRejectionCount() {
+			return rejections.sum();
+		}
+
+		/**
+		 * ヒット率を返す。
+		 * @return 0～1。検索がなければ0
+		 */
+		public double getHitRate() {
+			long h = hits.sum();
+			long total = h + misses.sum();
+			return total == 0 ? 0.0 : (double) h / total;
+		}
+	}
+
+	private static final class Key {
+		final String driver;
+		final MetRequestKey request;
+		final int hash;
+
+		Key(String driver, MetRequestKey request) {
+			this.driver = driver;
+			this.request = request;
+			this.hash = driver.hashCode() * 31 + request.hashCode();
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return hash == k.hash && driver.equals(k.driver)
+					&& request.equals(k.request);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final class Entry {
+		final Key key;
+		final String[] result;
+		final long weight;
+		final long expiresAt;
+
+		Entry(Key key, String[] result, long weight, long expiresAt) {
+			this.key = key;
+			this.result = result;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+	}
+
+	private final long maximumWeight;
+	private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+	private final ConcurrentMap<String, Statistics> statistics = new ConcurrentHashMap<String, Statistics>();
+	private final ConcurrentMap<MetDuration, Long> timeToLive = new ConcurrentHashMap<MetDuration, Long>();
+	private final FrequencySketch sketch;
+
+	/** 登録順の追出し候補。古いエントリが残っている場合があるので、entriesと照合して使う */
+	private final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+	private long weight;
+
+	private volatile long defaultTimeToLive = 10 * 60 * 1000L;
+	private volatile long settledAge = NO_EXPIRATION;
+
+	/**
+	 * キャッシュを作成する。
+	 * @param maximumWeight 保持する結果の推定バイト数の上限
+	 * @param expectedEntries 想定する登録数。アクセス頻度の記録に使う表の大きさを決める
+	 */
+	public ResultCache(long maximumWeight, int expectedEntries) {
+		this.maximumWeight = maximumWeight;
+		this.sketch = new FrequencySketch(expectedEntries);
+	}
+
+	/**
+	 * 解像度ごとの有効期限を設定する。
+	 * @param resolution 解像度
+	 * @param ttl 有効期限。単位はミリ秒。NO_EXPIRATIONは期限なし
+	 */
+	public void setTimeToLive(MetDuration resolution, long ttl) {
+		timeToLive.put(resolution, Long.valueOf(ttl));
+	}
+
+	/**
+	 * 解像度ごとの有効期限を返す。
+	 * @param resolution 解像度
+	 * @return 有効期限。単位はミリ秒
+	 */
+	public long getTimeToLive(MetDuration resolution) {
+		Long ttl = resolution == null ? null : timeToLive.get(resolution);
+		return ttl == null ? defaultTimeToLive : ttl.longValue();
+	}
+
+	/**
+	 * 解像度ごとの設定がない場合の有効期限を設定する。デフォルトは10分。
+	 * @param ttl 有効期限。単位はミリ秒。NO_EXPIRATIONは期限なし
+	 */
+	public void setDefaultTimeToLive(long ttl) {
+		defaultTimeToLive = ttl;
+	}
+
+	/**
+	 * データが確定したとみなす経過時間を設定する。
+	 * dateExtremesの終了がこれより前のリクエストの結果は期限切れにしない。
+	 * デフォルトはNO_EXPIRATIONで、全ての結果に有効期限を適用する。
+	 * @param age 経過時間。単位はミリ秒
+	 */
+	public void setSettledAge(long age) {
+		settledAge = age;
+	}
+
+	/**
+	 * キャッシュから結果を取得する。
+	 * 返す配列は保持している結果の複製なので、呼出し元が変更してもキャッシュには影響しない。
+	 * @param driver ドライバ名
+	 * @param request MetRequest.getKey()
+	 * @return 結果。ない場合や期限切れの場合、requestがnullの場合はnull
+	 */
+	public String[] get(String driver, MetRequestKey request) {
+		if (request == null)
+			return null;
+		Key key = new Key(driver, request);
+		sketch.increment(key.hash);
+		Statistics stats = statistics(driver);
+		Entry e = entries.get(key);
+		if (e == null) {
+			stats.misses.increment();
+			return null;
+		}
+		if (e.isExpired(System.currentTimeMillis())) {
+			stats.misses.increment();
+			if (remove(e))
+				stats.evictions.increment();
+			return null;
+		}
+		stats.hits.increment();
+		return e.result.clone();
+	}
+
+	/**
+	 * 結果をキャッシュに登録する。
+	 * 容量が足りず、追出し候補より使用頻度が低い場合は登録しない。
+	 * requestがnullの場合(キーのないMetRequest)も登録しない。
+	 * resultは複製して保持するので、登録後に呼出し元が変更してもキャッシュには影響しない。
+	 * @param driver ドライバ名
+	 * @param request MetRequest.getKey()
+	 * @param result 結果
+	 * @return 登録した場合はtrue
+	 */
+	public boolean put(String driver, MetRequestKey request, String[] result) {
+		if (request == null)
+			return false;
+		Key key = new Key(driver, request);
+		long now = System.currentTimeMillis();
+		Entry entry = new Entry(key, result.clone(), weigh(result), expiresAt(request, now));
+		Statistics stats = statistics(driver);
+		if (entry.weight > maximumWeight) {
+			stats.rejections.increment();
+			return false;
+		}
+		synchronized (this) {
+			Entry old = entries.get(key);
+			long needed = entry.weight - (old == null ? 0 : old.weight);
+			if (!makeRoom(needed, key, now)) {
+				stats.rejections.increment();
+				return false;
+			}
+			old = entries.put(key, entry);
+			if (old != null)
+				weight -= old.weight;
+			weight += entry.weight;
+			queue.addLast(entry);
+			if (queue.size() > 2 * entries.size() + 16)
+				compactQueue();
+		}
+		return true;
+	}
+
+	/**
+	 * neededバイト分の空きを作る。
+	 * 先に追出し候補を選び、空きが足りる場合だけ追い出す。足りない場合は何も追い出さない。
+	 * @return 空きを作れた場合はtrue
+	 */
+	private boolean makeRoom(long needed, Key candidate, long now) {
+		long shortfall = weight + needed - maximumWeight;
+		if (shortfall <= 0)
+			return true;
+		int candidateFrequency = sketch.frequency(candidate.hash);
+		Set<Entry> victims = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+		long freed = 0;
+		int examined = 0;
+		int scanned = 0;
+		Iterator<Entry> i = queue.iterator();
+		while (freed < shortfall) {
+			if (!i.hasNext())
+				return false;
+			Entry e = i.next();
+			scanned++;
+			if (entries.get(e.key) != e || victims.contains(e))
+				continue; // stale, or queued twice
+			if (e.key.equals(candidate)
+					|| (!e.isExpired(now) && sketch.frequency(e.key.hash) >= candidateFrequency)) {
+				// being replaced anyway, or used at least as often as the
+				// candidate; keep it and try the next one
+				if (++examined >= MAX_CANDIDATES)
+					return false;
+				continue;
+			}
+			victims.add(e);
+			freed += e.weight;
+		}
+		// evict the victims; the entries kept go to the back of the queue
+		for (int n = 0; n < scanned; n++) {
+			Entry e = queue.pollFirst();
+			if (victims.contains(e)) {
+				if (entries.remove(e.key, e)) {
+					weight -= e.weight;
+					statistics(e.key.driver).evictions.increment();
+				}
+			} else if (entries.get(e.key) == e) {
+				queue.addLast(e);
+			}
+		}
+		return true;
+	}
+
+	private void compactQueue() {
+		Iterator<Entry> i = queue.iterator();
+		while (i.hasNext()) {
+			Entry e = i.next();
+			if (entries.get(e.key) != e)
+				i.remove();
+		}
+	}
+
+	private synchronized boolean remove(Entry e) {
+		if (entries.remove(e.key, e)) {
+			weight -= e.weight;
+			return true;
+		}
+		return false;
+	}
+
+	private long expiresAt(MetRequestKey request, long now) {
+		long age = settledAge;
+		if (age != NO_EXPIRATION && request.getEndMillis() < now - age)
+			return Long.MAX_VALUE;
+		long ttl = getTimeToLive(request.getResolution());
+		if (ttl == NO_EXPIRATION)
+			return Long.MAX_VALUE;
+		return now + ttl;
+	}
+
+	/**
+	 * 結果のおおよそのバイト数を求める。
+	 */
+	private static long weigh(String[] result) {
+		long w = 16 + 4L * result.length;
+		for (int i = 0; i < result.length; i++) {
+			if (result[i] != null)
+				w += 40 + 2L * result[i].length();
+		}
+		return w;
+	}
+
+	/**
+	 * ドライバの結果を全て削除する。updateCache()で使用する。
+	 * @param driver ドライバ名
+	 * @return 削除した件数
+	 */
+	public synchronized int invalidate(String driver) {
+		int n = 0;
+		Iterator<Entry> i = entries.values().iterator();
+		while (i.hasNext()) {
+			Entry e = i.next();
+			if (e.key.driver.equals(driver)) {
+				i.remove();
+				weight -= e.weight;
+				n++;
+			}
+		}
+		compactQueue();
+		return n;
+	}
+
+	/**
+	 * ドライバの結果のうち、指定した観測地点・地域の結果だけを削除する。
+	 * MetaDataの差分更新で使用する。
+	 * MetRequestKey.getLocationKey()またはその文字列表現がlocationsに含まれる結果を削除する。
+	 * @param driver ドライバ名
+	 * @param locations 観測地点・地域のキーまたはID
+	 * @return 削除した件数
+	 */
+	public synchronized int invalidate(String driver, Collection<?> locations) {
+		if (locations.isEmpty())
+			return 0;
+		int n = 0;
+		Iterator<Entry> i = entries.values().iterator();
+		while (i.hasNext()) {
+			Entry e = i.next();
+			if (!e.key.driver.equals(driver))
+				continue;
+			Object location = e.key.request.getLocationKey();
+			if (locations.contains(location) || locations.contains(String.valueOf(location))) {
+				i.remove();
+				weight -= e.weight;
+				n++;
+			}
+		}
+		compactQueue();
+		return n;
+	}
+
+	/**
+	 * 全ての結果を削除する。
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+		queue.clear();
+		weight = 0;
+	}
+
+	/**
+	 * 登録されている結果の数を返す。
+	 * @return 件数
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * 登録されている結果の推定バイト数の合計を返す。
+	 * @return バイト数
+	 */
+	public synchronized long getWeightedSize() {
+		return weight;
+	}
+
+	/**
+	 * 推定バイト数の上限を返す。
+	 * @return バイト数
+	 */
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	/**
+	 * ドライバの統計を返す。
+	 * @param driver ドライバ名
+	 * @return 統計。カウンタは呼出し後も更新される。
+	 * 統計のないドライバの場合は、保持しない空の統計
+	 */
+	public Statistics getStatistics(String driver) {
+		// a lookup must not register the driver, or polling over JMX would add it to getDrivers()
+		Statistics s = statistics.get(driver);
+		return s == null ? new Statistics() : s;
+	}
+
+	private Statistics statistics(String driver) {
+		Statistics s = statistics.get(driver);
+		if (s == null) {
+			Statistics created = new Statistics();
+			s = statistics.putIfAbsent(driver, created);
+			if (s == null)
+				s = created;
+		}
+		return s;
+	}
+
+	/**
+	 * 統計のあるドライバ名を返す。
+	 * @return ドライバ名の配列
+	 */
+	public String[] getDrivers() {
+		return statistics.keySet().toArray(new String[0]);
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ * SegmentIndex
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.agmodel.metbroker_common.physical.Period;
+import net.agmodel.metbroker_common.physical.PeriodSet;
+import net.agmodel.metbroker_common.weatherData.MetElement;
+
+/**
+ * キャッシュ済みの時間範囲(セグメント)を観測地点・気象要素ごとに索引付けする。
+ * 1つのドライバにつき1つ作成し、MetaDataRepositoryServer.doRequestCache()で
+ * リクエストのdateExtremesと重なるセグメントを検索するために使用する。
+ * <br>
+ * 観測地点・気象要素ごとにIntervalTreeを持つので、検索はO(log n + k)で行える。
+ * updateCache()でセグメントを追加している間も、検索はロックを取らずに行える。
+ *
+ * @param <V> セグメントに対応付ける値
+ * @see IntervalTree
+ * @see net.agmodel.metbroker.server.MetaDataRepositoryServer#doRequestCache(net.agmodel.metbroker_common.weatherData.MetRequest, String)
+ */
+public class SegmentIndex<V> {
+
+	/**
+	 * 観測地点と気象要素の組。
+	 */
+	private static final class Key {
+		final String station;
+		final int element;
+
+		Key(String station, MetElement element) {
+			this.station = station;
+			this.element = element.ord;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return element == k.element && station.equals(k.station);
+		}
+
+		public int hashCode() {
+			return station.hashCode() * 31 + element;
+		}
+	}
+
+	/**
+	 * 観測地点・気象要素ごとのIntervalTree。
+	 */
+	private static final class Tree<V> extends IntervalTree<V> {
+		/** treesから削除済みの場合はtrue。木のロックを取って参照する */
+		boolean removed;
+	}
+
+	private final ConcurrentMap<Key, Tree<V>> trees = new ConcurrentHashMap<Key, Tree<V>>();
+
+	private Tree<V> tree(Key key) {
+		Tree<V> t = trees.get(key);
+		if (t == null) {
+			Tree<V> created = new Tree<V>();
+			t = trees.putIfAbsent(key, created);
+			if (t == null)
+				t = created;
+		}
+		return t;
+	}
+
+	/**
+	 * 木をtreesから外す。呼出し元は木のロックを取っていること。
+	 */
+	private void unlink(Key key, Tree<V> t) {
+		if (trees.remove(key, t))
+			t.removed = true;
+	}
+
+	/**
+	 * セグメントを登録する。同じ範囲が登録済みの場合は値を置き換える。
+	 * @param station 観測地点ID
+	 * @param element 気象要素
+	 * @param segment セグメントの時間範囲
+	 * @param value 値
+	 * @return 置き換えた以前の値。新規の場合はnull
+	 */
+	public V put(String station, MetElement element, Period segment, V value) {
+		Key key = new Key(station, element);
+		while (true) {
+			Tree<V> t = tree(key);
+			synchronized (t) {
+				// the tree may have been removed since it was looked up
+				if (!t.removed)
+					return t.put(segment.getStartMillis(), segment.getEndMillis(), value);
+			}
+		}
+	}
+
+	/**
+	 * セグメントを削除する。観測地点・気象要素のセグメントがなくなった場合は木も削除する。
+	 * @param station 観測地点ID
+	 * @param element 気象要素
+	 * @param segment セグメントの時間範囲
+	 * @return 削除した値。登録されていない場合はnull
+	 */
+	public V remove(String station, MetElement element, Period segment) {
+		Key key = new Key(station, element);
+		Tree<V> t = trees.get(key);
+		if (t == null)
+			return null;
+		synchronized (t) {
+			V removed = t.remove(segment.getStartMillis(), segment.getEndMillis());
+			if (t.isEmpty())
+				unlink(key, t);
+			return removed;
+		}
+	}
+
+	/**
+	 * 観測地点の全てのセグメントを削除する。
+	 * @param station 観測地点ID
+	 */
+	public void removeStation(String station) {
+		Iterator<Map.Entry<Key, Tree<V>>> i = trees.entrySet().iterator();
+		while (i.hasNext()) {
+			Map.Entry<Key, Tree<V>> e = i.next();
+			if (e.getKey().station.equals(station)) {
+				synchronized (e.getValue()) {
+					unlink(e.getKey(), e.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * 全てのセグメントを削除する。
+	 */
+	public void clear() {
+		Iterator<Map.Entry<Key, Tree<V>>> i = trees.entrySet().iterator();
+		while (i.hasNext()) {
+			Map.Entry<Key, Tree<V>> e = i.next();
+			synchronized (e.getValue()) {
+				unlink(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * 指定した範囲と重なるセグメントの値を開始時刻の順に返す。
+	 * @param station 観測地点ID
+	 * @param element 気象要素
+	 * @param range 検索範囲。通常はMetRequest.getDateExtremes()
+	 * @return 値のリスト
+	 */
+	public List<V> getOverlapping(String station, MetElement element, Period range) {
+		Tree<V> t = trees.get(new Key(station, element));
+		if (t == null)
+			return Collections.emptyList();
+		return t.getOverlapping(range.getStartMillis(), range.getEndMillis());
+	}
+
+	/**
+	 * 指定した範囲と重なるセグメントを開始時刻の順にvisitorに渡す。
+	 * @param station 観測地点ID
+	 * @param element 気象要素
+	 * @param range 検索範囲。通常はMetRequest.getDateExtremes()
+	 * @param visitor 結果を受け取るコールバック
+	 * @return 最後まで検索した場合はtrue、visitorが打ち切った場合はfalse
+	 */
+	public boolean forEachOverlapping(String station, MetElement element,
+			Period range, IntervalTree.Visitor<? super V> visitor) {
+		Tree<V> t = trees.get(new Key(station, element));
+		if (t == null)
+			return true;
+		return t.forEachOverlapping(range.getStartMillis(), range.getEndMillis(),
+				visitor);
+	}
+
+	/**
+	 * 指定した時刻を含むセグメントの値を返す。
+	 * @param station 観測地点ID
+	 * @param element 気象要素
+	 * @param instant 時刻(エポックミリ秒)
+	 * @return 値のリスト
+	 */
+	public List<V> getContaining(String station, MetElement element, long instant) {
+		Tree<V> t = trees.get(new Key(station, element));
+		if (t == null)
+			return Collections.emptyList();
+		return t.getContaining(instant);
+	}
+
+	/**
+	 * 指定した範囲のうち、キャッシュ済みのセグメントで覆われている部分を返す。
+	 * range.difference()で取得が必要な部分を求められる。
+	 * @param station 観測地点ID
+	 * @param element 気象要素
+	 * @param range 検索範囲。通常はMetRequest.getDateExtremes()
+	 * @return rangeのうちキャッシュ済みの部分
+	 */
+	public PeriodSet getCoverage(String station, MetElement element, Period range) {
+		Tree<V> t = trees.get(new Key(station, element));
+		if (t == null)
+			return PeriodSet.EMPTY;
+		final LongBuffer starts = new LongBuffer();
+		final LongBuffer ends = new LongBuffer();
+		t.forEachOverlapping(range.getStartMillis(), range.getEndMillis(),
+				new IntervalTree.Visitor<V>() {
+					public boolean visit(long start, long end, V value) {
+						starts.add(start);
+						ends.add(end);
+						return true;
+					}
+				});
+		return PeriodSet.of(starts.toArray(), ends.toArray()).intersection(range);
+	}
+
+	/**
+	 * 索引付けしている観測地点・気象要素の組の数を返す。
+	 * @return 組の数
+	 */
+	public int size() {
+		return trees.size();
+	}
+
+	/**
+	 * 伸長可能なlong配列。
+	 */
+	private static final class LongBuffer {
+		long[] data = new long[16];
+		int length;
+
+		void add(long v) {
+			if (length == data.length)
+				data = Arrays.copyOf(data, length * 2);
+			data[length++] = v;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(data, length);
+		}
+	}
+}
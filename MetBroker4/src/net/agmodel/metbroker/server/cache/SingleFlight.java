@@ -0,0 +1,109 @@
+/**
+ * SingleFlight
+ * Copyright (C) 2014
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 同一キーの処理を同時に1回だけ実行する(single-flight)。
+ * <br>
+ * 毎正時など、同じ観測地点・期間・気象要素のリクエストが同時に届くことが多い。
+ * doRequestCache()でMetRequest.getKey()をキーにしてドライバ呼出しをこのクラス経由で行うと、
+ * 実行中の同じキーの呼出しがあればそれを待ち、同じ結果を受け取る。
+ * 処理が終わるとキーは解放されるので、結果の保持はキャッシュ側で行う。
+ *
+ * @param <K> キー。通常はMetRequestKey
+ * @param <V> 処理結果
+ * @see net.agmodel.metbroker_common.weatherData.MetRequest#getKey()
+ */
+public class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+	private final LongAdder executed = new LongAdder();
+	private final LongAdder shared = new LongAdder();
+
+	/**
+	 * keyの処理を実行し、結果を返す。
+	 * 同じkeyの処理が実行中であれば、新たに実行せずにその結果を待って返す。
+	 * 処理が例外を投げた場合は、待っていた全ての呼出し元に同じ例外を投げる。
+	 * keyがnullの場合(キーのないMetRequest)はまとめずにそのまま実行する。
+	 * @param key キー。nullも可
+	 * @param loader 処理。実行中のものがない場合だけ呼出し元のスレッドで実行する
+	 * @return 処理結果
+	 * @throws Exception loaderが投げた例外、または待機中の割込み
+	 */
+	public V execute(K key, Callable<V> loader) throws Exception {
+		if (key == null) {
+			executed.increment();
+			return loader.call();
+		}
+		FutureTask<V> task = new FutureTask<V>(loader);
+		FutureTask<V> running = inFlight.putIfAbsent(key, task);
+		if (running == null) {
+			executed.increment();
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(key, task);
+			}
+			running = task;
+		} else {
+			shared.increment();
+		}
+		try {
+			return running.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw e;
+		}
+	}
+
+	/**
+	 * 実行中の処理の数を返す。
+	 * @return 実行中のキーの数
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+
+	/**
+	 * 実際に処理を実行した回数を返す。
+	 * @return 実行回数
+	 */
+	public long getExecutedCount() {
+		return executed.sum();
+	}
+
+	/**
+	 * 実行中の処理の結果を共有した回数を返す。
+	 * @return 共有した回数
+	 */
+	public long getSharedCount() {
+		return shared.sum();
+	}
+}
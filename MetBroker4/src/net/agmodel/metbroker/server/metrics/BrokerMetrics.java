@@ -0,0 +1,291 @@
+/**
+ * BrokerMetrics
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.agmodel.metbroker.server.CompiledDictionary;
+import net.agmodel.metbroker.server.CompiledMetDictionary;
+import net.agmodel.metbroker.server.DictionaryWatcher;
+import net.agmodel.metbroker.server.cache.ResultCache;
+import net.agmodel.metbroker.server.cache.SingleFlight;
+import net.agmodel.metbroker_common.weatherData.MetRequest;
+
+/**
+ * MetaDataRepositoryServerの稼働状況を集計し、JMXで公開する。
+ * <br>
+ * キャッシュの状態はResultCache、呼出しの共有はSingleFlightから読み出す。
+ * リクエスト数や処理中の数はLongAdderで数え、処理時間はRequestMetricsとDriverMetricsのヒストグラムに記録する。
+ * どれもロックを取らないので、doRequestCache()の処理中に呼び出してよい。
+ * <br>
+ * register()でMBeanServerに登録すると、BrokerMetricsMXBeanと、ドライバごとのDriverMetricsMXBeanを公開する。
+ * 登録後に初めて記録したドライバもその時点で登録する。
+ * 
+ * @see BrokerMetricsMXBean
+ * @see DriverMetricsMXBean
+ * @see RequestMetrics
+ */
+public class BrokerMetrics implements BrokerMetricsMXBean {
+
+	/** ObjectNameのドメイン */
+	public static final String DOMAIN = "net.agmodel.metbroker";
+
+	private final ResultCache cache;
+	private final SingleFlight<?, ?> singleFlight;
+	private final RequestMetrics requestMetrics = new RequestMetrics();
+	private final ConcurrentMap<String, DriverMetrics> drivers = new ConcurrentHashMap<String, DriverMetrics>();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder inFlight = new LongAdder();
+	private volatile CompiledMetDictionary dictionary;
+	private volatile DictionaryWatcher dictionaryWatcher;
+	private volatile MBeanServer server;
+
+	/**
+	 * @param cache 検索結果のキャッシュ。ない場合はnull
+	 * @param singleFlight ドライバ呼出しの共有。ない場合はnull
+	 */
+	public BrokerMetrics(ResultCache cache, SingleFlight<?, ?> singleFlight) {
+		this.cache = cache;
+		this.singleFlight = singleFlight;
+	}
+
+	/**
+	 * 状態を公開する用語集を設定する。
+	 * @param dictionary 用語集
+	 */
+	public void setDictionary(CompiledMetDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * 読み直しの状態を公開する用語集の監視を設定する。
+	 * @param dictionaryWatcher 用語集の監視
+	 */
+	public void setDictionaryWatcher(DictionaryWatcher dictionaryWatcher) {
+		this.dictionaryWatcher = dictionaryWatcher;
+	}
+
+	/**
+	 * ドライバの統計を返す。初めての場合は作成し、登録済みのMBeanServerにも登録する。
+	 * @param driver ドライバ名
+	 * @return ドライバの統計
+	 */
+	public DriverMetrics getDriverMetrics(String driver) {
+		DriverMetrics d = drivers.get(driver);
+		if (d == null) {
+			DriverMetrics created = new DriverMetrics(driver, cache);
+			d = drivers.putIfAbsent(driver, created);
+			if (d == null) {
+				d = created;
+				MBeanServer s = server;
+				if (s != null)
+					registerQuietly(s, d);
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * リクエストの処理の段階ごとの時間を記録するRequestMetricsを返す。
+	 * @return RequestMetrics
+	 */
+	public RequestMetrics getRequestMetrics() {
+		return requestMetrics;
+	}
+
+	/**
+	 * リクエストの受付を記録する。doRequestCache()の最初に呼ぶ。
+	 */
+	public void requestStarted() {
+		requests.increment();
+		inFlight.increment();
+	}
+
+	/**
+	 * リクエストの完了を記録する。doRequestCache()が結果を返す直前に、エラーの場合も必ず呼ぶ。
+	 * @param driver ドライバ名
+	 * @param request 処理を終えたリクエスト
+	 */
+	public void requestFinished(String driver, MetRequest request) {
+		inFlight.decrement();
+		requestMetrics.record(driver, request);
+	}
+
+	/**
+	 * MBeanServerに登録する。
+	 * @param server 登録先。通常はManagementFactory.getPlatformMBeanServer()
+	 * @throws JMException 登録できない場合
+	 */
+	public void register(MBeanServer server) throws JMException {
+		server.registerMBean(this, new ObjectName(DOMAIN + ":type=Broker"));
+		this.server = server;
+		for (DriverMetrics d : drivers.values())
+			registerQuietly(server, d);
+	}
+
+	/**
+	 * MBeanServerへの登録を解除する。
+	 * @throws JMException 解除できない場合
+	 */
+	public void unregister() throws JMException {
+		MBeanServer s = server;
+		if (s == null)
+			return;
+		server = null;
+		s.unregisterMBean(new ObjectName(DOMAIN + ":type=Broker"));
+		for (DriverMetrics d : drivers.values()) {
+			ObjectName name = driverName(d.getDriver());
+			if (s.isRegistered(name))
+				s.unregisterMBean(name);
+		}
+	}
+
+	private static ObjectName driverName(String driver) throws JMException {
+		return new ObjectName(DOMAIN + ":type=Driver,name=" + ObjectName.quote(driver));
+	}
+
+	private static void registerQuietly(MBeanServer server, DriverMetrics d) {
+		try {
+			ObjectName name = driverName(d.getDriver());
+			if (!server.isRegistered(name))
+				server.registerMBean(d, name);
+		} catch (JMException e) {
+			// statistics are still collected; only the JMX view is missing
+		}
+	}
+
+	public int getCacheSize() {
+		return cache == null ? 0 : cache.size();
+	}
+
+	public long getCacheWeightedSize() {
+		return cache == null ? 0 : cache.getWeightedSize();
+	}
+
+	public long getCacheMaximumWeight() {
+		return cache == null ? 0 : cache.getMaximumWeight();
+	}
+
+	public long getCacheHitCount() {
+		long n = 0;
+		if (cache != null) {
+			for (String d : cache.getDrivers())
+				n += cache.getStatistics(d).getHitCount();
+		}
+		return n;
+	}
+
+	public long getCacheMissCount() {
+		long n = 0;
+		if (cache != null) {
+			for (String d : cache.getDrivers())
+				n += cache.getStatistics(d).getMissCount();
+		}
+		return n;
+	}
+
+	public double getCacheHitRate() {
+		long hits = getCacheHitCount();
+		long total = hits + getCacheMissCount();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	public long getCacheEvictionCount() {
+		long n = 0;
+		if (cache != null) {
+			for (String d : cache.getDrivers())
+				n += cache.getStatistics(d).getEvictionCount();
+		}
+		return n;
+	}
+
+	public long getCacheRejectionCount() {
+		long n = 0;
+		if (cache != null) {
+			for (String d : cache.getDrivers())
+				n += cache.getStatistics(d).getRejectionCount();
+		}
+		return n;
+	}
+
+	public long getInFlightRequests() {
+		return inFlight.sum();
+	}
+
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	public long getCoalescedRequestCount() {
+		return singleFlight == null ? 0 : singleFlight.getSharedCount();
+	}
+
+	public String[] getDrivers() {
+		return drivers.keySet().toArray(new String[0]);
+	}
+
+	public String[] getDictionaryLocales() {
+		return getDictionaryCompiledAt().keySet().toArray(new String[0]);
+	}
+
+	public Map<String, Long> getDictionaryCompiledAt() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		CompiledMetDictionary d = dictionary;
+		if (d != null) {
+			for (Locale l : d.getLoadedLocales()) {
+				CompiledDictionary c = d.getLoaded(l);
+				// a locale whose first load failed has no dictionary yet
+				if (c != null)
+					result.put(l.toString(), Long.valueOf(c.getCompiledAt()));
+			}
+		}
+		return result;
+	}
+
+	public long getDictionaryReloadCount() {
+		DictionaryWatcher w = dictionaryWatcher;
+		return w == null ? 0 : w.getReloadCount();
+	}
+
+	public long getDictionaryReloadFailureCount() {
+		DictionaryWatcher w = dictionaryWatcher;
+		return w == null ? 0 : w.getFailureCount();
+	}
+
+	public boolean isDictionaryWatcherRunning() {
+		DictionaryWatcher w = dictionaryWatcher;
+		return w != null && w.isRunning();
+	}
+
+	public void reset() {
+		requests.reset();
+		requestMetrics.reset();
+		for (DriverMetrics d : drivers.values())
+			d.reset();
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * BrokerMetricsMXBean
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.metrics;
+
+import java.util.Map;
+
+/**
+ * MetBroker全体の稼働状況をJMXで公開するインタフェース。
+ * ObjectNameは net.agmodel.metbroker:type=Broker となる。
+ * 
+ * @see BrokerMetrics
+ * @see DriverMetricsMXBean
+ */
+public interface BrokerMetricsMXBean {
+
+	/**
+	 * ResultCacheに保持している結果の数を返す。
+	 * @return 件数
+	 */
+	public int getCacheSize();
+
+	/**
+	 * ResultCacheに保持している結果の推定バイト数を返す。
+	 * @return バイト数
+	 */
+	public long getCacheWeightedSize();
+
+	/**
+	 * ResultCacheの推定バイト数の上限を返す。
+	 * @return バイト数
+	 */
+	public long getCacheMaximumWeight();
+
+	/**
+	 * 全ドライバのキャッシュのヒット数を返す。
+	 * @return 回数
+	 */
+	public long getCacheHitCount();
+
+	/**
+	 * 全ドライバのキャッシュのミス数を返す。
+	 * @return 回数
+	 */
+	public long getCacheMissCount();
+
+	/**
+	 * 全ドライバのキャッシュのヒット率を返す。
+	 * @return 0～1
+	 */
+	public double getCacheHitRate();
+
+	/**
+	 * 容量のためにキャッシュから追い出した結果の数を返す。
+	 * @return 件数
+	 */
+	public long getCacheEvictionCount();
+
+	/**
+	 * キャッシュに登録しなかった結果の数を返す。
+	 * 頻度が低いために拒否した結果と、キャッシュの最大の重みより大きい結果を含む。
+	 * @return 件数
+	 */
+	public long getCacheRejectionCount();
+
+	/**
+	 * 処理中のリクエストの数を返す。
+	 * @return 件数
+	 */
+	public long getInFlightRequests();
+
+	/**
+	 * 受け付けたリクエストの数を返す。
+	 * @return 件数
+	 */
+	public long getRequestCount();
+
+	/**
+	 * 同時に届いた同じリクエストとドライバ呼出しを共有した数を返す。
+	 * @return 件数
+	 */
+	public long getCoalescedRequestCount();
+
+	/**
+	 * 統計のあるドライバ名を返す。
+	 * @return ドライバ名の配列
+	 */
+	public String[] getDrivers();
+
+	/**
+	 * 用語集を読み込み済みのロケールを返す。
+	 * @return ロケールの配列。用語集を設定していない場合は空
+	 */
+	public String[] getDictionaryLocales();
+
+	/**
+	 * 読み込み済みのロケールごとに、用語集を読み込んだ時刻を返す。
+	 * @return ロケールから時刻(エポックミリ秒)への対応。用語集を設定していない場合は空
+	 */
+	public Map<String, Long> getDictionaryCompiledAt();
+
+	/**
+	 * DictionaryWatcherが用語集を読み直した回数を返す。
+	 * @return 回数。監視を設定していない場合は0
+	 */
+	public long getDictionaryReloadCount();
+
+	/**
+	 * DictionaryWatcherが用語集の読み直しに失敗した回数を返す。
+	 * @return 回数。監視を設定していない場合は0
+	 */
+	public long getDictionaryReloadFailureCount();
+
+	/**
+	 * DictionaryWatcherが用語集のディレクトリを監視中かどうかを返す。
+	 * @return 監視中の場合はtrue。監視を設定していない場合、監視が終了した場合はfalse
+	 */
+	public boolean isDictionaryWatcherRunning();
+
+	/**
+	 * ドライバごとの統計を含め、全ての統計を消去する。キャッシュの内容は消去しない。
+	 */
+	public void reset();
+}
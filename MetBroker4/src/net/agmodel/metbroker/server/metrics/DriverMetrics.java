@@ -0,0 +1,146 @@
+/**
+ * DriverMetrics
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import net.agmodel.metbroker.server.cache.ResultCache;
+
+/**
+ * ドライバごとの稼働状況。
+ * 問合せの回数とエラー数はLongAdderで数え、問合せ時間はLatencyHistogramに記録するので、
+ * doRequestCache()などの処理からロックを取らずに呼び出せる。
+ * 
+ * @see BrokerMetrics#getDriverMetrics(String)
+ */
+public class DriverMetrics implements DriverMetricsMXBean {
+
+	private final String driver;
+	private final ResultCache cache;
+	private final LongAdder queries = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder reloads = new LongAdder();
+	private final LongAdder reloadFailures = new LongAdder();
+	private volatile long lastReloadTime;
+	private volatile long lastReloadNanos;
+	private volatile long since = System.nanoTime();
+
+	DriverMetrics(String driver, ResultCache cache) {
+		this.driver = driver;
+		this.cache = cache;
+	}
+
+	/**
+	 * ドライバへの問合せを1回記録する。
+	 * @param nanos 問合せにかかった時間(ナノ秒)
+	 * @param failed エラーになった場合はtrue
+	 */
+	public void queried(long nanos, boolean failed) {
+		queries.increment();
+		if (failed)
+			errors.increment();
+		latency.record(nanos);
+	}
+
+	/**
+	 * MetaDataの更新を1回記録する。
+	 * @param startTime 更新を開始した時刻(エポックミリ秒)
+	 * @param nanos 更新にかかった時間(ナノ秒)
+	 * @param failed 失敗した場合はtrue
+	 */
+	public void reloaded(long startTime, long nanos, boolean failed) {
+		reloads.increment();
+		if (failed)
+			reloadFailures.increment();
+		lastReloadTime = startTime;
+		lastReloadNanos = nanos;
+	}
+
+	/**
+	 * 問合せ時間のヒストグラムを返す。
+	 * @return ヒストグラム
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public String getDriver() {
+		return driver;
+	}
+
+	public long getQueryCount() {
+		return queries.sum();
+	}
+
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	public double getErrorRate() {
+		long q = queries.sum();
+		return q == 0 ? 0.0 : (double) errors.sum() / q;
+	}
+
+	public double getQueriesPerSecond() {
+		double seconds = (System.nanoTime() - since) / 1e9;
+		return seconds <= 0 ? 0.0 : queries.sum() / seconds;
+	}
+
+	public double getLatencyP50Millis() {
+		return latency.getP50() / 1e6;
+	}
+
+	public double getLatencyP99Millis() {
+		return latency.getP99() / 1e6;
+	}
+
+	public double getLatencyP999Millis() {
+		return latency.getP999() / 1e6;
+	}
+
+	public long getReloadCount() {
+		return reloads.sum();
+	}
+
+	public long getReloadFailureCount() {
+		return reloadFailures.sum();
+	}
+
+	public long getLastReloadTime() {
+		return lastReloadTime;
+	}
+
+	public double getLastReloadMillis() {
+		return lastReloadNanos / 1e6;
+	}
+
+	public double getCacheHitRate() {
+		return cache == null ? 0.0 : cache.getStatistics(driver).getHitRate();
+	}
+
+	public void reset() {
+		queries.reset();
+		errors.reset();
+		latency.reset();
+		reloads.reset();
+		reloadFailures.reset();
+		since = System.nanoTime();
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * DriverMetricsMXBean
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.metrics;
+
+/**
+ * ドライバごとの稼働状況をJMXで公開するインタフェース。
+ * ObjectNameは net.agmodel.metbroker:type=Driver,name=ドライバ名 となる。
+ * 
+ * @see DriverMetrics
+ */
+public interface DriverMetricsMXBean {
+
+	/**
+	 * ドライバ名を返す。
+	 * @return ドライバ名
+	 */
+	public String getDriver();
+
+	/**
+	 * ドライバへの問合せ回数を返す。
+	 * @return 回数
+	 */
+	public long getQueryCount();
+
+	/**
+	 * ドライバへの問合せのうち、エラーになった回数を返す。
+	 * @return 回数
+	 */
+	public long getErrorCount();
+
+	/**
+	 * エラーになった問合せの割合を返す。
+	 * @return 0～1。問合せがない場合は0
+	 */
+	public double getErrorRate();
+
+	/**
+	 * 統計を開始してからの1秒あたりの問合せ回数を返す。
+	 * @return 回数/秒
+	 */
+	public double getQueriesPerSecond();
+
+	/**
+	 * 問合せ時間の中央値を返す。
+	 * @return ミリ秒
+	 */
+	public double getLatencyP50Millis();
+
+	/**
+	 * 問合せ時間の99パーセンタイルを返す。
+	 * @return ミリ秒
+	 */
+	public double getLatencyP99Millis();
+
+	/**
+	 * 問合せ時間の99.9パーセンタイルを返す。
+	 * @return ミリ秒
+	 */
+	public double getLatencyP999Millis();
+
+	/**
+	 * MetaDataの更新回数を返す。
+	 * @return 回数
+	 */
+	public long getReloadCount();
+
+	/**
+	 * MetaDataの更新のうち、失敗した回数を返す。
+	 * @return 回数
+	 */
+	public long getReloadFailureCount();
+
+	/**
+	 * 最後にMetaDataを更新した時刻を返す。
+	 * @return エポックミリ秒。更新していない場合は0
+	 */
+	public long getLastReloadTime();
+
+	/**
+	 * 最後のMetaDataの更新にかかった時間を返す。
+	 * @return ミリ秒
+	 */
+	public double getLastReloadMillis();
+
+	/**
+	 * ResultCacheに保持しているこのドライバの結果のヒット率を返す。
+	 * @return 0～1
+	 */
+	public double getCacheHitRate();
+
+	/**
+	 * 統計を消去する。
+	 */
+	public void reset();
+}
@@ -0,0 +1,169 @@
+/**
+ * LatencyHistogram
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 処理時間(ナノ秒)の分布を記録するヒストグラム。
+ * <br>
+ * HdrHistogramと同じく、値の桁(2の冪)ごとに64個の区間を設けるので、
+ * 1マイクロ秒から約18分まで、どの大きさの値も相対誤差1%程度で記録できる。
+ * 128ナノ秒未満の値はそのまま数える。上限を超える値は上限として数える。
+ * <br>
+ * 記録はAtomicLongArrayの1要素の加算だけで行い、ロックを取らない。
+ * 百分位数は要求された時に数え上げて求める。
+ * 記録と同時に読み出した場合、結果に一部の記録が含まれないことがある。
+ * 
+ * @see RequestMetrics
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 7;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT >>> 1;
+	/** 記録できる最大値(約18分) */
+	public static final long MAX_VALUE = (1L << 40) - 1;
+	private static final int SIZE = index(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	private static int index(long value) {
+		if (value < SUB_COUNT)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+		return shift * HALF_COUNT + (int) (value >>> shift);
+	}
+
+	/**
+	 * 区間の代表値(中央)を返す。
+	 */
+	private static long valueAt(int index) {
+		if (index < SUB_COUNT)
+			return index;
+		int shift = index / HALF_COUNT - 1;
+		long low = (long) (index - shift * HALF_COUNT) << shift;
+		return low + (1L << (shift - 1));
+	}
+
+	/**
+	 * 処理時間を1件記録する。
+	 * @param nanos 処理時間(ナノ秒)。負の値は0とする
+	 */
+	public void record(long nanos) {
+		long v = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+		counts.incrementAndGet(index(v));
+		count.increment();
+		sum.add(v);
+		long m = max.get();
+		while (v > m && !max.compareAndSet(m, v))
+			m = max.get();
+	}
+
+	/**
+	 * 記録した件数を返す。
+	 * @return 件数
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * 平均を返す。
+	 * @return ナノ秒。記録がない場合は0
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0.0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * 最大値を返す。
+	 * @return ナノ秒
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * 百分位数を返す。
+	 * @param quantile 0～1。p99なら0.99
+	 * @return ナノ秒。記録がない場合は0
+	 */
+	public long getValueAtQuantile(double quantile) {
+		long total = 0;
+		for (int i = 0; i < SIZE; i++)
+			total += counts.get(i);
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < SIZE; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(valueAt(i), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * 中央値を返す。
+	 * @return ナノ秒
+	 */
+	public long getP50() {
+		return getValueAtQuantile(0.50);
+	}
+
+	/**
+	 * 99パーセンタイルを返す。
+	 * @return ナノ秒
+	 */
+	public long getP99() {
+		return getValueAtQuantile(0.99);
+	}
+
+	/**
+	 * 99.9パーセンタイルを返す。
+	 * @return ナノ秒
+	 */
+	public long getP999() {
+		return getValueAtQuantile(0.999);
+	}
+
+	/**
+	 * 記録を全て消去する。
+	 */
+	public void reset() {
+		for (int i = 0; i < SIZE; i++)
+			counts.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	public String toString() {
+		return "count " + getCount() + ", p50 " + getP50() + "ns, p99 " + getP99()
+				+ "ns, p999 " + getP999() + "ns, max " + getMax() + "ns";
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * RequestMetrics
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.agmodel.metbroker_common.weatherData.MetRequest;
+import net.agmodel.metbroker_common.weatherData.RequestPhase;
+
+/**
+ * ドライバ・リクエストの種類ごとに、リクエスト全体と各段階の処理時間のヒストグラムを保持する。
+ * doRequestCache()が結果を返す直前にrecord()を呼ぶ。
+ * <br>
+ * ヒストグラムは初めて記録する時に作成し、以後は記録も読出しもロックを取らない。
+ * 
+ * @see LatencyHistogram
+ * @see net.agmodel.metbroker_common.weatherData.MetRequest#startPhase(RequestPhase)
+ */
+public class RequestMetrics {
+
+	/**
+	 * ドライバとリクエストの種類の組。
+	 */
+	private static final class Key {
+		final String driver;
+		final Class<?> requestClass;
+
+		Key(String driver, Class<?> requestClass) {
+			this.driver = driver;
+			this.requestClass = requestClass;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return requestClass == k.requestClass && driver.equals(k.driver);
+		}
+
+		public int hashCode() {
+			return driver.hashCode() * 31 + requestClass.hashCode();
+		}
+	}
+
+	/**
+	 * 1つの組のヒストグラム。phases[RequestPhase.ordinal()]が各段階で、totalが全体。
+	 */
+	private static final class Histograms {
+		final LatencyHistogram total = new LatencyHistogram();
+		final LatencyHistogram[] phases = new LatencyHistogram[RequestPhase.values().length];
+
+		Histograms() {
+			for (int i = 0; i < phases.length; i++)
+				phases[i] = new LatencyHistogram();
+		}
+	}
+
+	private final ConcurrentMap<Key, Histograms> histograms = new ConcurrentHashMap<Key, Histograms>();
+
+	private Histograms histograms(String driver, Class<?> requestClass) {
+		Key key = new Key(driver, requestClass);
+		Histograms h = histograms.get(key);
+		if (h == null) {
+			Histograms created = new Histograms();
+			h = histograms.putIfAbsent(key, created);
+			if (h == null)
+				h = created;
+		}
+		return h;
+	}
+
+	/**
+	 * リクエストの処理時間を記録する。
+	 * 全体の時間はsetProcessingCommenced()からの経過時間とし、各段階は入った段階だけを記録する。
+	 * @param driver ドライバ名
+	 * @param request 処理を終えたリクエスト
+	 */
+	public void record(String driver, MetRequest request) {
+		Histograms h = histograms(driver, request.getClass());
+		h.total.record(request.getElapsedNanos());
+		RequestPhase[] phases = RequestPhase.values();
+		for (int i = 0; i < phases.length; i++) {
+			long nanos = request.getPhaseNanos(phases[i]);
+			if (nanos > 0)
+				h.phases[i].record(nanos);
+		}
+	}
+
+	/**
+	 * ヒストグラムを返す。
+	 * @param driver ドライバ名
+	 * @param requestClass リクエストの種類。StationMetRequestなど
+	 * @param phase 段階。nullの場合はリクエスト全体
+	 * @return ヒストグラム。記録がない組の場合は、保持しない空のヒストグラム
+	 */
+	public LatencyHistogram getHistogram(String driver, Class<?> requestClass, RequestPhase phase) {
+		// a lookup must not register the pair, or polling unknown pairs would grow the map
+		Histograms h = histograms.get(new Key(driver, requestClass));
+		if (h == null)
+			return new LatencyHistogram();
+		return phase == null ? h.total : h.phases[phase.ordinal()];
+	}
+
+	/**
+	 * 記録のあるドライバ名を返す。
+	 * @return ドライバ名の配列
+	 */
+	public String[] getDrivers() {
+		Set<String> drivers = new TreeSet<String>();
+		for (Key k : histograms.keySet())
+			drivers.add(k.driver);
+		return drivers.toArray(new String[drivers.size()]);
+	}
+
+	/**
+	 * ドライバについて記録のあるリクエストの種類を返す。
+	 * @param driver ドライバ名
+	 * @return リクエストの種類の配列
+	 */
+	public Class<?>[] getRequestClasses(String driver) {
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		for (Key k : histograms.keySet()) {
+			if (k.driver.equals(driver))
+				classes.add(k.requestClass);
+		}
+		return classes.toArray(new Class<?>[classes.size()]);
+	}
+
+	/**
+	 * 全ての記録を消去する。
+	 */
+	public void reset() {
+		histograms.clear();
+	}
+}
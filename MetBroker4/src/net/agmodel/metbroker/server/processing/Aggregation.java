@@ -0,0 +1,38 @@
+/**
+ * Aggregation
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.processing;
+
+/**
+ * 集計の方法。
+ * 
+ * @see Summariser
+ * @see AggregationRules
+ */
+public enum Aggregation {
+	/** 合計。降水量、日照時間など */
+	SUM,
+	/** 平均。気温、湿度など */
+	MEAN,
+	/** 最小 */
+	MIN,
+	/** 最大 */
+	MAX,
+	/** 区間内で最も新しい値。積算値など */
+	LAST
+}
@@ -0,0 +1,67 @@
+/**
+ * AggregationRules
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.processing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.agmodel.metbroker_common.weatherData.MetElement;
+
+/**
+ * 気象要素ごとの集計方法。
+ * 降水量は合計、気温は平均・最小・最大のように、要素によって集計方法が異なるので、ドライバの設定で登録する。
+ * 登録のない要素は平均とする。
+ * 
+ * @see Summariser
+ */
+public class AggregationRules {
+
+	private static final Aggregation[] DEFAULT = { Aggregation.MEAN };
+
+	private final ConcurrentMap<Integer, Aggregation[]> rules = new ConcurrentHashMap<Integer, Aggregation[]>();
+
+	/**
+	 * 気象要素の集計方法を登録する。
+	 * @param element 気象要素
+	 * @param aggregations 集計方法。複数指定した場合はそれぞれの結果を作成する
+	 */
+	public void setRule(MetElement element, Aggregation... aggregations) {
+		if (aggregations.length == 0)
+			throw new IllegalArgumentException("AggregationRules.setRule called without aggregations for " + element);
+		rules.put(Integer.valueOf(element.ord), aggregations.clone());
+	}
+
+	/**
+	 * 気象要素の集計方法を返す。
+	 * @param element 気象要素
+	 * @return 集計方法。登録のない場合は平均
+	 */
+	public Aggregation[] getRule(MetElement element) {
+		Aggregation[] a = rules.get(Integer.valueOf(element.ord));
+		return (a == null ? DEFAULT : a).clone();
+	}
+
+	/**
+	 * 気象要素の集計方法の登録を削除する。
+	 * @param element 気象要素
+	 */
+	public void removeRule(MetElement element) {
+		rules.remove(Integer.valueOf(element.ord));
+	}
+}
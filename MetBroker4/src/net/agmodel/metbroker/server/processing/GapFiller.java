@@ -0,0 +1,200 @@
+/**
+ * GapFiller
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.processing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.agmodel.metbroker_common.weatherData.MetElement;
+
+/**
+ * 1つの観測地点の時系列の欠測を、前後の観測値から時間方向に補間する。
+ * MetRequest.shouldInterpolate()がtrueの場合に、近隣の観測地点を使う空間補間より先に行う。
+ * <br>
+ * 観測値は一定間隔に並んだdouble配列とし、欠測かどうかは有効ビット列(long配列、i番目のビットがi番目の値)で表す。
+ * 補間は配列をその場で書き換え、補間した値は有効ビットを立てると同時に補間ビット列にも記録する。
+ * 欠測の長さが気象要素ごとの上限を超える場合や、系列の先頭・末尾の欠測は補間しない。
+ * <br>
+ * 補間の方法は次の2つ。
+ * <ul>
+ * <li>LINEAR: 欠測の前後の観測値を直線で結ぶ。
+ * <li>SPLINE: 欠測の前後の観測値で、さらにその外側の観測値を含む3点を通る放物線の傾きを求め、3次エルミート曲線で結ぶ。
+ * 外側の観測値がない場合はその端の傾きを直線補間と同じにする。
+ * </ul>
+ * 補間は配列を1回走査するだけで、値ごとのオブジェクトの作成は行わない。
+ * 
+ * @see Summariser
+ * @see net.agmodel.metbroker_common.weatherData.MetRequest#shouldInterpolate()
+ */
+public class GapFiller {
+
+	/**
+	 * 補間の方法。
+	 */
+	public enum Mode {
+		/** 直線補間 */
+		LINEAR,
+		/** 3次エルミート補間 */
+		SPLINE
+	}
+
+	private final Mode mode;
+	private final int defaultMaxGap;
+	private final ConcurrentMap<Integer, Integer> maxGaps = new ConcurrentHashMap<Integer, Integer>();
+
+	/**
+	 * @param mode 補間の方法
+	 * @param defaultMaxGap 上限を登録していない気象要素で補間する欠測の最大の長さ(値の数)
+	 */
+	public GapFiller(Mode mode, int defaultMaxGap) {
+		this.mode = mode;
+		this.defaultMaxGap = defaultMaxGap;
+	}
+
+	/**
+	 * 気象要素ごとに、補間する欠測の最大の長さを登録する。
+	 * 降水量のように補間に向かない要素は0とする。
+	 * @param element 気象要素
+	 * @param maxGap 欠測の最大の長さ(値の数)
+	 */
+	public void setMaxGap(MetElement element, int maxGap) {
+		maxGaps.put(Integer.valueOf(element.ord), Integer.valueOf(maxGap));
+	}
+
+	/**
+	 * 気象要素の補間する欠測の最大の長さを返す。
+	 * @param element 気象要素
+	 * @return 欠測の最大の長さ(値の数)
+	 */
+	public int getMaxGap(MetElement element) {
+		Integer g = maxGaps.get(Integer.valueOf(element.ord));
+		return g == null ? defaultMaxGap : g.intValue();
+	}
+
+	/**
+	 * 補間の方法を返す。
+	 * @return 補間の方法
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * 気象要素の時系列の欠測を補間する。
+	 * @param element 気象要素
+	 * @param values 観測値。補間した値で書き換える
+	 * @param valid 有効ビット列。長さ(count+63)/64以上。補間した値のビットを立てる
+	 * @param filled 補間ビット列。長さ(count+63)/64以上。補間した値のビットを立てる。不要ならnull
+	 * @param count 値の数
+	 * @return 補間した値の数
+	 */
+	public int fill(MetElement element, double[] values, long[] valid, long[] filled, int count) {
+		return fill(values, valid, filled, 0, count, getMaxGap(element), mode);
+	}
+
+	/**
+	 * 値がvalues[from,to)の範囲の欠測を補間する。
+	 * @param values 観測値。補間した値で書き換える
+	 * @param valid 有効ビット列。補間した値のビットを立てる
+	 * @param filled 補間ビット列。補間した値のビットを立てる。不要ならnull
+	 * @param from 範囲の先頭
+	 * @param to 範囲の末尾の次
+	 * @param maxGap 補間する欠測の最大の長さ(値の数)
+	 * @param mode 補間の方法
+	 * @return 補間した値の数
+	 */
+	public static int fill(double[] values, long[] valid, long[] filled, int from, int to,
+			int maxGap, Mode mode) {
+		if (maxGap <= 0)
+			return 0;
+		int total = 0;
+		int before = -1; // the valid value before a
+		int a = nextValid(valid, from, to);
+		while (a >= 0) {
+			int b = nextValid(valid, a + 1, to);
+			if (b < 0)
+				break;
+			int gap = b - a - 1;
+			if (gap > 0 && gap <= maxGap) {
+				double va = values[a];
+				double vb = values[b];
+				double h = b - a;
+				if (mode == Mode.SPLINE) {
+					int after = nextValid(valid, b + 1, to);
+					double slope = (vb - va) / h;
+					double ma = before < 0 ? slope : slope(before, values[before], a, va, b, vb, a);
+					double mb = after < 0 ? slope : slope(a, va, b, vb, after, values[after], b);
+					for (int i = a + 1; i < b; i++) {
+						double t = (i - a) / h;
+						double t2 = t * t;
+						double t3 = t2 * t;
+						values[i] = (2 * t3 - 3 * t2 + 1) * va + (t3 - 2 * t2 + t) * h * ma
+								+ (-2 * t3 + 3 * t2) * vb + (t3 - t2) * h * mb;
+						mark(valid, filled, i);
+					}
+				} else {
+					for (int i = a + 1; i < b; i++) {
+						values[i] = va + (vb - va) * (i - a) / h;
+						mark(valid, filled, i);
+					}
+				}
+				total += gap;
+			}
+			before = a;
+			a = b;
+		}
+		return total;
+	}
+
+	/**
+	 * 3点(x0,y0),(x1,y1),(x2,y2)を通る放物線のxでの傾きを返す。
+	 */
+	private static double slope(double x0, double y0, double x1, double y1,
+			double x2, double y2, double x) {
+		return y0 * (2 * x - x1 - x2) / ((x0 - x1) * (x0 - x2))
+				+ y1 * (2 * x - x0 - x2) / ((x1 - x0) * (x1 - x2))
+				+ y2 * (2 * x - x0 - x1) / ((x2 - x0) * (x2 - x1));
+	}
+
+	private static void mark(long[] valid, long[] filled, int i) {
+		valid[i >>> 6] |= 1L << i;
+		if (filled != null)
+			filled[i >>> 6] |= 1L << i;
+	}
+
+	/**
+	 * i以降で最初に有効ビットの立っている位置を返す。ビット列を64個ずつ調べる。
+	 * @return 位置。to未満にない場合は-1
+	 */
+	private static int nextValid(long[] valid, int i, int to) {
+		if (i >= to)
+			return -1;
+		int w = i >>> 6;
+		long word = valid[w] & (-1L << i);
+		while (true) {
+			if (word != 0) {
+				int found = (w << 6) + Long.numberOfTrailingZeros(word);
+				return found < to ? found : -1;
+			}
+			if (++w << 6 >= to)
+				return -1;
+			word = valid[w];
+		}
+	}
+}
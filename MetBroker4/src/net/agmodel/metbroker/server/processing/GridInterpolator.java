@@ -0,0 +1,208 @@
+/**
+ * GridInterpolator
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.processing;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.agmodel.metbroker.server.spatial.NearestStationIndex;
+
+/**
+ * 観測地点の値から緯度経度の格子上の面を空間補間で作成する。
+ * SpatialMetRequestで補間が要求された場合に使用する。
+ * <br>
+ * 格子を32×32の格子点のタイルに分け、ForkJoinPoolでタイルごとに並列に処理するので、
+ * 広い範囲の細かい格子でも、リクエストのスレッド1つではなく全てのコアを使う。
+ * 各格子点の値は、NearestStationIndexで求めた近い順のk個の観測地点の値を、
+ * InterpolationKernelの重みで加重平均したものとする。
+ * 近隣の観測地点の一覧と距離はタイルごとに確保した配列を使い回し、格子点ごとの割当ては行わない。
+ * 既定の重みは逆距離加重(IDW)。
+ * <br>
+ * 観測地点の値は、NearestStationIndexの観測地点の番号を添字とするdouble配列で渡す。
+ * 値がNaNの観測地点は使わない。
+ * 
+ * @see NearestStationIndex
+ * @see InterpolationKernel
+ */
+public class GridInterpolator {
+
+	private static final int TILE = 32;
+
+	private final NearestStationIndex index;
+	private final InterpolationKernel kernel;
+	private final int neighbours;
+	private final ForkJoinPool pool;
+
+	/**
+	 * 逆距離加重でcommon poolを使用する。
+	 * @param index 近隣の観測地点の索引
+	 * @param neighbours 格子点ごとに使用する観測地点の数
+	 */
+	public GridInterpolator(NearestStationIndex index, int neighbours) {
+		this(index, new InverseDistanceWeighting(), neighbours, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param index 近隣の観測地点の索引
+	 * @param kernel 重み
+	 * @param neighbours 格子点ごとに使用する観測地点の数
+	 * @param pool 並列処理に使用するプール
+	 */
+	public GridInterpolator(NearestStationIndex index, InterpolationKernel kernel,
+			int neighbours, ForkJoinPool pool) {
+		if (neighbours <= 0)
+			throw new IllegalArgumentException("GridInterpolator called with " + neighbours + " neighbours");
+		this.index = index;
+		this.kernel = kernel;
+		this.neighbours = neighbours;
+		this.pool = pool;
+	}
+
+	/**
+	 * 格子点の値を求める。
+	 * 格子点はセルの中心とし、r行c列の格子点の緯度はsouth + (r + 0.5) * cellLatitude、
+	 * 経度はwest + (c + 0.5) * cellLongitudeとなる。
+	 * @param values 観測地点の値。NearestStationIndexの番号を添字とする
+	 * @param filter 使用する観測地点の条件。nullの場合は値のある全ての観測地点
+	 * @param south 格子の南端(度)
+	 * @param west 格子の西端(度)
+	 * @param cellLatitude セルの南北の大きさ(度)
+	 * @param cellLongitude セルの東西の大きさ(度)
+	 * @param rows 行数(南から北)
+	 * @param cols 列数(西から東)
+	 * @return 格子点の値。r * cols + cの位置に格納する。使える観測地点がない格子点はNaN
+	 */
+	public double[] interpolate(final double[] values, final NearestStationIndex.Filter filter,
+			double south, double west, double cellLatitude, double cellLongitude, int rows, int cols) {
+		if (values.length != index.size())
+			throw new IllegalArgumentException("GridInterpolator.interpolate called with "
+					+ values.length + " values for " + index.size() + " stations");
+		double[] grid = new double[rows * cols];
+		NearestStationIndex.Filter usable = new NearestStationIndex.Filter() {
+			public boolean accept(int station) {
+				return !Double.isNaN(values[station]) && (filter == null || filter.accept(station));
+			}
+		};
+		int tileRows = (rows + TILE - 1) / TILE;
+		int tileCols = (cols + TILE - 1) / TILE;
+		pool.invoke(new TileTask(new Grid(values, usable, south, west, cellLatitude, cellLongitude,
+				rows, cols, tileCols, grid), 0, tileRows * tileCols));
+		return grid;
+	}
+
+	/**
+	 * 1回のinterpolate()の入出力。
+	 */
+	private static final class Grid {
+		final double[] values;
+		final NearestStationIndex.Filter filter;
+		final double south;
+		final double west;
+		final double cellLatitude;
+		final double cellLongitude;
+		final int rows;
+		final int cols;
+		final int tileCols;
+		final double[] result;
+
+		Grid(double[] values, NearestStationIndex.Filter filter, double south, double west,
+				double cellLatitude, double cellLongitude, int rows, int cols, int tileCols,
+				double[] result) {
+			this.values = values;
+			this.filter = filter;
+			this.south = south;
+			this.west = west;
+			this.cellLatitude = cellLatitude;
+			this.cellLongitude = cellLongitude;
+			this.rows = rows;
+			this.cols = cols;
+			this.tileCols = tileCols;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * タイルの範囲[from,to)を処理する。2つ以上のタイルがあれば半分に分けて並列に処理する。
+	 */
+	private final class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Grid grid;
+		private final int from;
+		private final int to;
+
+		TileTask(Grid grid, int from, int to) {
+			this.grid = grid;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new TileTask(grid, from, mid), new TileTask(grid, mid, to));
+				return;
+			}
+			int[] stations = new int[neighbours];
+			double[] distances = new double[neighbours];
+			int r0 = from / grid.tileCols * TILE;
+			int c0 = from % grid.tileCols * TILE;
+			for (int r = r0, rEnd = Math.min(grid.rows, r0 + TILE); r < rEnd; r++) {
+				double lat = grid.south + (r + 0.5) * grid.cellLatitude;
+				for (int c = c0, cEnd = Math.min(grid.cols, c0 + TILE); c < cEnd; c++) {
+					double lon = grid.west + (c + 0.5) * grid.cellLongitude;
+					int n = index.nearest(lat, lon, neighbours, grid.filter, stations, distances);
+					grid.result[r * grid.cols + c] = weigh(grid.values, stations, distances, n);
+				}
+			}
+		}
+	}
+
+	private double weigh(double[] values, int[] stations, double[] distances, int n) {
+		double sum = 0;
+		double weights = 0;
+		for (int i = 0; i < n; i++) {
+			// nearest first, so an exact hit can only be the first neighbour
+			if (distances[i] == 0.0)
+				return values[stations[i]];
+			double w = kernel.weight(distances[i]);
+			if (w > 0) {
+				sum += w * values[stations[i]];
+				weights += w;
+			}
+		}
+		return weights > 0 ? sum / weights : Double.NaN;
+	}
+
+	/**
+	 * 格子点ごとに使用する観測地点の数を返す。
+	 * @return 観測地点の数
+	 */
+	public int getNeighbours() {
+		return neighbours;
+	}
+
+	/**
+	 * 重みを返す。
+	 * @return 重み
+	 */
+	public InterpolationKernel getKernel() {
+		return kernel;
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * InterpolationKernel
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.processing;
+
+/**
+ * 空間補間で、近隣の観測地点の値に掛ける重みを距離から求める関数。
+ * GridInterpolatorは重みで加重平均した値を格子点の値とする。
+ * 
+ * @see GridInterpolator
+ * @see InverseDistanceWeighting
+ */
+public interface InterpolationKernel {
+
+	/**
+	 * 距離に対する重みを返す。
+	 * 距離が0の観測地点はGridInterpolatorがその値をそのまま使うので、0より大きい距離だけが渡される。
+	 * @param distance 格子点から観測地点までの大円距離(km)
+	 * @return 重み。0以上。0の場合はその観測地点を使わない
+	 */
+	public double weight(double distance);
+}
@@ -0,0 +1,74 @@
+/**
+ * InverseDistanceWeighting
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.processing;
+
+/**
+ * 逆距離加重(IDW)。重みを距離のpower乗の逆数とする。
+ * radiusを指定した場合は、それより遠い観測地点を使わない。
+ * 
+ * @see GridInterpolator
+ */
+public class InverseDistanceWeighting implements InterpolationKernel {
+
+	private final double power;
+	private final double radius;
+
+	/**
+	 * 距離の2乗の逆数を重みとする。
+	 */
+	public InverseDistanceWeighting() {
+		this(2.0, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * @param power 距離の指数
+	 * @param radius 使用する観測地点の最大距離(km)
+	 */
+	public InverseDistanceWeighting(double power, double radius) {
+		if (power <= 0 || radius <= 0)
+			throw new IllegalArgumentException("InverseDistanceWeighting called with power "
+					+ power + " and radius " + radius);
+		this.power = power;
+		this.radius = radius;
+	}
+
+	public double weight(double distance) {
+		if (distance > radius)
+			return 0.0;
+		if (power == 2.0)
+			return 1.0 / (distance * distance);
+		return Math.pow(distance, -power);
+	}
+
+	/**
+	 * 距離の指数を返す。
+	 * @return 指数
+	 */
+	public double getPower() {
+		return power;
+	}
+
+	/**
+	 * 使用する観測地点の最大距離を返す。
+	 * @return 距離(km)
+	 */
+	public double getRadius() {
+		return radius;
+	}
+}
@@ -0,0 +1,296 @@
+/**
+ * Summariser
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.processing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import net.agmodel.metbroker.server.cache.ObservationCursor;
+
+/**
+ * MetRequest.shouldSummarise()がtrueの場合に、細かい時間分解能の観測値を要求された時間分解能に集計する。
+ * <br>
+ * 時刻の昇順に並んだ観測値を1回だけ走査し、各区間の集計値を求める。
+ * 区間はMetRequestと同じく(start,end]とし、i番目の区間は(bucketEnds[i-1],bucketEnds[i]]、
+ * 最初の区間は(start,bucketEnds[0]]となる。
+ * 例えば日降水量は、その日の0時を含まず、翌日の0時を含む24時間の合計である。
+ * <br>
+ * 区間ごとに欠測でない観測値の数を数え、元の時間分解能から求めた本来の数との比を完全度とする。
+ * 完全度の低い区間を欠測とするかは呼出し側で判断する。
+ * <br>
+ * 観測値はObservationCursorや配列から直接受け取り、中間のオブジェクトを作らない。
+ * 結果の配列は作成時に確保し、reset()で使い回せる。
+ * 1つのインスタンスを複数のスレッドで同時に使用してはならない。
+ * 
+ * @see AggregationRules
+ * @see net.agmodel.metbroker_common.weatherData.MetRequest#shouldSummarise()
+ */
+public class Summariser {
+
+	private final long start;
+	private final long[] bucketEnds;
+	private final long sourceStep;
+	private final Aggregation[] aggregations;
+	private final double[][] results;
+	private final int[] counts;
+
+	private int bucket;
+	private long lastTime;
+	private int n;
+	private double sum;
+	private double min;
+	private double max;
+	private double last;
+
+	/**
+	 * @param start 最初の区間の開始(エポックミリ秒)。この時刻の観測値は含まない
+	 * @param bucketEnds 各区間の終了(エポックミリ秒)。昇順
+	 * @param sourceStep 元の観測値の間隔(ミリ秒)。完全度の計算に使用する
+	 * @param aggregations 集計方法
+	 */
+	public Summariser(long start, long[] bucketEnds, long sourceStep, Aggregation... aggregations) {
+		for (int i = 0; i < bucketEnds.length; i++) {
+			if (bucketEnds[i] <= (i == 0 ? start : bucketEnds[i - 1]))
+				throw new IllegalArgumentException("Summariser called with bucket end "
+						+ bucketEnds[i] + " at " + i + " not after the previous one");
+		}
+		if (sourceStep <= 0)
+			throw new IllegalArgumentException("Summariser called with sourceStep " + sourceStep);
+		this.start = start;
+		this.bucketEnds = bucketEnds.clone();
+		this.sourceStep = sourceStep;
+		this.aggregations = aggregations.clone();
+		this.results = new double[aggregations.length][bucketEnds.length];
+		this.counts = new int[bucketEnds.length];
+		reset();
+	}
+
+	/**
+	 * 一定の長さの区間を作成する。
+	 * @param start 最初の区間の開始(エポックミリ秒)
+	 * @param end 最後の区間の終了(エポックミリ秒)。端数の区間は含めない
+	 * @param step 区間の長さ(ミリ秒)
+	 * @return 各区間の終了
+	 */
+	public static long[] regularBuckets(long start, long end, long step) {
+		if (step <= 0)
+			throw new IllegalArgumentException("Summariser.regularBuckets called with step " + step);
+		int n = (int) Math.max(0, (end - start) / step);
+		long[] ends = new long[n];
+		for (int i = 0; i < n; i++)
+			ends[i] = start + (i + 1) * step;
+		return ends;
+	}
+
+	/**
+	 * 暦に従った区間を作成する。月ごとの集計など、区間の長さが一定でない場合に使用する。
+	 * @param start 最初の区間の開始(エポックミリ秒)
+	 * @param end 最後の区間の終了(エポックミリ秒)。これを超える区間は含めない
+	 * @param zone 暦のタイムゾーン
+	 * @param field 区間の単位。Calendar.DAY_OF_MONTH、Calendar.MONTHなど
+	 * @return 各区間の終了
+	 */
+	public static long[] calendarBuckets(long start, long end, TimeZone zone, int field) {
+		Calendar c = Calendar.getInstance(zone);
+		List<Long> ends = new ArrayList<Long>();
+		for (int i = 1;; i++) {
+			// count from start each time; adding one month at a time would clamp Jan 31 to Feb 28 for good
+			c.setTimeInMillis(start);
+			c.add(field, i);
+			long t = c.getTimeInMillis();
+			if (t > end)
+				break;
+			ends.add(Long.valueOf(t));
+		}
+		long[] result = new long[ends.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = ends.get(i).longValue();
+		return result;
+	}
+
+	/**
+	 * 結果を消去し、最初の区間から集計し直す。
+	 */
+	public void reset() {
+		for (int a = 0; a < results.length; a++)
+			Arrays.fill(results[a], Double.NaN);
+		Arrays.fill(counts, 0);
+		bucket = 0;
+		lastTime = Long.MIN_VALUE;
+		clearBucket();
+	}
+
+	private void clearBucket() {
+		n = 0;
+		sum = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		last = Double.NaN;
+	}
+
+	/**
+	 * 観測値を1件加える。観測値は時刻の昇順に加えること。
+	 * 最初の区間より前、最後の区間より後の観測値は無視する。
+	 * @param time 観測時刻(エポックミリ秒)
+	 * @param value 観測値。NaNは欠測
+	 */
+	public void add(long time, double value) {
+		if (time <= lastTime)
+			throw new IllegalArgumentException("Summariser.add called with time " + time
+					+ " not after " + lastTime);
+		lastTime = time;
+		if (time <= start)
+			return;
+		while (bucket < bucketEnds.length && time > bucketEnds[bucket])
+			closeBucket();
+		if (bucket == bucketEnds.length || Double.isNaN(value))
+			return;
+		n++;
+		sum += value;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+		last = value;
+	}
+
+	/**
+	 * カーソルの観測値を全て加える。
+	 * @param cursor ObservationStore.scan()で準備したカーソル
+	 */
+	public void addAll(ObservationCursor cursor) {
+		while (cursor.next())
+			add(cursor.getTime(), cursor.isValid() ? cursor.getValue() : Double.NaN);
+	}
+
+	/**
+	 * 配列の観測値を加える。
+	 * @param times 観測時刻(エポックミリ秒)。昇順
+	 * @param values 観測値。NaNは欠測
+	 * @param count 加える件数
+	 */
+	public void addAll(long[] times, double[] values, int count) {
+		for (int i = 0; i < count; i++)
+			add(times[i], values[i]);
+	}
+
+	/**
+	 * 残りの区間を確定する。全ての観測値を加えた後に呼ぶ。
+	 */
+	public void finish() {
+		while (bucket < bucketEnds.length)
+			closeBucket();
+	}
+
+	private void closeBucket() {
+		counts[bucket] = n;
+		if (n > 0) {
+			for (int a = 0; a < aggregations.length; a++) {
+				double v;
+				switch (aggregations[a]) {
+				case SUM:
+					v = sum;
+					break;
+				case MIN:
+					v = min;
+					break;
+				case MAX:
+					v = max;
+					break;
+				case LAST:
+					v = last;
+					break;
+				default:
+					v = sum / n;
+					break;
+				}
+				results[a][bucket] = v;
+			}
+		}
+		bucket++;
+		clearBucket();
+	}
+
+	/**
+	 * 区間の数を返す。
+	 * @return 区間の数
+	 */
+	public int getBucketCount() {
+		return bucketEnds.length;
+	}
+
+	/**
+	 * 区間の終了を返す。
+	 * @param i 区間の番号
+	 * @return エポックミリ秒
+	 */
+	public long getBucketEnd(int i) {
+		return bucketEnds[i];
+	}
+
+	/**
+	 * 集計方法を返す。
+	 * @return 集計方法。getValue()のaggregationの番号はこの配列の添字
+	 */
+	public Aggregation[] getAggregations() {
+		return aggregations.clone();
+	}
+
+	/**
+	 * 集計値を返す。
+	 * @param aggregation 集計方法の番号
+	 * @param i 区間の番号
+	 * @return 集計値。区間に欠測でない観測値がない場合はNaN
+	 */
+	public double getValue(int aggregation, int i) {
+		return results[aggregation][i];
+	}
+
+	/**
+	 * 区間の欠測でない観測値の数を返す。
+	 * @param i 区間の番号
+	 * @return 件数
+	 */
+	public int getCount(int i) {
+		return counts[i];
+	}
+
+	/**
+	 * 区間に本来含まれる観測値の数を返す。
+	 * @param i 区間の番号
+	 * @return 区間の長さを元の観測値の間隔で割った数
+	 */
+	public int getExpectedCount(int i) {
+		long from = i == 0 ? start : bucketEnds[i - 1];
+		return (int) ((bucketEnds[i] - from) / sourceStep);
+	}
+
+	/**
+	 * 区間の完全度を返す。
+	 * @param i 区間の番号
+	 * @return 欠測でない観測値の数と本来の数の比(0～1)
+	 */
+	public double getCompleteness(int i) {
+		int expected = getExpectedCount(i);
+		return expected == 0 ? 0.0 : Math.min(1.0, (double) counts[i] / expected);
+	}
+}
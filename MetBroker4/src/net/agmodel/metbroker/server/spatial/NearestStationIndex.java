@@ -0,0 +1,413 @@
+/**
+ * NearestStationIndex
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.spatial;
+
+import java.util.Arrays;
+
+import net.agmodel.metbroker_common.physical.Period;
+import net.agmodel.metbroker_common.physical.PeriodSet;
+import net.agmodel.metbroker_common.weatherData.MetElement;
+import net.agmodel.metbroker_common.weatherData.MetElementSet;
+
+/**
+ * 地点から近い順にk件の観測地点を求める索引(KD-tree)。
+ * MetRequest.shouldInterpolate()がtrueの場合に、欠測値を補う近隣の観測地点を探すのに使用する。
+ * <br>
+ * 観測地点の緯度経度は作成時に単位球面上の3次元座標(x,y,z)に変換しておく。
+ * 2点間の直線距離(弦)は大円距離と順序が一致するので、検索では三角関数を使わずに弦の2乗で比較し、
+ * 結果を返す時にだけ大円距離(km)に変換する。
+ * <br>
+ * 観測地点ごとに観測している気象要素(MetElementSet)とデータのある期間(PeriodSet)を持たせておき、
+ * Filterで「この期間に気象要素Xのある観測地点」だけを対象にできる。
+ * 多数の地点をまとめて検索するnearest(double[], double[], ...)は、作業領域を使い回して1回の割当てで済ませる。
+ * <br>
+ * 作成後は変更しないので、複数のスレッドから同時に検索してよい。
+ * 
+ * @see StationIndex
+ */
+public final class NearestStationIndex {
+
+	/**
+	 * 検索対象の観測地点を選択する条件。
+	 */
+	public interface Filter {
+		/**
+		 * 観測地点を検索対象とするかを判定する。
+		 * @param station 観測地点の番号
+		 * @return 対象とする場合はtrue
+		 */
+		public boolean accept(int station);
+	}
+
+	/** 地球の平均半径(km) */
+	public static final double EARTH_RADIUS = 6371.0088;
+
+	private final String[] ids;
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final MetElementSet[] elements;
+	private final PeriodSet[] coverage;
+	/** 木の順に並べた観測地点の番号。範囲[lo,hi)の中央が節点 */
+	private final int[] tree;
+	private final double[] xs;
+	private final double[] ys;
+	private final double[] zs;
+	/** 節点ごとの分割軸(0:x, 1:y, 2:z)。treeと同じ位置に格納する */
+	private final byte[] axes;
+
+	private NearestStationIndex(String[] ids, double[] latitudes, double[] longitudes,
+			MetElementSet[] elements, PeriodSet[] coverage) {
+		int n = ids.length;
+		this.ids = ids;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.elements = elements;
+		this.coverage = coverage;
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double[] z = new double[n];
+		int count = 0;
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			if (Double.isNaN(latitudes[i]) || Double.isNaN(longitudes[i]))
+				continue;
+			double lat = Math.toRadians(latitudes[i]);
+			double lon = Math.toRadians(longitudes[i]);
+			x[i] = Math.cos(lat) * Math.cos(lon);
+			y[i] = Math.cos(lat) * Math.sin(lon);
+			z[i] = Math.sin(lat);
+			order[count++] = i;
+		}
+		this.xs = x;
+		this.ys = y;
+		this.zs = z;
+		this.tree = Arrays.copyOf(order, count);
+		this.axes = new byte[count];
+		build(0, count);
+	}
+
+	/**
+	 * 索引を作成する。
+	 * 緯度経度のない観測地点は検索結果に含めない。
+	 * @param ids 観測地点のID
+	 * @param latitudes 緯度(度)
+	 * @param longitudes 経度(度)
+	 * @param elements 観測している気象要素。nullまたは要素がnullの場合は不明として扱う
+	 * @param coverage データのある期間。nullまたは要素がnullの場合は不明として扱う
+	 * @return 索引
+	 */
+	public static NearestStationIndex build(String[] ids, double[] latitudes, double[] longitudes,
+			MetElementSet[] elements, PeriodSet[] coverage) {
+		int n = ids.length;
+		if (latitudes.length != n || longitudes.length != n
+				|| (elements != null && elements.length != n)
+				|| (coverage != null && coverage.length != n))
+			throw new IllegalArgumentException("NearestStationIndex.build called with arrays of different lengths");
+		return new NearestStationIndex(ids, latitudes, longitudes,
+				elements == null ? new MetElementSet[n] : elements,
+				coverage == null ? new PeriodSet[n] : coverage);
+	}
+
+	private double coordinate(int station, int axis) {
+		return axis == 0 ? xs[station] : axis == 1 ? ys[station] : zs[station];
+	}
+
+	private void build(int lo, int hi) {
+		while (hi - lo > 1) {
+			int axis = widestAxis(lo, hi);
+			int mid = (lo + hi) >>> 1;
+			select(lo, hi - 1, mid, axis);
+			axes[mid] = (byte) axis;
+			build(lo, mid);
+			lo = mid + 1;
+		}
+	}
+
+	private int widestAxis(int lo, int hi) {
+		double[] min = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+		double[] max = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for (int i = lo; i < hi; i++) {
+			for (int a = 0; a < 3; a++) {
+				double c = coordinate(tree[i], a);
+				if (c < min[a])
+					min[a] = c;
+				if (c > max[a])
+					max[a] = c;
+			}
+		}
+		int axis = 0;
+		for (int a = 1; a < 3; a++) {
+			if (max[a] - min[a] > max[axis] - min[axis])
+				axis = a;
+		}
+		return axis;
+	}
+
+	/**
+	 * tree[lo..hi]を、k番目にaxisの座標でk番目の観測地点が来るように部分的に並べ替える。
+	 */
+	private void select(int lo, int hi, int k, int axis) {
+		while (hi > lo) {
+			double pivot = coordinate(tree[(lo + hi) >>> 1], axis);
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (coordinate(tree[i], axis) < pivot)
+					i++;
+				while (coordinate(tree[j], axis) > pivot)
+					j--;
+				if (i <= j) {
+					int t = tree[i];
+					tree[i] = tree[j];
+					tree[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * 指定した期間に気象要素のデータがある観測地点を選択する条件を作成する。
+	 * 気象要素・期間が不明な観測地点は選択しない。
+	 * @param element 気象要素。nullの場合は問わない
+	 * @param period 期間。nullの場合は問わない
+	 * @return 条件
+	 */
+	public Filter having(final MetElement element, final Period period) {
+		return new Filter() {
+			public boolean accept(int station) {
+				if (element != null && (elements[station] == null || !elements[station].contains(element)))
+					return false;
+				if (period != null && (coverage[station] == null || !coverage[station].covers(period)))
+					return false;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * 地点から近い順にk件の観測地点を求める。
+	 * @param latitude 地点の緯度(度)
+	 * @param longitude 地点の経度(度)
+	 * @param k 件数
+	 * @param filter 検索対象の条件。nullの場合は全ての観測地点
+	 * @param stations 結果の観測地点の番号を近い順に格納する。長さk以上
+	 * @param distances 結果の大円距離(km)を格納する。長さk以上。不要ならnull。
+	 * 指定した場合は検索の作業領域としても使用するので、使い回せば検索ごとの割当ては生じない
+	 * @return 見つかった件数。条件に合う観測地点がk件に満たない場合はk未満
+	 */
+	public int nearest(double latitude, double longitude, int k, Filter filter,
+			int[] stations, double[] distances) {
+		// the distances are computed in place from the heap, so the caller's
+		// array can serve as the heap and repeated queries allocate nothing
+		return nearest(latitude, longitude, k, filter, stations, distances,
+				distances != null ? distances : new double[k]);
+	}
+
+	private int nearest(double latitude, double longitude, int k, Filter filter,
+			int[] stations, double[] distances, double[] heap) {
+		if (k <= 0)
+			return 0;
+		double lat = Math.toRadians(latitude);
+		double lon = Math.toRadians(longitude);
+		double qx = Math.cos(lat) * Math.cos(lon);
+		double qy = Math.cos(lat) * Math.sin(lon);
+		double qz = Math.sin(lat);
+		int n = search(0, tree.length, qx, qy, qz, k, filter, stations, heap, 0);
+		// heap order to ascending distance
+		for (int end = n - 1; end > 0; end--) {
+			swap(stations, heap, 0, end);
+			siftDown(stations, heap, 0, end);
+		}
+		if (distances != null) {
+			for (int i = 0; i < n; i++)
+				distances[i] = 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(heap[i]) / 2));
+		}
+		return n;
+	}
+
+	/**
+	 * 複数の地点について、それぞれ近い順にk件の観測地点を求める。
+	 * 格子点への補間など、多数の地点をまとめて検索する場合に使用する。
+	 * @param latitudes 地点の緯度(度)
+	 * @param longitudes 地点の経度(度)
+	 * @param k 件数
+	 * @param filter 検索対象の条件。nullの場合は全ての観測地点
+	 * @param distances 地点ごとの大円距離(km)を格納する。長さは地点数。不要ならnull
+	 * @return 地点ごとの観測地点の番号。近い順で、長さは見つかった件数
+	 */
+	public int[][] nearest(double[] latitudes, double[] longitudes, int k, Filter filter,
+			double[][] distances) {
+		if (latitudes.length != longitudes.length)
+			throw new IllegalArgumentException("NearestStationIndex.nearest called with "
+					+ latitudes.length + " latitudes and " + longitudes.length + " longitudes");
+		int[][] result = new int[latitudes.length][];
+		int[] stations = new int[k];
+		double[] d = new double[k];
+		double[] heap = new double[k];
+		for (int i = 0; i < latitudes.length; i++) {
+			int n = nearest(latitudes[i], longitudes[i], k, filter, stations, d, heap);
+			result[i] = Arrays.copyOf(stations, n);
+			if (distances != null)
+				distances[i] = Arrays.copyOf(d, n);
+		}
+		return result;
+	}
+
+	/**
+	 * tree[lo,hi)を検索し、弦の2乗を値とする最大ヒープ(stations,heap)に近い観測地点を残す。
+	 * 検索する地点の座標は配列を作らずに(qx,qy,qz)で渡す。
+	 * @return ヒープの件数
+	 */
+	private int search(int lo, int hi, double qx, double qy, double qz, int k, Filter filter,
+			int[] stations, double[] heap, int size) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int s = tree[mid];
+			if (filter == null || filter.accept(s)) {
+				double dx = xs[s] - qx;
+				double dy = ys[s] - qy;
+				double dz = zs[s] - qz;
+				double d = dx * dx + dy * dy + dz * dz;
+				if (size < k) {
+					stations[size] = s;
+					heap[size] = d;
+					siftUp(stations, heap, size++);
+				} else if (d < heap[0]) {
+					stations[0] = s;
+					heap[0] = d;
+					siftDown(stations, heap, 0, size);
+				}
+			}
+			if (hi - lo == 1)
+				break;
+			int axis = axes[mid];
+			double diff = (axis == 0 ? qx : axis == 1 ? qy : qz) - coordinate(s, axis);
+			// visit the side containing the query first, then the other side
+			// only if the splitting plane is closer than the current k-th
+			if (diff < 0) {
+				size = search(lo, mid, qx, qy, qz, k, filter, stations, heap, size);
+				if (size == k && diff * diff >= heap[0])
+					break;
+				lo = mid + 1;
+			} else {
+				size = search(mid + 1, hi, qx, qy, qz, k, filter, stations, heap, size);
+				if (size == k && diff * diff >= heap[0])
+					break;
+				hi = mid;
+			}
+		}
+		return size;
+	}
+
+	private static void siftUp(int[] stations, double[] heap, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (heap[parent] >= heap[i])
+				return;
+			swap(stations, heap, parent, i);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(int[] stations, double[] heap, int i, int size) {
+		while (true) {
+			int largest = i;
+			int l = 2 * i + 1;
+			int r = l + 1;
+			if (l < size && heap[l] > heap[largest])
+				largest = l;
+			if (r < size && heap[r] > heap[largest])
+				largest = r;
+			if (largest == i)
+				return;
+			swap(stations, heap, i, largest);
+			i = largest;
+		}
+	}
+
+	private static void swap(int[] stations, double[] heap, int i, int j) {
+		int s = stations[i];
+		stations[i] = stations[j];
+		stations[j] = s;
+		double d = heap[i];
+		heap[i] = heap[j];
+		heap[j] = d;
+	}
+
+	/**
+	 * 観測地点の数を返す。緯度経度のない観測地点も含む。
+	 * @return 件数
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * 観測地点のIDを返す。
+	 * @param station 番号
+	 * @return ID
+	 */
+	public String getId(int station) {
+		return ids[station];
+	}
+
+	/**
+	 * 観測地点の緯度を返す。
+	 * @param station 番号
+	 * @return 緯度(度)
+	 */
+	public double getLatitude(int station) {
+		return latitudes[station];
+	}
+
+	/**
+	 * 観測地点の経度を返す。
+	 * @param station 番号
+	 * @return 経度(度)
+	 */
+	public double getLongitude(int station) {
+		return longitudes[station];
+	}
+
+	/**
+	 * 観測地点で観測している気象要素を返す。
+	 * @param station 番号
+	 * @return 気象要素。不明な場合はnull
+	 */
+	public MetElementSet getElements(int station) {
+		return elements[station];
+	}
+
+	/**
+	 * 観測地点のデータのある期間を返す。
+	 * @param station 番号
+	 * @return 期間。不明な場合はnull
+	 */
+	public PeriodSet getCoverage(int station) {
+		return coverage[station];
+	}
+}
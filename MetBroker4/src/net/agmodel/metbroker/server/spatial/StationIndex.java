@@ -0,0 +1,368 @@
+/**
+ * StationIndex
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.spatial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import net.agmodel.metbroker_common.driver.MetaDataRecord;
+import net.agmodel.metbroker_common.driver.MetaDataSnapshot;
+
+/**
+ * 観測地点の緯度経度に対する空間索引(R-tree)。
+ * SpatialMetRequestの範囲に含まれる観測地点を、全観測地点を調べずに求める。
+ * <br>
+ * MetaDataの更新時にSort-Tile-Recursive法で一括作成し、以後は変更しない。
+ * 観測地点を経度で帯に分け、帯の中を緯度の順に並べて16件ずつ葉にまとめ、
+ * その上位も16件ずつまとめて外接矩形を持たせる。
+ * 各階層は配列に連続して格納するので、検索はオブジェクトを辿らずに配列の添字だけで行う。
+ * <br>
+ * 緯度経度のない観測地点は索引に含めない。
+ * 経度の範囲はminLongitude &gt; maxLongitudeの場合に180度線をまたぐものとする。
+ * 作成後は変更しないので、複数のスレッドから同時に検索してよい。
+ * 
+ * @see StationIndexRegistry
+ */
+public final class StationIndex {
+
+	/**
+	 * 検索結果を1件ずつ受け取るコールバック。
+	 */
+	public interface Visitor {
+		/**
+		 * 条件に一致した観測地点を受け取る。
+		 * @param station 観測地点の番号。getId()などで値を取り出す
+		 * @return 検索を続ける場合はtrue、打ち切る場合はfalse
+		 */
+		public boolean visit(int station);
+	}
+
+	private static final int NODE_SIZE = 16;
+
+	private final String[] ids;
+	private final double[] latitudes;
+	private final double[] longitudes;
+	/** 階層ごとの外接矩形。levels[0]が葉で、4要素(minLat,minLon,maxLat,maxLon)ずつ並ぶ */
+	private final double[][] levels;
+
+	private StationIndex(String[] ids, double[] latitudes, double[] longitudes) {
+		this.ids = ids;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		List<double[]> l = new ArrayList<double[]>();
+		double[] boxes = leafBoxes();
+		l.add(boxes);
+		while (boxes.length > 4) {
+			boxes = parentBoxes(boxes);
+			l.add(boxes);
+		}
+		this.levels = l.toArray(new double[l.size()][]);
+	}
+
+	/**
+	 * 観測地点の一覧から索引を作成する。
+	 * @param stations 観測地点。観測地点以外のレコードは無視する
+	 * @return 索引
+	 */
+	public static StationIndex build(Iterator<? extends MetaDataRecord> stations) {
+		List<String> id = new ArrayList<String>();
+		List<double[]> pos = new ArrayList<double[]>();
+		while (stations.hasNext()) {
+			MetaDataRecord r = stations.next();
+			if (!(r instanceof MetaDataRecord.Station))
+				continue;
+			MetaDataRecord.Station s = (MetaDataRecord.Station) r;
+			id.add(s.getId());
+			pos.add(new double[] { s.getLatitude(), s.getLongitude() });
+		}
+		double[] lat = new double[id.size()];
+		double[] lon = new double[id.size()];
+		for (int i = 0; i < lat.length; i++) {
+			lat[i] = pos.get(i)[0];
+			lon[i] = pos.get(i)[1];
+		}
+		return build(id.toArray(new String[id.size()]), lat, lon);
+	}
+
+	/**
+	 * MetaDataのスナップショットから索引を作成する。
+	 * @param snapshot スナップショット
+	 * @return 索引
+	 */
+	public static StationIndex build(MetaDataSnapshot snapshot) {
+		int n = snapshot.getStationCount();
+		String[] id = new String[n];
+		double[] lat = new double[n];
+		double[] lon = new double[n];
+		for (int i = 0; i < n; i++) {
+			id[i] = snapshot.getStationId(i);
+			lat[i] = snapshot.getLatitude(i);
+			lon[i] = snapshot.getLongitude(i);
+		}
+		return build(id, lat, lon);
+	}
+
+	/**
+	 * 観測地点のIDと緯度経度から索引を作成する。
+	 * @param ids 観測地点のID
+	 * @param latitudes 緯度(度)
+	 * @param longitudes 経度(度)
+	 * @return 索引
+	 */
+	public static StationIndex build(String[] ids, final double[] latitudes, final double[] longitudes) {
+		if (ids.length != latitudes.length || ids.length != longitudes.length)
+			throw new IllegalArgumentException("StationIndex.build called with "
+					+ ids.length + " ids, " + latitudes.length + " latitudes and "
+					+ longitudes.length + " longitudes");
+		int n = 0;
+		Integer[] order = new Integer[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			if (!Double.isNaN(latitudes[i]) && !Double.isNaN(longitudes[i]))
+				order[n++] = Integer.valueOf(i);
+		}
+		order = Arrays.copyOf(order, n);
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(longitudes[a.intValue()], longitudes[b.intValue()]);
+			}
+		});
+		int leaves = (n + NODE_SIZE - 1) / NODE_SIZE;
+		int slice = (int) Math.ceil(Math.sqrt(leaves)) * NODE_SIZE;
+		Comparator<Integer> byLatitude = new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(latitudes[a.intValue()], latitudes[b.intValue()]);
+			}
+		};
+		for (int from = 0; from < n; from += slice)
+			Arrays.sort(order, from, Math.min(n, from + slice), byLatitude);
+
+		String[] id = new String[n];
+		double[] lat = new double[n];
+		double[] lon = new double[n];
+		for (int i = 0; i < n; i++) {
+			int k = order[i].intValue();
+			id[i] = ids[k];
+			lat[i] = latitudes[k];
+			lon[i] = longitudes[k];
+		}
+		return new StationIndex(id, lat, lon);
+	}
+
+	private double[] leafBoxes() {
+		int n = ids.length;
+		double[] boxes = new double[(n + NODE_SIZE - 1) / NODE_SIZE * 4];
+		for (int node = 0; node * 4 < boxes.length; node++) {
+			double minLat = Double.POSITIVE_INFINITY, minLon = Double.POSITIVE_INFINITY;
+			double maxLat = Double.NEGATIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+			for (int i = node * NODE_SIZE, end = Math.min(n, i + NODE_SIZE); i < end; i++) {
+				minLat = Math.min(minLat, latitudes[i]);
+				minLon = Math.min(minLon, longitudes[i]);
+				maxLat = Math.max(maxLat, latitudes[i]);
+				maxLon = Math.max(maxLon, longitudes[i]);
+			}
+			setBox(boxes, node, minLat, minLon, maxLat, maxLon);
+		}
+		return boxes;
+	}
+
+	private static double[] parentBoxes(double[] children) {
+		int n = children.length / 4;
+		double[] boxes = new double[(n + NODE_SIZE - 1) / NODE_SIZE * 4];
+		for (int node = 0; node * 4 < boxes.length; node++) {
+			double minLat = Double.POSITIVE_INFINITY, minLon = Double.POSITIVE_INFINITY;
+			double maxLat = Double.NEGATIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+			for (int i = node * NODE_SIZE, end = Math.min(n, i + NODE_SIZE); i < end; i++) {
+				minLat = Math.min(minLat, children[i * 4]);
+				minLon = Math.min(minLon, children[i * 4 + 1]);
+				maxLat = Math.max(maxLat, children[i * 4 + 2]);
+				maxLon = Math.max(maxLon, children[i * 4 + 3]);
+			}
+			setBox(boxes, node, minLat, minLon, maxLat, maxLon);
+		}
+		return boxes;
+	}
+
+	private static void setBox(double[] boxes, int node, double minLat, double minLon,
+			double maxLat, double maxLon) {
+		boxes[node * 4] = minLat;
+		boxes[node * 4 + 1] = minLon;
+		boxes[node * 4 + 2] = maxLat;
+		boxes[node * 4 + 3] = maxLon;
+	}
+
+	/**
+	 * 索引に含まれる観測地点の数を返す。
+	 * @return 件数
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * 観測地点のIDを返す。
+	 * @param station 番号
+	 * @return ID
+	 */
+	public String getId(int station) {
+		return ids[station];
+	}
+
+	/**
+	 * 観測地点の緯度を返す。
+	 * @param station 番号
+	 * @return 緯度(度)
+	 */
+	public double getLatitude(int station) {
+		return latitudes[station];
+	}
+
+	/**
+	 * 観測地点の経度を返す。
+	 * @param station 番号
+	 * @return 経度(度)
+	 */
+	public double getLongitude(int station) {
+		return longitudes[station];
+	}
+
+	/**
+	 * 矩形に含まれる観測地点を渡す。境界上の観測地点も含む。
+	 * @param minLatitude 南端(度)
+	 * @param minLongitude 西端(度)
+	 * @param maxLatitude 北端(度)
+	 * @param maxLongitude 東端(度)。西端より小さい場合は180度線をまたぐ
+	 * @param visitor 結果を受け取るコールバック
+	 * @return 最後まで検索した場合はtrue、visitorが打ち切った場合はfalse
+	 */
+	public boolean forEachInBox(double minLatitude, double minLongitude,
+			double maxLatitude, double maxLongitude, Visitor visitor) {
+		if (ids.length == 0)
+			return true;
+		if (minLongitude > maxLongitude) {
+			return search(levels.length - 1, 0, minLatitude, minLongitude, maxLatitude, 180.0, visitor)
+					&& search(levels.length - 1, 0, minLatitude, -180.0, maxLatitude, maxLongitude, visitor);
+		}
+		return search(levels.length - 1, 0, minLatitude, minLongitude, maxLatitude, maxLongitude, visitor);
+	}
+
+	private boolean search(int level, int node, double minLat, double minLon,
+			double maxLat, double maxLon, Visitor visitor) {
+		double[] boxes = levels[level];
+		int b = node * 4;
+		if (boxes[b] > maxLat || boxes[b + 2] < minLat || boxes[b + 1] > maxLon || boxes[b + 3] < minLon)
+			return true;
+		if (level == 0) {
+			for (int i = node * NODE_SIZE, end = Math.min(ids.length, i + NODE_SIZE); i < end; i++) {
+				double lat = latitudes[i];
+				double lon = longitudes[i];
+				if (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon
+						&& !visitor.visit(i))
+					return false;
+			}
+			return true;
+		}
+		int children = levels[level - 1].length / 4;
+		for (int i = node * NODE_SIZE, end = Math.min(children, i + NODE_SIZE); i < end; i++) {
+			if (!search(level - 1, i, minLat, minLon, maxLat, maxLon, visitor))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 矩形に含まれる観測地点のIDを返す。
+	 * @param minLatitude 南端(度)
+	 * @param minLongitude 西端(度)
+	 * @param maxLatitude 北端(度)
+	 * @param maxLongitude 東端(度)
+	 * @return IDの配列
+	 */
+	public String[] getInBox(double minLatitude, double minLongitude,
+			double maxLatitude, double maxLongitude) {
+		final List<String> result = new ArrayList<String>();
+		forEachInBox(minLatitude, minLongitude, maxLatitude, maxLongitude, new Visitor() {
+			public boolean visit(int station) {
+				result.add(ids[station]);
+				return true;
+			}
+		});
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * 多角形に含まれる観測地点を渡す。
+	 * 多角形の外接矩形で索引を検索し、その結果だけを交差数法で判定する。
+	 * 頂点は緯度経度の平面上で直線で結ぶものとし、180度線をまたぐ多角形は扱わない。
+	 * @param polygonLatitudes 頂点の緯度(度)。最初と最後の頂点は自動的に結ぶ
+	 * @param polygonLongitudes 頂点の経度(度)
+	 * @param visitor 結果を受け取るコールバック
+	 * @return 最後まで検索した場合はtrue、visitorが打ち切った場合はfalse
+	 */
+	public boolean forEachInPolygon(final double[] polygonLatitudes, final double[] polygonLongitudes,
+			final Visitor visitor) {
+		if (polygonLatitudes.length != polygonLongitudes.length || polygonLatitudes.length < 3)
+			throw new IllegalArgumentException("StationIndex.forEachInPolygon called with "
+					+ polygonLatitudes.length + " latitudes and " + polygonLongitudes.length + " longitudes");
+		double minLat = Double.POSITIVE_INFINITY, minLon = Double.POSITIVE_INFINITY;
+		double maxLat = Double.NEGATIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < polygonLatitudes.length; i++) {
+			minLat = Math.min(minLat, polygonLatitudes[i]);
+			minLon = Math.min(minLon, polygonLongitudes[i]);
+			maxLat = Math.max(maxLat, polygonLatitudes[i]);
+			maxLon = Math.max(maxLon, polygonLongitudes[i]);
+		}
+		return forEachInBox(minLat, minLon, maxLat, maxLon, new Visitor() {
+			public boolean visit(int station) {
+				if (!contains(polygonLatitudes, polygonLongitudes, latitudes[station], longitudes[station]))
+					return true;
+				return visitor.visit(station);
+			}
+		});
+	}
+
+	/**
+	 * 多角形に含まれる観測地点のIDを返す。
+	 * @param polygonLatitudes 頂点の緯度(度)
+	 * @param polygonLongitudes 頂点の経度(度)
+	 * @return IDの配列
+	 */
+	public String[] getInPolygon(double[] polygonLatitudes, double[] polygonLongitudes) {
+		final List<String> result = new ArrayList<String>();
+		forEachInPolygon(polygonLatitudes, polygonLongitudes, new Visitor() {
+			public boolean visit(int station) {
+				result.add(ids[station]);
+				return true;
+			}
+		});
+		return result.toArray(new String[result.size()]);
+	}
+
+	private static boolean contains(double[] lats, double[] lons, double lat, double lon) {
+		boolean inside = false;
+		for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+			if ((lats[i] > lat) != (lats[j] > lat)
+					&& lon < (lons[j] - lons[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lons[i])
+				inside = !inside;
+		}
+		return inside;
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * StationIndexRegistry
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker.server.spatial;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.agmodel.metbroker_common.driver.MetaDataSnapshot;
+
+/**
+ * ドライバごとのStationIndexを保持する。
+ * MetaDataRepositoryServer.reloadMetaData()でMetaDataを読み直した後にrebuild()を呼び、索引を作り直す。
+ * 作り直している間も検索は古い索引で続けられ、作成が終わった時点で新しい索引に差し替わる。
+ * 
+ * @see StationIndex
+ * @see net.agmodel.metbroker.server.MetaDataRepositoryServer#getStationIndex(String)
+ */
+public class StationIndexRegistry {
+
+	private final ConcurrentMap<String, StationIndex> indexes = new ConcurrentHashMap<String, StationIndex>();
+
+	/**
+	 * ドライバのMetaDataから索引を作り直す。
+	 * @param driver ドライバ名
+	 * @param snapshot 更新後のMetaDataのスナップショット
+	 * @return 作成した索引
+	 */
+	public StationIndex rebuild(String driver, MetaDataSnapshot snapshot) {
+		StationIndex index = StationIndex.build(snapshot);
+		indexes.put(driver, index);
+		return index;
+	}
+
+	/**
+	 * ドライバの索引を登録する。
+	 * @param driver ドライバ名
+	 * @param index 索引
+	 */
+	public void put(String driver, StationIndex index) {
+		indexes.put(driver, index);
+	}
+
+	/**
+	 * ドライバの索引を返す。
+	 * @param driver ドライバ名
+	 * @return 索引。作成していない場合はnull
+	 */
+	public StationIndex get(String driver) {
+		return indexes.get(driver);
+	}
+
+	/**
+	 * ドライバの索引を削除する。removeDriver()で使用する。
+	 * @param driver ドライバ名
+	 */
+	public void remove(String driver) {
+		indexes.remove(driver);
+	}
+
+	/**
+	 * 索引のあるドライバ名を返す。
+	 * @return ドライバ名の配列
+	 */
+	public String[] getDrivers() {
+		return indexes.keySet().toArray(new String[0]);
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * AsyncMetDriver
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+import java.util.concurrent.CompletableFuture;
+
+import net.agmodel.metbroker_common.weatherData.StationMetRequest;
+
+/**
+ * 非同期に検索を行うMetBrokerドライバー。
+ * <br>
+ * queryForStationAsyncはデータソースへの問合せを開始したらすぐに戻り、
+ * 結果はデータが届いた分ずつresultに書き込んでDataChunkListenerに通知する。
+ * サーバは少数のスレッドで多数の遅いデータソースへの問合せを並行して行い、
+ * 最後のデータが届く前に出力を始めることができる。
+ * <br>
+ * 同期型の既存ドライバはBlockingMetDriverAdapterで包んで使用する。
+ * 
+ * @see MetDriver
+ * @see BlockingMetDriverAdapter
+ */
+public interface AsyncMetDriver extends MetDriver {
+
+	/**
+	 * requestをもとに非同期に検索を実施し、結果をresultに書き込む。
+	 * requestにはLocale情報が含まれているので、Localeにあったresultを返す。
+	 * データの一部が書き込まれるたびにlistenerに通知する。
+	 * 全ての書込みが終わるとresultで完了するFutureを返す。検索に失敗した場合は例外で完了する。
+	 * @param request 検索条件
+	 * @param result 検索結果を書き込む先
+	 * @param listener 書込みの通知先。nullの場合は通知しない
+	 * @return 検索の完了を表すFuture
+	 */
+	public CompletableFuture<StationDataSetProxy> queryForStationAsync(
+			StationMetRequest request, StationDataSetProxy result, DataChunkListener listener);
+}
@@ -0,0 +1,103 @@
+/**
+ * BlockingMetDriverAdapter
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.agmodel.metbroker_common.weatherData.StationMetRequest;
+
+/**
+ * 同期型のMetDriverをAsyncMetDriverとして使用するためのアダプタ。
+ * <br>
+ * queryForStationをexecutorのスレッドで実行し、終わったらFutureを完了する。
+ * 元のドライバは結果を分割して返せないので、DataChunkListenerへの通知は
+ * dateExtremes全体について1回だけ行う。
+ * 呼出し元のスレッドは待たずに済むが、executorのスレッドは問合せの間占有される。
+ * 
+ * @see AsyncMetDriver
+ */
+public class BlockingMetDriverAdapter implements AsyncMetDriver {
+
+	private final MetDriver driver;
+	private final Executor executor;
+
+	/**
+	 * 同期型ドライバを包む。
+	 * @param driver 同期型ドライバ
+	 * @param executor queryForStationを実行するExecutor
+	 */
+	public BlockingMetDriverAdapter(MetDriver driver, Executor executor) {
+		this.driver = driver;
+		this.executor = executor;
+	}
+
+	/**
+	 * ドライバをAsyncMetDriverとして返す。
+	 * 既にAsyncMetDriverであればそのまま返し、そうでなければこのクラスで包む。
+	 * @param driver ドライバ
+	 * @param executor 同期型ドライバの場合に使用するExecutor
+	 * @return AsyncMetDriver
+	 */
+	public static AsyncMetDriver adapt(MetDriver driver, Executor executor) {
+		if (driver instanceof AsyncMetDriver)
+			return (AsyncMetDriver) driver;
+		return new BlockingMetDriverAdapter(driver, executor);
+	}
+
+	/**
+	 * 包んでいる同期型ドライバを返す。
+	 * @return ドライバ
+	 */
+	public MetDriver getDriver() {
+		return driver;
+	}
+
+	public CompletableFuture<StationDataSetProxy> queryForStationAsync(
+			final StationMetRequest request, final StationDataSetProxy result,
+			final DataChunkListener listener) {
+		final CompletableFuture<StationDataSetProxy> future = new CompletableFuture<StationDataSetProxy>();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						driver.queryForStation(request, result);
+						if (listener != null)
+							listener.chunkArrived(request, result, request.getDateExtremes());
+						future.complete(result);
+					} catch (Throwable t) {
+						future.completeExceptionally(t);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	public void queryForStation(StationMetRequest request, StationDataSetProxy result) {
+		driver.queryForStation(request, result);
+	}
+
+	public void destory() {
+		driver.destory();
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * DataChunkListener
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+import net.agmodel.metbroker_common.physical.Period;
+import net.agmodel.metbroker_common.weatherData.StationMetRequest;
+
+/**
+ * AsyncMetDriverが検索結果を分割して書き込むたびに通知を受けるリスナー。
+ * 通知を受けた期間の結果は確定しているので、全ての結果を待たずに出力を始められる。
+ * 
+ * @see AsyncMetDriver
+ */
+public interface DataChunkListener {
+
+	/**
+	 * 検索結果の一部がresultに書き込まれたことを通知する。
+	 * ドライバのスレッドから呼ばれるので、時間のかかる処理は行わないこと。
+	 * @param request 検索条件
+	 * @param result 検索結果
+	 * @param covered 書込みが完了した期間。requestのdateExtremesの一部または全部
+	 */
+	public void chunkArrived(StationMetRequest request, StationDataSetProxy result, Period covered);
+}
@@ -0,0 +1,42 @@
+/**
+ * IncrementalMetaDataSource
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+import java.util.List;
+
+/**
+ * 前回の取得以降に変更された要素だけを返せるデータソース。
+ * ドライバがこれを実装している場合、MetaDataRepositoryClient.reloadMetaData(String, boolean)の
+ * 差分更新はデータソース全体を読み直さずに変更分だけを取得する。
+ * 実装していない場合は全体を取得し、フィンガープリントで差分を求める。
+ * 
+ * @see MetaDataStore
+ */
+public interface IncrementalMetaDataSource {
+
+	/**
+	 * ウォーターマーク以降に変更された要素を取得する。
+	 * 削除された要素はMetaDataEntry.removed()で表す。
+	 * @param watermark 前回の取得で返したウォーターマーク。初回は0
+	 * @param changed 変更された要素を追加するリスト
+	 * @return 今回の取得時点のウォーターマーク
+	 * @throws Exception データソースへの接続に失敗した場合
+	 */
+	public long fetchChangedSince(long watermark, List<MetaDataEntry> changed) throws Exception;
+}
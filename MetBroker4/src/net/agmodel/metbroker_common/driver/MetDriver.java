@@ -23,7 +23,10 @@ import net.agmodel.metbroker_common.weatherData.StationMetRequest;
 
 /**
  * MetBrokerドライバー
+ * queryForStationは問合せが終わるまで呼出し元のスレッドを占有する。
+ * 非同期に結果を返すドライバはAsyncMetDriverを実装する。
  *
+ * @see AsyncMetDriver
  */
 public interface MetDriver {
 	
@@ -0,0 +1,126 @@
+/**
+ * MetaDataChangeEvent
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MetaDataの更新で変更のあった要素の一覧。
+ * 
+ * @see MetaDataChangeListener
+ * @see MetaDataStore
+ */
+public class MetaDataChangeEvent {
+
+	private final String driver;
+	private final List<MetaDataEntry> added;
+	private final List<MetaDataEntry> modified;
+	private final List<MetaDataEntry> removed;
+	private final long watermark;
+
+	/**
+	 * @param driver ドライバ名
+	 * @param added 追加された要素
+	 * @param modified 変更された要素。変更後の内容
+	 * @param removed 削除された要素。削除前の内容
+	 * @param watermark 更新後のウォーターマーク
+	 */
+	public MetaDataChangeEvent(String driver, List<MetaDataEntry> added,
+			List<MetaDataEntry> modified, List<MetaDataEntry> removed, long watermark) {
+		this.driver = driver;
+		this.added = Collections.unmodifiableList(added);
+		this.modified = Collections.unmodifiableList(modified);
+		this.removed = Collections.unmodifiableList(removed);
+		this.watermark = watermark;
+	}
+
+	/**
+	 * ドライバ名を返す。
+	 * @return ドライバ名
+	 */
+	public String getDriver() {
+		return driver;
+	}
+
+	/**
+	 * 追加された要素を返す。
+	 * @return 変更できないリスト
+	 */
+	public List<MetaDataEntry> getAdded() {
+		return added;
+	}
+
+	/**
+	 * 変更された要素を返す。
+	 * @return 変更できないリスト
+	 */
+	public List<MetaDataEntry> getModified() {
+		return modified;
+	}
+
+	/**
+	 * 削除された要素を返す。
+	 * @return 変更できないリスト
+	 */
+	public List<MetaDataEntry> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * 更新後のウォーターマークを返す。
+	 * @return ウォーターマーク
+	 */
+	public long getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * 変更がないかを返す。
+	 * @return 変更がない場合はtrue
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+	}
+
+	/**
+	 * 指定した種類の要素のうち、変更・削除されたもののIDを返す。
+	 * 追加された要素はキャッシュに結果がないので含めない。
+	 * @param kind 種類
+	 * @return IDのリスト
+	 */
+	public List<String> getChangedIds(MetaDataEntry.Kind kind) {
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < modified.size(); i++) {
+			if (modified.get(i).getKind() == kind)
+				ids.add(modified.get(i).getId());
+		}
+		for (int i = 0; i < removed.size(); i++) {
+			if (removed.get(i).getKind() == kind)
+				ids.add(removed.get(i).getId());
+		}
+		return ids;
+	}
+
+	public String toString() {
+		return driver + " added " + added.size() + " modified " + modified.size()
+				+ " removed " + removed.size() + " watermark " + watermark;
+	}
+}
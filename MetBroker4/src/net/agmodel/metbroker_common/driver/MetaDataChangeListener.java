@@ -0,0 +1,36 @@
+/**
+ * MetaDataChangeListener
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+/**
+ * MetaDataの変更通知を受けるリスナー。
+ * MetaDataRepositoryServerはこれを使用して、変更のあった観測地点のキャッシュだけを破棄する。
+ * 
+ * @see MetaDataChangeEvent
+ * @see MetaDataRepositoryClient#addMetaDataChangeListener(MetaDataChangeListener)
+ */
+public interface MetaDataChangeListener {
+
+	/**
+	 * MetaDataが変更されたことを通知する。
+	 * 変更がない更新では呼ばれない。
+	 * @param event 変更内容
+	 */
+	public void metaDataChanged(MetaDataChangeEvent event);
+}
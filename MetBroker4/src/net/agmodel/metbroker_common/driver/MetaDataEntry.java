@@ -0,0 +1,136 @@
+/**
+ * MetaDataEntry
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+/**
+ * MetaData XMLのうち、観測地点・地域・気象データベース1件分の要素。
+ * 差分更新のため、要素のXMLから64bitのフィンガープリントを作成して保持する。
+ * フィンガープリントが同じ要素は変更がないものとみなす。
+ * 
+ * @see MetaDataStore
+ */
+public final class MetaDataEntry {
+
+	/**
+	 * 要素の種類。
+	 */
+	public enum Kind {
+		/** 観測地点 */
+		STATION,
+		/** 地域 */
+		REGION,
+		/** 気象データベース */
+		DATABASE
+	}
+
+	private final Kind kind;
+	private final String id;
+	private final String xml;
+	private final long fingerprint;
+
+	/**
+	 * 要素を作成する。
+	 * @param kind 種類
+	 * @param id 種類ごとに一意なID
+	 * @param xml 要素のXML。nullの場合は削除された要素を表す
+	 */
+	public MetaDataEntry(Kind kind, String id, String xml) {
+		this.kind = kind;
+		this.id = id;
+		this.xml = xml;
+		this.fingerprint = xml == null ? 0L : fingerprint(xml);
+	}
+
+	/**
+	 * 削除された要素を表すエントリを作成する。
+	 * IncrementalMetaDataSourceが削除を通知するために使用する。
+	 * @param kind 種類
+	 * @param id ID
+	 * @return 削除を表すエントリ
+	 */
+	public static MetaDataEntry removed(Kind kind, String id) {
+		return new MetaDataEntry(kind, id, null);
+	}
+
+	/**
+	 * 64bit FNV-1aハッシュを求める。
+	 */
+	private static long fingerprint(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * 種類を返す。
+	 * @return 種類
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * IDを返す。
+	 * @return ID
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * 要素のXMLを返す。
+	 * @return XML。削除を表すエントリではnull
+	 */
+	public String getXml() {
+		return xml;
+	}
+
+	/**
+	 * 削除を表すエントリかを返す。
+	 * @return 削除を表す場合はtrue
+	 */
+	public boolean isRemoved() {
+		return xml == null;
+	}
+
+	/**
+	 * フィンガープリントを返す。
+	 * @return XMLの64bitハッシュ
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * 内容が同じかをフィンガープリントで判定する。
+	 * @param another 比較するエントリ
+	 * @return 内容が同じ場合はtrue
+	 */
+	public boolean sameContentAs(MetaDataEntry another) {
+		return another != null && fingerprint == another.fingerprint
+				&& isRemoved() == another.isRemoved();
+	}
+
+	public String toString() {
+		return kind + ":" + id + (xml == null ? " (removed)" : "");
+	}
+}
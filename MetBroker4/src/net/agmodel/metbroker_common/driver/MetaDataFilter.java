@@ -0,0 +1,63 @@
+/**
+ * MetaDataFilter
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+/**
+ * MetaDataReaderが読み出すレコードを選択する条件。
+ * 読み出しながら判定するので、条件に合わないレコードは保持されない。
+ * 
+ * @see MetaDataReader
+ */
+public interface MetaDataFilter {
+
+	/** 全てのレコードを選択する */
+	public static final MetaDataFilter ALL = new MetaDataFilter() {
+		public boolean accept(MetaDataRecord record) {
+			return true;
+		}
+	};
+
+	/** 観測地点だけを選択する */
+	public static final MetaDataFilter STATIONS = new MetaDataFilter() {
+		public boolean accept(MetaDataRecord record) {
+			return record.getKind() == MetaDataEntry.Kind.STATION;
+		}
+	};
+
+	/** 地域だけを選択する */
+	public static final MetaDataFilter REGIONS = new MetaDataFilter() {
+		public boolean accept(MetaDataRecord record) {
+			return record.getKind() == MetaDataEntry.Kind.REGION;
+		}
+	};
+
+	/** 気象データベースだけを選択する */
+	public static final MetaDataFilter DATABASES = new MetaDataFilter() {
+		public boolean accept(MetaDataRecord record) {
+			return record.getKind() == MetaDataEntry.Kind.DATABASE;
+		}
+	};
+
+	/**
+	 * レコードを選択するかを判定する。
+	 * @param record レコード
+	 * @return 選択する場合はtrue
+	 */
+	public boolean accept(MetaDataRecord record);
+}
@@ -0,0 +1,285 @@
+/**
+ * MetaDataReader
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * MetaData XMLをStAXで先頭から順に読み、観測地点・地域・気象データベースのレコードを1件ずつ返す。
+ * <br>
+ * 文書全体を読み込まないので、MetaDataの大きさに関係なく使用するメモリは一定となる。
+ * station、region、database要素をレコードとし、その属性と、テキストだけを持つ子要素を値とする。
+ * 要素の入れ子は、平坦に並べたものとdatabase &gt; region &gt; stationと入れ子にしたものの両方を扱う。
+ * 入れ子の場合、region・database属性のないレコードには囲んでいる要素のIDを補う。
+ * 入れ子にしたレコードの値は、子のレコードより前に書かれている必要がある。
+ * <br>
+ * MetaDataFilterに合わないレコードは読み出した時点で捨てる。
+ * 使い終わったらclose()を呼ぶこと。
+ * stream()でStreamとしても読み出せる。
+ * XMLの誤りはIllegalStateExceptionとして次のhasNext()またはnext()で通知する。
+ * 
+ * @see MetaDataRepositoryClient#iterateMetaData(String, MetaDataFilter)
+ */
+public class MetaDataReader implements Iterator<MetaDataRecord>, Closeable {
+
+	private static final class Ancestor {
+		final MetaDataEntry.Kind kind;
+		final String id;
+		final int depth;
+
+		Ancestor(MetaDataEntry.Kind kind, String id, int depth) {
+			this.kind = kind;
+			this.id = id;
+			this.depth = depth;
+		}
+	}
+
+	private static final XMLInputFactory FACTORY = createFactory();
+
+	private final XMLStreamReader reader;
+	private final InputStream in;
+	private final MetaDataFilter filter;
+	private final ArrayDeque<Ancestor> ancestors = new ArrayDeque<Ancestor>();
+	private final StringBuilder text = new StringBuilder();
+
+	private int depth;
+	private MetaDataEntry.Kind openKind;
+	private Map<String, String> openValues;
+	private int openDepth;
+	private String leaf;
+	private MetaDataRecord next;
+
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory f = XMLInputFactory.newInstance();
+		f.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return f;
+	}
+
+	/**
+	 * ストリームから読み出す。
+	 * @param in MetaData XML。close()で閉じる
+	 * @param filter 読み出すレコードの条件
+	 * @throws XMLStreamException XMLを読み始められない場合
+	 */
+	public MetaDataReader(InputStream in, MetaDataFilter filter) throws XMLStreamException {
+		this.in = in;
+		this.filter = filter == null ? MetaDataFilter.ALL : filter;
+		synchronized (FACTORY) {
+			this.reader = FACTORY.createXMLStreamReader(in);
+		}
+	}
+
+	/**
+	 * ファイルから読み出す。
+	 * @param file MetaData XMLのファイル
+	 * @param filter 読み出すレコードの条件
+	 * @return リーダー
+	 * @throws IOException ファイルを開けない場合、またはXMLを読み始められない場合
+	 */
+	public static MetaDataReader open(File file, MetaDataFilter filter) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return new MetaDataReader(in, filter);
+		} catch (XMLStreamException e) {
+			in.close();
+			throw new IOException("cannot read MetaData " + file, e);
+		}
+	}
+
+	private static MetaDataEntry.Kind kindOf(String element) {
+		if ("station".equals(element))
+			return MetaDataEntry.Kind.STATION;
+		if ("region".equals(element))
+			return MetaDataEntry.Kind.REGION;
+		if ("database".equals(element))
+			return MetaDataEntry.Kind.DATABASE;
+		return null;
+	}
+
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = advance();
+			} catch (XMLStreamException e) {
+				throw new IllegalStateException("MetaData XML parse error", e);
+			}
+		}
+		return next != null;
+	}
+
+	public MetaDataRecord next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		MetaDataRecord r = next;
+		next = null;
+		return r;
+	}
+
+	/**
+	 * 削除には対応しない。
+	 * @throws UnsupportedOperationException 常に
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * 残りのレコードを順に返すStreamを返す。
+	 * レコードはStreamの処理に合わせて読み進めるので、メモリの使用量はIteratorとして使う場合と変わらない。
+	 * Streamをclose()するとこのMetaDataReaderも閉じる。
+	 * @return レコードのStream
+	 */
+	public Stream<MetaDataRecord> stream() {
+		Spliterator<MetaDataRecord> s = Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(s, false).onClose(new Runnable() {
+			public void run() {
+				try {
+					close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 読出しを終了し、ストリームを閉じる。
+	 */
+	public void close() throws IOException {
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * 条件に合う次のレコードまで読み進める。
+	 * @return レコード。文書の終わりに達した場合はnull
+	 */
+	private MetaDataRecord advance() throws XMLStreamException {
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT: {
+				depth++;
+				MetaDataEntry.Kind kind = kindOf(reader.getLocalName());
+				if (kind != null) {
+					MetaDataRecord parent = null;
+					if (openKind != null) {
+						ancestors.push(new Ancestor(openKind, openValues.get("id"), openDepth));
+						parent = build();
+					}
+					open(kind);
+					if (parent != null && filter.accept(parent))
+						return parent;
+				} else if (openKind != null) {
+					leaf = reader.getLocalName();
+					text.setLength(0);
+				}
+				break;
+			}
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+				if (leaf != null)
+					text.append(reader.getText());
+				break;
+			case XMLStreamConstants.END_ELEMENT: {
+				if (openKind != null && depth == openDepth) {
+					depth--;
+					MetaDataRecord r = build();
+					if (filter.accept(r))
+						return r;
+					break;
+				}
+				if (leaf != null && reader.getLocalName().equals(leaf)) {
+					String v = text.toString().trim();
+					if (v.length() > 0 && !openValues.containsKey(leaf))
+						openValues.put(leaf, v);
+					leaf = null;
+				}
+				if (!ancestors.isEmpty() && ancestors.peek().depth == depth)
+					ancestors.pop();
+				depth--;
+				break;
+			}
+			default:
+				break;
+			}
+		}
+		return null;
+	}
+
+	private void open(MetaDataEntry.Kind kind) {
+		openKind = kind;
+		openDepth = depth;
+		openValues = new HashMap<String, String>();
+		for (int i = 0; i < reader.getAttributeCount(); i++)
+			openValues.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+		for (Ancestor a : ancestors) {
+			String key = a.kind == MetaDataEntry.Kind.REGION ? "region" : "database";
+			if (a.kind != MetaDataEntry.Kind.STATION && a.id != null && !openValues.containsKey(key))
+				openValues.put(key, a.id);
+		}
+		leaf = null;
+	}
+
+	private MetaDataRecord build() {
+		MetaDataRecord r;
+		switch (openKind) {
+		case STATION:
+			r = new MetaDataRecord.Station(openValues);
+			break;
+		case REGION:
+			r = new MetaDataRecord.Region(openValues);
+			break;
+		default:
+			r = new MetaDataRecord.Database(openValues);
+			break;
+		}
+		openKind = null;
+		openValues = null;
+		leaf = null;
+		return r;
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * MetaDataRecord
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * MetaDataReaderが読み出す、MetaData XMLの要素1件分のレコード。
+ * 要素の属性と、子要素のうちテキストだけを持つものを名前と値の組として保持する。
+ * 種類ごとのサブクラスで、よく使う値を型付きで取り出せるようにする。
+ * 
+ * @see MetaDataReader
+ */
+public abstract class MetaDataRecord {
+
+	private final String id;
+	private final Map<String, String> values;
+
+	MetaDataRecord(Map<String, String> values) {
+		this.id = values.get("id");
+		this.values = Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * 種類を返す。
+	 * @return 種類
+	 */
+	public abstract MetaDataEntry.Kind getKind();
+
+	/**
+	 * IDを返す。
+	 * @return id属性の値
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * 名称を返す。
+	 * @return name属性の値。ない場合はnull
+	 */
+	public String getName() {
+		return values.get("name");
+	}
+
+	/**
+	 * 属性または子要素の値を返す。
+	 * @param name 属性名または子要素名
+	 * @return 値。ない場合はnull
+	 */
+	public String get(String name) {
+		return values.get(name);
+	}
+
+	/**
+	 * 全ての属性・子要素の値を返す。
+	 * @return 変更できないマップ
+	 */
+	public Map<String, String> getValues() {
+		return values;
+	}
+
+	/**
+	 * 数値の属性を返す。
+	 * @param name 属性名
+	 * @return 値。ない場合や数値でない場合はNaN
+	 */
+	protected double getDouble(String name) {
+		String v = values.get(name);
+		if (v == null)
+			return Double.NaN;
+		try {
+			return Double.parseDouble(v);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	public String toString() {
+		return getKind() + ":" + id + values;
+	}
+
+	/**
+	 * 観測地点。
+	 */
+	public static class Station extends MetaDataRecord {
+
+		Station(Map<String, String> values) {
+			super(values);
+		}
+
+		public MetaDataEntry.Kind getKind() {
+			return MetaDataEntry.Kind.STATION;
+		}
+
+		/**
+		 * 緯度を返す。
+		 * @return 度。ない場合はNaN
+		 */
+		public double getLatitude() {
+			return getDouble("latitude");
+		}
+
+		/**
+		 * 経度を返す。
+		 * @return 度。ない場合はNaN
+		 */
+		public double getLongitude() {
+			return getDouble("longitude");
+		}
+
+		/**
+		 * 標高を返す。
+		 * @return メートル。ない場合はNaN
+		 */
+		public double getAltitude() {
+			return getDouble("altitude");
+		}
+
+		/**
+		 * 所属する地域のIDを返す。
+		 * region属性がない場合は、囲んでいるregion要素のIDとなる。
+		 * @return 地域のID。ない場合はnull
+		 */
+		public String getRegionId() {
+			return get("region");
+		}
+
+		/**
+		 * 所属する気象データベースのIDを返す。
+		 * database属性がない場合は、囲んでいるdatabase要素のIDとなる。
+		 * @return 気象データベースのID。ない場合はnull
+		 */
+		public String getDatabaseId() {
+			return get("database");
+		}
+	}
+
+	/**
+	 * 地域。
+	 */
+	public static class Region extends MetaDataRecord {
+
+		Region(Map<String, String> values) {
+			super(values);
+		}
+
+		public MetaDataEntry.Kind getKind() {
+			return MetaDataEntry.Kind.REGION;
+		}
+
+		/**
+		 * 所属する気象データベースのIDを返す。
+		 * @return 気象データベースのID。ない場合はnull
+		 */
+		public String getDatabaseId() {
+			return get("database");
+		}
+	}
+
+	/**
+	 * 気象データベース。
+	 */
+	public static class Database extends MetaDataRecord {
+
+		Database(Map<String, String> values) {
+			super(values);
+		}
+
+		public MetaDataEntry.Kind getKind() {
+			return MetaDataEntry.Kind.DATABASE;
+		}
+	}
+}
@@ -18,6 +18,8 @@
  */
 package net.agmodel.metbroker_common.driver;
 
+import java.io.IOException;
+
 import net.agmodel.metbroker_common.weatherData.MetRequest;
 
 /**
@@ -82,6 +84,32 @@ public interface MetaDataRepositoryClient {
 	 */
 	public String[] getMetaData(String driver);
 	
+	/**
+	 * 指定されたドライバのMetaDataを、レコード単位で順に読み出す。
+	 * ローカルに保存したMetaData XMLをMetaDataReaderで先頭から読むので、
+	 * getMetaData()と違い、MetaDataの大きさに関係なく使用するメモリは一定となる。
+	 * 使い終わったらMetaDataReader.close()を呼ぶこと。
+	 * MetaDataReader.stream()でStreamとしても処理できる。
+	 * @param driver ドライバ名
+	 * @param filter 読み出すレコードの条件。nullの場合は全て
+	 * @return レコードのイテレータ
+	 * @throws IOException MetaDataを読めない場合
+	 * @see MetaDataReader
+	 */
+	public MetaDataReader iterateMetaData(String driver, MetaDataFilter filter) throws IOException;
+	
+	/**
+	 * 指定されたドライバのMetaDataのスナップショットを返す。
+	 * 起動時はXMLを解析せず、XMLの隣に保存したスナップショットをメモリマップして使用する。
+	 * スナップショットがない場合やXMLより古い場合(XMLの長さか更新時刻が異なる場合)は、XMLから作り直す。
+	 * MetaDataを更新した場合は、次の呼出しで新しいスナップショットを返す。
+	 * @param driver ドライバ名
+	 * @return スナップショット
+	 * @throws IOException MetaDataやスナップショットを読み書きできない場合
+	 * @see MetaDataSnapshot#load(java.io.File, java.io.File)
+	 */
+	public MetaDataSnapshot getSnapshot(String driver) throws IOException;
+	
 	/**
 	 * MetaDataの更新処理を行う。
 	 * 指定したドライバを使用してMetaDataの更新処理を行う。
@@ -90,4 +118,37 @@ public interface MetaDataRepositoryClient {
 	 */
 	public int reloadMetaData(String driver);
 	
+	/**
+	 * MetaDataの更新処理を行う。
+	 * incrementalがtrueの場合は、前回の更新から変更された要素だけをMetaDataStoreに適用する。
+	 * ドライバがIncrementalMetaDataSourceを実装していればウォーターマーク以降の変更分だけを取得し、
+	 * 実装していなければ全体を取得して要素ごとのフィンガープリントで差分を求める。
+	 * 変更があった場合はMetaDataChangeListenerに通知する。
+	 * incrementalがfalseの場合はreloadMetaData(String)と同じく全体を更新する。
+	 * @param driver ドライバ名
+	 * @param incremental 差分更新する場合はtrue
+	 * @return 実行結果を返す。
+	 * @see MetaDataStore
+	 */
+	public int reloadMetaData(String driver, boolean incremental);
+	
+	/**
+	 * 最後に取り込んだMetaDataのウォーターマークを返す。
+	 * @param driver ドライバ名
+	 * @return ウォーターマーク。取り込んでいない場合は0
+	 */
+	public long getWatermark(String driver);
+	
+	/**
+	 * MetaDataの変更通知のリスナーを登録する。
+	 * @param listener リスナー
+	 */
+	public void addMetaDataChangeListener(MetaDataChangeListener listener);
+	
+	/**
+	 * MetaDataの変更通知のリスナーを削除する。
+	 * @param listener リスナー
+	 */
+	public void removeMetaDataChangeListener(MetaDataChangeListener listener);
+	
 }
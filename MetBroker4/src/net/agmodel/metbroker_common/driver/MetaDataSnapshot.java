@@ -0,0 +1,605 @@
+/**
+ * MetaDataSnapshot
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * MetaData XMLから作成するバイナリのスナップショット。
+ * 起動時にXML全体を解析する代わりに、XMLの隣に保存したスナップショットをメモリマップして、必要な部分だけを読む。
+ * <br>
+ * <b>形式</b><br>
+ * ヘッダ(64バイト): マジック、版、XMLの長さ・更新時刻・CRC32、各表の件数と開始位置。<br>
+ * 観測地点表: 1件40バイトの固定長で、ID・名称・地域・気象データベース(文字列表の番号)、
+ * 緯度・経度・標高(double)。IDの順に並べるので、IDで二分探索できる。<br>
+ * 地域表: 1件12バイトで、ID・名称・気象データベース。<br>
+ * 気象データベース表: 1件8バイトで、ID・名称。<br>
+ * 文字列表: 件数+1個の終了位置と、UTF-8のバイト列。同じ文字列は1回だけ格納する。
+ * <br>
+ * スナップショットはXMLの長さと更新時刻が一致する場合だけ使用し、一致しなければopen()はnullを返すので、XMLから読み直す。
+ * 検証を指定した場合はXMLのCRC32も比較する。CRC32の比較にはXML全体を読む必要があるので、
+ * load()のデフォルトでは行わない。更新時刻を保ったままコピーや復元でXMLを書き換える運用では
+ * load(File, File, boolean)で検証を指定すること。
+ * 保持するのは型付きで取り出せる値だけなので、それ以外の属性が必要な場合はMetaDataReaderでXMLを読むこと。
+ * <br>
+ * 作成後は変更しないので、複数のスレッドから同時に読み出してよい。
+ * 
+ * @see MetaDataReader
+ * @see MetaDataRepositoryClient#getSnapshot(String)
+ */
+public final class MetaDataSnapshot {
+
+	private static final int MAGIC = 0x4D425331; // "MBS1"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int STATION_SIZE = 40;
+	private static final int REGION_SIZE = 12;
+	private static final int DATABASE_SIZE = 8;
+	private static final int NONE = -1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buffer;
+	private final int stationCount;
+	private final int regionCount;
+	private final int databaseCount;
+	private final int stringCount;
+	private final int stationOffset;
+	private final int regionOffset;
+	private final int databaseOffset;
+	private final int stringOffset;
+	private final String[] strings;
+
+	private MetaDataSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		stationCount = buffer.getInt(32);
+		regionCount = buffer.getInt(36);
+		databaseCount = buffer.getInt(40);
+		stringCount = buffer.getInt(44);
+		stationOffset = buffer.getInt(48);
+		regionOffset = buffer.getInt(52);
+		databaseOffset = buffer.getInt(56);
+		stringOffset = buffer.getInt(60);
+		if (stationCount < 0 || regionCount < 0 || databaseCount < 0 || stringCount < 0
+				|| stationOffset + (long) stationCount * STATION_SIZE > buffer.capacity()
+				|| regionOffset + (long) regionCount * REGION_SIZE > buffer.capacity()
+				|| databaseOffset + (long) databaseCount * DATABASE_SIZE > buffer.capacity()
+				|| stringOffset < 0 || stringOffset + 4L * (stringCount + 1) > buffer.capacity())
+			throw new IOException("corrupt MetaData snapshot");
+		// checked once here, so that string() can slice the table without bounds checks
+		long base = stringOffset + 4L * (stringCount + 1);
+		int previous = 0;
+		for (int i = 0; i <= stringCount; i++) {
+			int end = buffer.getInt(stringOffset + 4 * i);
+			if (end < previous || (i == 0 && end != 0))
+				throw new IOException("corrupt MetaData snapshot");
+			previous = end;
+		}
+		if (base + previous > buffer.capacity())
+			throw new IOException("corrupt MetaData snapshot");
+		strings = new String[stringCount];
+	}
+
+	/**
+	 * スナップショットを開く。
+	 * XMLの長さと更新時刻がスナップショット作成時と異なる場合はnullを返す。
+	 * 表の位置や文字列表の終了位置がファイルの範囲を超える場合も、壊れているとみなしてnullを返す。
+	 * @param snapshot スナップショットのファイル
+	 * @param xml 元のMetaData XML
+	 * @param verify trueの場合はXMLのCRC32も比較する
+	 * @return スナップショット。ファイルがない場合や古い場合、壊れている場合はnull
+	 * @throws IOException スナップショットを読めない場合
+	 */
+	public static MetaDataSnapshot open(File snapshot, File xml, boolean verify) throws IOException {
+		if (!snapshot.isFile() || !xml.isFile() || snapshot.length() < HEADER_SIZE)
+			return null;
+		ByteBuffer b;
+		RandomAccessFile f = new RandomAccessFile(snapshot, "r");
+		try {
+			FileChannel ch = f.getChannel();
+			b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		} finally {
+			f.close();
+		}
+		if (b.getInt(0) != MAGIC || b.getInt(4) != VERSION)
+			return null;
+		if (b.getLong(8) != xml.length() || b.getLong(16) != xml.lastModified())
+			return null;
+		if (verify && b.getLong(24) != checksum(xml))
+			return null;
+		try {
+			return new MetaDataSnapshot(b);
+		} catch (IOException e) {
+			// a truncated or damaged snapshot is rebuilt from the XML
+			return null;
+		}
+	}
+
+	/**
+	 * スナップショットを開く。XMLの長さと更新時刻を比較し、古い場合はXMLを解析して作り直す。
+	 * CRC32は比較しないので、XML全体を読まずに起動できる。
+	 * @param snapshot スナップショットのファイル
+	 * @param xml 元のMetaData XML
+	 * @return スナップショット
+	 * @throws IOException XMLを読めない場合
+	 * @see #load(File, File, boolean)
+	 */
+	public static MetaDataSnapshot load(File snapshot, File xml) throws IOException {
+		return load(snapshot, xml, false);
+	}
+
+	/**
+	 * スナップショットを開く。古い場合はXMLを解析して作り直す。
+	 * 作り直した場合は、解析した内容から作成したスナップショットを返す。
+	 * 解析中にXMLが変更された場合も、解析した時点の内容で一貫したものを返し、
+	 * 保存したスナップショットは次回の呼出しで古いと判定されて作り直される。
+	 * スナップショットを保存できない場合も、解析した内容から作成したものを返す。
+	 * @param snapshot スナップショットのファイル
+	 * @param xml 元のMetaData XML
+	 * @param verify trueの場合はXMLのCRC32も比較する。XML全体を読むので起動は遅くなる
+	 * @return スナップショット
+	 * @throws IOException XMLを読めない場合
+	 */
+	public static MetaDataSnapshot load(File snapshot, File xml, boolean verify) throws IOException {
+		MetaDataSnapshot s = open(snapshot, xml, verify);
+		if (s != null)
+			return s;
+		byte[] data = encode(xml);
+		try {
+			save(data, snapshot);
+		} catch (IOException e) {
+			// serve the parsed XML; the snapshot is written again next time
+		}
+		return new MetaDataSnapshot(ByteBuffer.wrap(data));
+	}
+
+	private static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buf = new byte[64 * 1024];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				crc.update(buf, 0, n);
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * 読んだバイト数とCRC32を数える入力ストリーム。
+	 */
+	private static final class CountingInputStream extends CheckedInputStream {
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in, new CRC32());
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		public int read(byte[] buf, int off, int len) throws IOException {
+			int n = super.read(buf, off, len);
+			if (n > 0)
+				count += n;
+			return n;
+		}
+	}
+
+	/**
+	 * MetaData XMLからスナップショットを作成する。
+	 * 一時ファイルに書いてから置き換えるので、読出し中のスナップショットが壊れることはない。
+	 * @param xml MetaData XML
+	 * @param snapshot 作成するファイル
+	 * @throws IOException XMLを読めない場合、またはファイルを書けない場合
+	 */
+	public static void write(File xml, File snapshot) throws IOException {
+		save(encode(xml), snapshot);
+	}
+
+	private static void save(byte[] data, File snapshot) throws IOException {
+		File tmp = new File(snapshot.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(snapshot)) {
+			snapshot.delete();
+			if (!tmp.renameTo(snapshot))
+				throw new IOException("cannot replace MetaData snapshot " + snapshot);
+		}
+	}
+
+	/**
+	 * XMLを1回だけ読んで解析し、スナップショットの内容を作成する。
+	 * ヘッダの長さとCRC32は解析したバイト列から求めるので、読んでいる間にXMLが変更されても内容と一致する。
+	 */
+	private static byte[] encode(File xml) throws IOException {
+		long lastModified = xml.lastModified();
+
+		List<MetaDataRecord.Station> stations = new ArrayList<MetaDataRecord.Station>();
+		List<MetaDataRecord> regions = new ArrayList<MetaDataRecord>();
+		List<MetaDataRecord> databases = new ArrayList<MetaDataRecord>();
+		CountingInputStream in = new CountingInputStream(new BufferedInputStream(new FileInputStream(xml)));
+		try {
+			// the reader closes its input at the end of the document, before
+			// the rest of the file has been counted
+			MetaDataReader reader = new MetaDataReader(new FilterInputStream(in) {
+				public void close() {
+				}
+			}, null);
+			while (reader.hasNext()) {
+				MetaDataRecord r = reader.next();
+				switch (r.getKind()) {
+				case STATION:
+					stations.add((MetaDataRecord.Station) r);
+					break;
+				case REGION:
+					regions.add(r);
+					break;
+				default:
+					databases.add(r);
+					break;
+				}
+			}
+			reader.close();
+			// anything after the root element still counts towards the checksum
+			byte[] buf = new byte[8192];
+			while (in.read(buf, 0, buf.length) > 0)
+				;
+		} catch (XMLStreamException e) {
+			throw new IOException("cannot read MetaData " + xml, e);
+		} catch (IllegalStateException e) {
+			throw new IOException("cannot read MetaData " + xml, e.getCause());
+		} finally {
+			in.close();
+		}
+		long length = in.count;
+		long crc = in.getChecksum().getValue();
+		Collections.sort(stations, new Comparator<MetaDataRecord>() {
+			public int compare(MetaDataRecord a, MetaDataRecord b) {
+				return compareIds(a.getId(), b.getId());
+			}
+		});
+
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		List<byte[]> table = new ArrayList<byte[]>();
+		int stationOffset = HEADER_SIZE;
+		int regionOffset = stationOffset + stations.size() * STATION_SIZE;
+		int databaseOffset = regionOffset + regions.size() * REGION_SIZE;
+		int stringOffset = databaseOffset + databases.size() * DATABASE_SIZE;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(stringOffset + 1024);
+		DataOutputStream out = new DataOutputStream(bytes);
+		// strings are numbered in the order the records use them, so the
+		// string count is only known once every record has been written;
+		// the header is patched afterwards
+		out.write(new byte[HEADER_SIZE]);
+		for (MetaDataRecord.Station s : stations) {
+			out.writeInt(intern(s.getId(), index, table));
+			out.writeInt(intern(s.getName(), index, table));
+			out.writeInt(intern(s.getRegionId(), index, table));
+			out.writeInt(intern(s.getDatabaseId(), index, table));
+			out.writeDouble(s.getLatitude());
+			out.writeDouble(s.getLongitude());
+			out.writeDouble(s.getAltitude());
+		}
+		for (MetaDataRecord r : regions) {
+			out.writeInt(intern(r.getId(), index, table));
+			out.writeInt(intern(r.getName(), index, table));
+			out.writeInt(intern(r.get("database"), index, table));
+		}
+		for (MetaDataRecord d : databases) {
+			out.writeInt(intern(d.getId(), index, table));
+			out.writeInt(intern(d.getName(), index, table));
+		}
+		int end = 0;
+		out.writeInt(0);
+		for (byte[] s : table) {
+			end += s.length;
+			out.writeInt(end);
+		}
+		for (byte[] s : table)
+			out.write(s);
+		out.flush();
+
+		byte[] data = bytes.toByteArray();
+		ByteBuffer header = ByteBuffer.wrap(data);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(length);
+		header.putLong(lastModified);
+		header.putLong(crc);
+		header.putInt(stations.size());
+		header.putInt(regions.size());
+		header.putInt(databases.size());
+		header.putInt(table.size());
+		header.putInt(stationOffset);
+		header.putInt(regionOffset);
+		header.putInt(databaseOffset);
+		header.putInt(stringOffset);
+		return data;
+	}
+
+	private static int intern(String s, Map<String, Integer> index, List<byte[]> table) {
+		if (s == null)
+			return NONE;
+		Integer i = index.get(s);
+		if (i == null) {
+			i = Integer.valueOf(table.size());
+			index.put(s, i);
+			table.add(s.getBytes(UTF8));
+		}
+		return i.intValue();
+	}
+
+	private static int compareIds(String a, String b) {
+		if (a == null)
+			return b == null ? 0 : -1;
+		return b == null ? 1 : a.compareTo(b);
+	}
+
+	/**
+	 * 文字列表のi番目の文字列を返す。初めて使う時にデコードする。
+	 */
+	private String string(int i) {
+		if (i == NONE)
+			return null;
+		String s = strings[i];
+		if (s == null) {
+			int base = stringOffset + 4 * (stringCount + 1);
+			int from = buffer.getInt(stringOffset + 4 * i);
+			int to = buffer.getInt(stringOffset + 4 * (i + 1));
+			byte[] bytes = new byte[to - from];
+			for (int k = 0; k < bytes.length; k++)
+				bytes[k] = buffer.get(base + from + k);
+			s = new String(bytes, UTF8);
+			strings[i] = s;
+		}
+		return s;
+	}
+
+	/**
+	 * 観測地点の数を返す。
+	 * @return 件数
+	 */
+	public int getStationCount() {
+		return stationCount;
+	}
+
+	/**
+	 * 観測地点のIDを返す。観測地点はIDの順に並んでいる。
+	 * @param i 番号
+	 * @return ID
+	 */
+	public String getStationId(int i) {
+		return string(buffer.getInt(station(i)));
+	}
+
+	/**
+	 * 観測地点の名称を返す。
+	 * @param i 番号
+	 * @return 名称。ない場合はnull
+	 */
+	public String getStationName(int i) {
+		return string(buffer.getInt(station(i) + 4));
+	}
+
+	/**
+	 * 観測地点の地域のIDを返す。
+	 * @param i 番号
+	 * @return 地域のID。ない場合はnull
+	 */
+	public String getStationRegionId(int i) {
+		return string(buffer.getInt(station(i) + 8));
+	}
+
+	/**
+	 * 観測地点の気象データベースのIDを返す。
+	 * @param i 番号
+	 * @return 気象データベースのID。ない場合はnull
+	 */
+	public String getStationDatabaseId(int i) {
+		return string(buffer.getInt(station(i) + 12));
+	}
+
+	/**
+	 * 観測地点の緯度を返す。
+	 * @param i 番号
+	 * @return 度。ない場合はNaN
+	 */
+	public double getLatitude(int i) {
+		return buffer.getDouble(station(i) + 16);
+	}
+
+	/**
+	 * 観測地点の経度を返す。
+	 * @param i 番号
+	 * @return 度。ない場合はNaN
+	 */
+	public double getLongitude(int i) {
+		return buffer.getDouble(station(i) + 24);
+	}
+
+	/**
+	 * 観測地点の標高を返す。
+	 * @param i 番号
+	 * @return メートル。ない場合はNaN
+	 */
+	public double getAltitude(int i) {
+		return buffer.getDouble(station(i) + 32);
+	}
+
+	private int station(int i) {
+		if (i < 0 || i >= stationCount)
+			throw new IndexOutOfBoundsException("station " + i + " of " + stationCount);
+		return stationOffset + i * STATION_SIZE;
+	}
+
+	/**
+	 * IDで観測地点を二分探索する。
+	 * @param id 観測地点のID
+	 * @return 番号。ない場合は負の値
+	 */
+	public int findStation(String id) {
+		int lo = 0;
+		int hi = stationCount - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = compareIds(getStationId(mid), id);
+			if (c < 0)
+				lo = mid + 1;
+			else if (c > 0)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -(lo + 1);
+	}
+
+	/**
+	 * 地域の数を返す。
+	 * @return 件数
+	 */
+	public int getRegionCount() {
+		return regionCount;
+	}
+
+	/**
+	 * 地域のIDを返す。
+	 * @param i 番号
+	 * @return ID
+	 */
+	public String getRegionId(int i) {
+		return string(buffer.getInt(region(i)));
+	}
+
+	/**
+	 * 地域の名称を返す。
+	 * @param i 番号
+	 * @return 名称。ない場合はnull
+	 */
+	public String getRegionName(int i) {
+		return string(buffer.getInt(region(i) + 4));
+	}
+
+	/**
+	 * 地域の気象データベースのIDを返す。
+	 * @param i 番号
+	 * @return 気象データベースのID。ない場合はnull
+	 */
+	public String getRegionDatabaseId(int i) {
+		return string(buffer.getInt(region(i) + 8));
+	}
+
+	private int region(int i) {
+		if (i < 0 || i >= regionCount)
+			throw new IndexOutOfBoundsException("region " + i + " of " + regionCount);
+		return regionOffset + i * REGION_SIZE;
+	}
+
+	/**
+	 * 気象データベースの数を返す。
+	 * @return 件数
+	 */
+	public int getDatabaseCount() {
+		return databaseCount;
+	}
+
+	/**
+	 * 気象データベースのIDを返す。
+	 * @param i 番号
+	 * @return ID
+	 */
+	public String getDatabaseId(int i) {
+		return string(buffer.getInt(database(i)));
+	}
+
+	/**
+	 * 気象データベースの名称を返す。
+	 * @param i 番号
+	 * @return 名称。ない場合はnull
+	 */
+	public String getDatabaseName(int i) {
+		return string(buffer.getInt(database(i) + 4));
+	}
+
+	private int database(int i) {
+		if (i < 0 || i >= databaseCount)
+			throw new IndexOutOfBoundsException("database " + i + " of " + databaseCount);
+		return databaseOffset + i * DATABASE_SIZE;
+	}
+
+	/**
+	 * 観測地点をMetaDataReaderと同じレコードとして返す。
+	 * @param i 番号
+	 * @return レコード
+	 */
+	public MetaDataRecord.Station getStation(int i) {
+		Map<String, String> values = new HashMap<String, String>();
+		put(values, "id", getStationId(i));
+		put(values, "name", getStationName(i));
+		put(values, "region", getStationRegionId(i));
+		put(values, "database", getStationDatabaseId(i));
+		put(values, "latitude", getLatitude(i));
+		put(values, "longitude", getLongitude(i));
+		put(values, "altitude", getAltitude(i));
+		return new MetaDataRecord.Station(values);
+	}
+
+	private static void put(Map<String, String> values, String name, String value) {
+		if (value != null)
+			values.put(name, value);
+	}
+
+	private static void put(Map<String, String> values, String name, double value) {
+		if (!Double.isNaN(value))
+			values.put(name, Double.toString(value));
+	}
+}
@@ -0,0 +1,247 @@
+/**
+ * MetaDataStore
+ * Copyright (C) 2014
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package net.agmodel.metbroker_common.driver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * ドライバごとのMetaDataを要素単位で保持し、更新時の差分を求める。
+ * <br>
+ * 全体を読み直した場合はreplaceAll()で、要素ごとのフィンガープリントを前回と比較して
+ * 追加・変更・削除された要素を求める。
+ * ドライバがIncrementalMetaDataSourceを実装している場合はapplyDelta()で変更分だけを適用する。
+ * どちらも保持しているMetaDataをその場で更新し、変更があればMetaDataChangeListenerに通知する。
+ * <br>
+ * 要素の一覧は種類ごとのConcurrentHashMapで保持し、読み出しはロックを取らない。
+ * applyDelta()は変更された要素だけをマップに書き込むので、処理時間は変更分の大きさで決まる。
+ * replaceAll()は新しいマップを作って差し替える。
+ * 更新と通知はドライバごとに同期するので、同じドライバの通知は更新の順に届く。
+ * 
+ * @see MetaDataRepositoryClient#reloadMetaData(String, boolean)
+ */
+public class MetaDataStore {
+
+	private static final class DriverMetaData {
+		volatile Map<MetaDataEntry.Kind, Map<String, MetaDataEntry>> entries = newEntries();
+		volatile long watermark;
+	}
+
+	private final ConcurrentMap<String, DriverMetaData> drivers = new ConcurrentHashMap<String, DriverMetaData>();
+	private final List<MetaDataChangeListener> listeners = new CopyOnWriteArrayList<MetaDataChangeListener>();
+
+	private DriverMetaData getDriverMetaData(String driver) {
+		DriverMetaData d = drivers.get(driver);
+		if (d == null) {
+			DriverMetaData created = new DriverMetaData();
+			d = drivers.putIfAbsent(driver, created);
+			if (d == null)
+				d = created;
+		}
+		return d;
+	}
+
+	/**
+	 * ドライバのMetaDataを全体で置き換え、前回との差分を求める。
+	 * データソース全体を読み直した場合に使用する。
+	 * 差分はドライバのロックを取ったままリスナーに通知する。
+	 * @param driver ドライバ名
+	 * @param current 読み直した全要素
+	 * @param watermark 読み直した時点のウォーターマーク
+	 * @return 差分
+	 */
+	public MetaDataChangeEvent replaceAll(String driver, Collection<MetaDataEntry> current,
+			long watermark) {
+		DriverMetaData d = getDriverMetaData(driver);
+		MetaDataChangeEvent event;
+		synchronized (d) {
+			Map<MetaDataEntry.Kind, Map<String, MetaDataEntry>> next = newEntries();
+			List<MetaDataEntry> added = new ArrayList<MetaDataEntry>();
+			List<MetaDataEntry> modified = new ArrayList<MetaDataEntry>();
+			List<MetaDataEntry> removed = new ArrayList<MetaDataEntry>();
+			for (MetaDataEntry e : current) {
+				if (e.isRemoved())
+					continue;
+				next.get(e.getKind()).put(e.getId(), e);
+				classify(d.entries.get(e.getKind()).get(e.getId()), e, added, modified);
+			}
+			for (Map.Entry<MetaDataEntry.Kind, Map<String, MetaDataEntry>> kind : d.entries.entrySet()) {
+				Map<String, MetaDataEntry> kept = next.get(kind.getKey());
+				for (MetaDataEntry old : kind.getValue().values()) {
+					if (!kept.containsKey(old.getId()))
+						removed.add(old);
+				}
+			}
+			d.entries = next;
+			d.watermark = watermark;
+			event = new MetaDataChangeEvent(driver, added, modified, removed, watermark);
+			fire(event);
+		}
+		return event;
+	}
+
+	/**
+	 * 変更された要素だけをドライバのMetaDataに適用する。
+	 * IncrementalMetaDataSourceから取得した変更分に使用する。
+	 * 内容が変わっていない要素は差分に含めない。
+	 * 変更された要素だけを保持しているマップにその場で書き込み、
+	 * 差分はドライバのロックを取ったままリスナーに通知する。
+	 * @param driver ドライバ名
+	 * @param changed 変更された要素。削除はMetaDataEntry.removed()で表す
+	 * @param watermark 取得した時点のウォーターマーク
+	 * @return 差分
+	 */
+	public MetaDataChangeEvent applyDelta(String driver, Collection<MetaDataEntry> changed,
+			long watermark) {
+		DriverMetaData d = getDriverMetaData(driver);
+		MetaDataChangeEvent event;
+		synchronized (d) {
+			Map<MetaDataEntry.Kind, Map<String, MetaDataEntry>> entries = d.entries;
+			List<MetaDataEntry> added = new ArrayList<MetaDataEntry>();
+			List<MetaDataEntry> modified = new ArrayList<MetaDataEntry>();
+			List<MetaDataEntry> removed = new ArrayList<MetaDataEntry>();
+			for (MetaDataEntry e : changed) {
+				Map<String, MetaDataEntry> m = entries.get(e.getKind());
+				if (e.isRemoved()) {
+					MetaDataEntry old = m.remove(e.getId());
+					if (old != null)
+						removed.add(old);
+				} else {
+					classify(m.put(e.getId(), e), e, added, modified);
+				}
+			}
+			d.watermark = Math.max(d.watermark, watermark);
+			event = new MetaDataChangeEvent(driver, added, modified, removed, d.watermark);
+			fire(event);
+		}
+		return event;
+	}
+
+	private static Map<MetaDataEntry.Kind, Map<String, MetaDataEntry>> newEntries() {
+		Map<MetaDataEntry.Kind, Map<String, MetaDataEntry>> m =
+				new EnumMap<MetaDataEntry.Kind, Map<String, MetaDataEntry>>(MetaDataEntry.Kind.class);
+		for (MetaDataEntry.Kind kind : MetaDataEntry.Kind.values())
+			m.put(kind, new ConcurrentHashMap<String, MetaDataEntry>());
+		return m;
+	}
+
+	private static void classify(MetaDataEntry old, MetaDataEntry e,
+			List<MetaDataEntry> added, List<MetaDataEntry> modified) {
+		if (old == null)
+			added.add(e);
+		else if (!old.sameContentAs(e))
+			modified.add(e);
+	}
+
+	private void fire(MetaDataChangeEvent event) {
+		if (event.isEmpty())
+			return;
+		for (Iterator<MetaDataChangeListener> i = listeners.iterator(); i.hasNext();)
+			i.next().metaDataChanged(event);
+	}
+
+	/**
+	 * 保持している要素を返す。
+	 * @param driver ドライバ名
+	 * @param kind 種類
+	 * @return 要素の一覧。変更できない。applyDelta()による更新はその場で反映される
+	 */
+	public Collection<MetaDataEntry> getEntries(String driver, MetaDataEntry.Kind kind) {
+		DriverMetaData d = drivers.get(driver);
+		if (d == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableCollection(d.entries.get(kind).values());
+	}
+
+	/**
+	 * 要素を返す。
+	 * @param driver ドライバ名
+	 * @param kind 種類
+	 * @param id ID
+	 * @return 要素。保持していない場合はnull
+	 */
+	public MetaDataEntry getEntry(String driver, MetaDataEntry.Kind kind, String id) {
+		DriverMetaData d = drivers.get(driver);
+		return d == null ? null : d.entries.get(kind).get(id);
+	}
+
+	/**
+	 * ドライバのMetaDataを要素ごとのXMLとして返す。
+	 * 気象データベース、地域、観測地点の順に並べる。
+	 * @param driver ドライバ名
+	 * @return 要素のXML
+	 */
+	public String[] getMetaData(String driver) {
+		DriverMetaData d = drivers.get(driver);
+		if (d == null)
+			return new String[0];
+		Map<MetaDataEntry.Kind, Map<String, MetaDataEntry>> entries = d.entries;
+		List<String> xml = new ArrayList<String>();
+		MetaDataEntry.Kind[] order = { MetaDataEntry.Kind.DATABASE,
+				MetaDataEntry.Kind.REGION, MetaDataEntry.Kind.STATION };
+		for (int i = 0; i < order.length; i++) {
+			for (MetaDataEntry e : entries.get(order[i]).values())
+				xml.add(e.getXml());
+		}
+		return xml.toArray(new String[xml.size()]);
+	}
+
+	/**
+	 * 最後に取り込んだ時点のウォーターマークを返す。
+	 * @param driver ドライバ名
+	 * @return ウォーターマーク。取り込んでいない場合は0
+	 */
+	public long getWatermark(String driver) {
+		DriverMetaData d = drivers.get(driver);
+		return d == null ? 0L : d.watermark;
+	}
+
+	/**
+	 * ドライバのMetaDataを破棄する。removeDriver()で使用する。
+	 * 次回の取り込みは全要素が追加として扱われる。
+	 * @param driver ドライバ名
+	 */
+	public void remove(String driver) {
+		drivers.remove(driver);
+	}
+
+	/**
+	 * 変更通知のリスナーを登録する。
+	 * @param listener リスナー
+	 */
+	public void addMetaDataChangeListener(MetaDataChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * 変更通知のリスナーを削除する。
+	 * @param listener リスナー
+	 */
+	public void removeMetaDataChangeListener(MetaDataChangeListener listener) {
+		listeners.remove(listener);
+	}
+}
@@ -1,12 +1,12 @@
 package net.agmodel.metbroker_common.physical;
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 import javax.measure.unit.BaseUnit;
 import javax.measure.unit.SI;
 import javax.measure.unit.Unit;
-import javax.measure.unit.UnitFormat;
 
 import org.jscience.physics.amount.Amount;
 
@@ -15,6 +15,12 @@ import org.jscience.physics.amount.Amount;
  * Amount class is finalized in JScience so it can not be extended.
  * Langth class should be implemented using Amount class.
  * Please download JScience pakage.
+ * <br>
+ * The length is held as the double it was given in together with its unit,
+ * plus the same length in metres, so arithmetic and getValue() are plain
+ * double operations with a precomputed factor per unit and the value comes
+ * back unchanged in its own unit. JScience Amount is only built for
+ * toString(), serialization and at the API edges that take or return one.
  * 
  * @author honda
  * @author kiura
@@ -28,7 +34,24 @@ public class Length extends AbstractQuantity {
 	private static final long serialVersionUID = 1L;
 
 	/**
-	 * Phisical Amount
+	 * Value in unit, as given.
+	 * Not serialized; see writeObject.
+	 */
+	private transient double value;
+
+	/**
+	 * Unit the length was given in.
+	 */
+	private transient Unit<javax.measure.quantity.Length> unit;
+
+	/**
+	 * Length in METRE
+	 */
+	private transient double si;
+
+	/**
+	 * Phisical Amount, built on demand.
+	 * This is the only serialized field, so the serial form is unchanged.
 	 */
 	private Amount<javax.measure.quantity.Length> m;
 
@@ -40,7 +63,7 @@ public class Length extends AbstractQuantity {
 	 * @param u unit
 	 */
 	public Length(double v, Unit<javax.measure.quantity.Length> u) {
-		m = Amount.valueOf(v, u);
+		setValue(v, u);
 	}
 
 	/**
@@ -50,7 +73,9 @@ public class Length extends AbstractQuantity {
 	 * @param v value
 	 */
 	public Length(double v) {
-		m = Amount.valueOf(v, SI.METER);
+		value = v;
+		si = v;
+		unit = SI.METER;
 	}
 
 	/**
@@ -61,7 +86,12 @@ public class Length extends AbstractQuantity {
 	 * @param m Amoount
 	 */
 	public Length(Amount<javax.measure.quantity.Length> m) {
-		this.m = m;
+		setAmount(m);
+	}
+
+	private void setAmount(Amount<javax.measure.quantity.Length> a) {
+		setValue(a.getEstimatedValue(), a.getUnit());
+		m = a;
 	}
 
 	/**
@@ -71,7 +101,11 @@ public class Length extends AbstractQuantity {
 	 * @return value in specified unit
 	 */
 	public double getValue(Unit<javax.measure.quantity.Length> u) {
-		return m.doubleValue(u);
+		if (u == unit || u.equals(unit))
+			return value;
+		if (u == SI.METRE)
+			return si;
+		return UnitScale.of(u).fromStandard(si);
 	}
 
 	/**
@@ -81,7 +115,33 @@ public class Length extends AbstractQuantity {
 	 * @param u unit
 	 */
 	public void setValue(double v, Unit<javax.measure.quantity.Length> u) {
-		m = Amount.valueOf(v, u);
+		value = v;
+		si = u == SI.METRE ? v : UnitScale.of(u).toStandard(v);
+		unit = u;
+		m = null;
+	}
+
+	/**
+	 * Returns the length as a JScience Amount in the unit it was given in.
+	 * 
+	 * @return Amount
+	 */
+	public Amount<javax.measure.quantity.Length> getAmount() {
+		Amount<javax.measure.quantity.Length> a = m;
+		if (a == null) {
+			a = Amount.valueOf(value, unit);
+			m = a;
+		}
+		return a;
+	}
+
+	/**
+	 * Returns the unit the length was given in.
+	 * 
+	 * @return unit
+	 */
+	public Unit<javax.measure.quantity.Length> getUnit() {
+		return unit;
 	}
 
 	/**
@@ -91,7 +151,7 @@ public class Length extends AbstractQuantity {
 	 * @return Length
 	 */
 	public Length add(Length x) {
-		return new Length(this.m.plus(x.m));
+		return new Length(this.value + x.getValue(unit), unit);
 	}
 
 	/**
@@ -102,7 +162,7 @@ public class Length extends AbstractQuantity {
 	 * @return substracted Length 
 	 */
 	public Length substract(Length x) {
-		return new Length(this.m.minus(x.m));
+		return new Length(this.value - x.getValue(unit), unit);
 	}
 
 	/**
@@ -112,7 +172,7 @@ public class Length extends AbstractQuantity {
 	 * @return Lenght new Result Lenght Object
 	 */
 	public Length multiply(double coefficient) {
-		return new Length(this.m.times(coefficient));
+		return new Length(this.value * coefficient, unit);
 	}
 
 	/**
@@ -123,9 +183,7 @@ public class Length extends AbstractQuantity {
 	 * @return Amount (is Area?)
 	 */
 	public Amount<javax.measure.quantity.Area> multiply(Length x) {
-		double d1 = this.m.doubleValue(SI.METER);
-		double d2 = x.getValue(SI.METER);
-		Amount<javax.measure.quantity.Area> a = Amount.valueOf(d1 * d2,
+		Amount<javax.measure.quantity.Area> a = Amount.valueOf(this.si * x.si,
 				SI.SQUARE_METRE);
 		return a;
 	}
@@ -148,7 +206,7 @@ public class Length extends AbstractQuantity {
 	 * @return new resulting Length
 	 */
 	public Length divide(double coefficient) {
-		return new Length(this.m.divide(coefficient));
+		return new Length(this.value / coefficient, unit);
 	}
 
 	/**
@@ -158,10 +216,10 @@ public class Length extends AbstractQuantity {
 	 * @return Lenght from orgiine
 	 */
 	public static Length magnitude(Length x, Length y) {
-		double d1 = y.getValue(SI.METER);
-		double d2 = x.getValue(SI.METER);
+		double d1 = y.si;
+		double d2 = x.si;
 
-		return new Length(Math.sqrt(d1 * d1 + d2 * d2), SI.METER);
+		return new Length(Math.sqrt(d1 * d1 + d2 * d2));
 	}
 
 	/*
@@ -175,7 +233,7 @@ public class Length extends AbstractQuantity {
 	 * @return result -: smaller than x , 0: same Length, +: longer than x
 	 */
 	public int compareTo(Length x) {
-		return this.m.compareTo(x.m);
+		return Double.compare(this.si, x.si);
 	}
 
 	/**
@@ -192,7 +250,7 @@ public class Length extends AbstractQuantity {
 	 * @see net.agmodel.physical.AbstractQuantity#getValueSI()
 	 */
 	protected double getValueSI() {
-		return this.getValue(SI.METRE);
+		return si;
 	}
 
 	/**
@@ -209,34 +267,37 @@ public class Length extends AbstractQuantity {
 	 * @see net.agmodel.physical.AbstractQuantity#toString()
 	 */
 	public String toString() {
-		return this.m.toString();
+		return getAmount().toString();
 	}
 	
 	/** 
 	 * Return SI Unit Symbol using JScience.
+	 * The symbol is formatted once and then shared through UnitCache.
 	 * @see net.agmodel.physical.AbstractQuantity#getSymbolSI()
 	 */
 	public String getSymbolSI() {
-		try {
-			StringWriter a = new StringWriter();
-			UnitFormat.getInstance().format(SI.METRE, a);
-			return a.toString();
-		} catch (IOException e) {
-			// ignore
-			return e.getMessage();
-		}
+		return UnitCache.getSymbol(SI.METRE);
 	}
 
 	
 	/**
 	 * Return current unit symbol
+	 * The symbol is formatted once per unit and then shared through UnitCache.
 	 * @return unit symbol
 	 * @throws IOException
 	 */
 	public String getSymbol() throws IOException {
-		StringWriter a = new StringWriter();
-		Unit<javax.measure.quantity.Length> u = this.m.getUnit();
-		UnitFormat.getInstance().format(u, a);
-		return a.toString();
+		return UnitCache.getSymbol(unit);
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		getAmount();
+		out.defaultWriteObject();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		setAmount(m);
 	}
 }
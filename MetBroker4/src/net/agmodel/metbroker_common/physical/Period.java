@@ -16,6 +16,9 @@ import java.io.*;
  * the advantage of comparing sensibly with other dates. Calls to getBeginning()
  * and getEnd() will return these dates, but applications can avoid using them
  * with the hasBeginning and hasEnd() functions.<br>
+ * The start and end are held as milliseconds since the epoch, so comparisons
+ * between Periods don't create any objects. Calendars are only built when
+ * {@link #getcStart()} or {@link #getcEnd()} is called.<br>
  * Periods are immutable.<br>
  * 
  * @author Matthew Laurenson
@@ -26,23 +29,79 @@ public class Period implements Serializable, Comparable, Cloneable {
 	private static final DateFormat local = DateFormat.getDateTimeInstance(
 			DateFormat.MEDIUM, DateFormat.MEDIUM);
 
-	private Calendar cStart;
-	private Calendar cEnd;
-	
+	/**
+	 * Built on first use by getcStart()/getcEnd(). volatile so that a Calendar
+	 * built by one thread is seen fully initialised by another.
+	 */
+	private volatile Calendar cStart;
+	private volatile Calendar cEnd;
+
+	/**
+	 * Start and end of the period in milliseconds since the epoch.<br>
+	 * These are what comparisons work on; the Calendar fields are only built
+	 * when a caller asks for them, and the Date fields only when the Period is
+	 * serialized.
+	 */
+	private transient long startMillis;
+	private transient long endMillis;
+
+	/**
+	 * Time zone for calendars built lazily. null means DEFAULT_TIMEZONE.
+	 */
+	private transient TimeZone zone;
+
 	/**
 	 * 開始カレンダオブジェクトを返す。
-	 * @return
+	 * 未作成の場合はここで作成する。
+	 * 返すのは複製なので、変更してもこのPeriodには影響しない。
+	 * @return 開始カレンダの複製
 	 */
 	public Calendar getcStart() {
-		return cStart;
+		Calendar c = cStart;
+		if (c == null) {
+			c = GregorianCalendar.getInstance(getZone());
+			c.setTimeInMillis(startMillis);
+			cStart = c;
+		}
+		return (Calendar) c.clone();
 	}
 
 	/**
 	 * 終了カレンダオブジェクトを返す。
-	 * @return
+	 * 未作成の場合はここで作成する。
+	 * 返すのは複製なので、変更してもこのPeriodには影響しない。
+	 * @return 終了カレンダの複製
 	 */
 	public Calendar getcEnd() {
-		return cEnd;
+		Calendar c = cEnd;
+		if (c == null) {
+			c = GregorianCalendar.getInstance(getZone());
+			c.setTimeInMillis(endMillis);
+			cEnd = c;
+		}
+		return (Calendar) c.clone();
+	}
+
+	/**
+	 * Gets the start of the period without allocating.
+	 * 
+	 * @return the start in milliseconds since the epoch
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * Gets the end of the period without allocating.
+	 * 
+	 * @return the end in milliseconds since the epoch
+	 */
+	public long getEndMillis() {
+		return endMillis;
+	}
+
+	private TimeZone getZone() {
+		return zone == null ? DEFAULT_TIMEZONE : zone;
 	}
 
 	/**
@@ -56,6 +115,21 @@ public class Period implements Serializable, Comparable, Cloneable {
 	public Period( Calendar aStart, Calendar anEnd ) {
 		set( aStart, anEnd );
 	}
+
+	/**
+	 * Constructs a Period from starting and ending times in milliseconds since
+	 * the epoch. No Date or Calendar is created until one is asked for.
+	 * 
+	 * @param aStart
+	 *            the start of the period
+	 * @param anEnd
+	 *            the end of the period, not before aStart
+	 * @throws IllegalArgumentException
+	 *             if aStart is after anEnd
+	 */
+	public Period(long aStart, long anEnd) {
+		set(aStart, anEnd);
+	}
 	
 	/**
 	 * Constructs a Period from a starting and an ending Date (both non-null
@@ -166,11 +240,7 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * 
 	 */
 	public Period() {
-		Calendar c1 = GregorianCalendar.getInstance( DEFAULT_TIMEZONE );
-		Calendar c2 = GregorianCalendar.getInstance( DEFAULT_TIMEZONE );
-		c1.setTime(getBeginningOfTime());
-		c2.setTime(getEndOfTime());
-		set(c1,c2);
+		set(earliest, latest);
 	}
 
 	/**
@@ -186,29 +256,34 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * 
 	 */
 	protected void setStart(Date aStart) {
-		if (aStart.after(end)) {
+		if (aStart.getTime() > endMillis) {
 			String explanation = "Period.setStart called with start date ("
 					+ aStart.toString()
 					+ ") later than the Period's existing end date ("
-					+ end.toString() + ")";
+					+ new Date(endMillis).toString() + ")";
 			throw new IllegalArgumentException(explanation);
 		}
 
-		start = (Date) aStart.clone();
-		cStart.setTime(start);		// sync corresponding calendar
+		startMillis = aStart.getTime();
+		Calendar c = cStart;
+		if (c != null) {
+			c = (Calendar) c.clone();	// another thread may be reading the old one
+			c.setTime(aStart);			// sync corresponding calendar
+			cStart = c;
+		}
 	}
 	
 	protected void setStart( Calendar aStart) {
-		if (aStart.after(cEnd)) {
+		if (aStart.getTimeInMillis() > endMillis) {
 			String explanation = "Period.setStart called with start date ("
 					+ aStart.toString()
 					+ ") later than the Period's existing end date ("
-					+ end.toString() + ")";
+					+ new Date(endMillis).toString() + ")";
 			throw new IllegalArgumentException(explanation);
 		}
 
 		cStart = aStart;
-		start = aStart.getTime(); // sync corresponging Date
+		startMillis = aStart.getTimeInMillis(); // sync corresponding millis
 		
 	}
 
@@ -224,16 +299,21 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * @see #setEnd(Calendar)
 	 */
 	protected void setEnd(Date anEnd) {
-		if (anEnd.before(start)) {
+		if (anEnd.getTime() < startMillis) {
 			String explanation = "Period.setEnd called with end date ("
 					+ anEnd.toString()
 					+ ") earlier than the Period's existing start date ("
-					+ start.toString() + ")";
+					+ new Date(startMillis).toString() + ")";
 			throw new IllegalArgumentException(explanation);
 		}
 
-		end = (Date) anEnd.clone();
-		cEnd.setTime(end);
+		endMillis = anEnd.getTime();
+		Calendar c = cEnd;
+		if (c != null) {
+			c = (Calendar) c.clone();
+			c.setTime(anEnd);
+			cEnd = c;
+		}
 	}
 
 /**
@@ -242,16 +322,16 @@ public class Period implements Serializable, Comparable, Cloneable {
  * @param anEnd 終了カレンダ
  */
 	protected void setEnd(Calendar anEnd) {
-		if (anEnd.before(cStart)) {
+		if (anEnd.getTimeInMillis() < startMillis) {
 			String explanation = "Period.setEnd called with end date ("
 					+ anEnd.toString()
 					+ ") earlier than the Period's existing start date ("
-					+ start.toString() + ")";
+					+ new Date(startMillis).toString() + ")";
 			throw new IllegalArgumentException(explanation);
 		}
 
 		cEnd = anEnd;
-		end = cEnd.getTime();
+		endMillis = anEnd.getTimeInMillis();
 	}
 	/**
 	 * Sets the start and end date, ensuring that start is before end Calls
@@ -282,12 +362,11 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * @param tz
 	 */
 	protected void set( Date aStart, Date anEnd, TimeZone tz) {
-		cStart = GregorianCalendar.getInstance(tz);
-		cEnd = GregorianCalendar.getInstance(tz);
-		cStart.setTime(aStart);
-		cEnd.setTime(anEnd);
-		start = (Date) aStart.clone();
-		end = (Date) anEnd.clone();
+		cStart = null;		// built on demand in tz
+		cEnd = null;
+		zone = tz;
+		startMillis = aStart.getTime();
+		endMillis = anEnd.getTime();
 	}
 	
 	/** 
@@ -298,8 +377,33 @@ public class Period implements Serializable, Comparable, Cloneable {
 	protected void set( Calendar aStart, Calendar anEnd ){
 		cStart = aStart;
 		cEnd = anEnd;
-		start = aStart.getTime();
-		end = anEnd.getTime();
+		zone = null;
+		startMillis = aStart.getTimeInMillis();
+		endMillis = anEnd.getTimeInMillis();
+	}
+
+	/**
+	 * Sets the start and end in milliseconds since the epoch, ensuring that
+	 * start is not after end. Calendars are built later, in the default time
+	 * zone, if a caller asks for them.
+	 * 
+	 * @param aStart
+	 *            the start of the period
+	 * @param anEnd
+	 *            the end of the period
+	 */
+	protected void set(long aStart, long anEnd) {
+		if (anEnd < aStart) {
+			String explanation = "Period constructor called with end date ("
+					+ new Date(anEnd).toString() + ") earlier than start date ("
+					+ new Date(aStart).toString() + ")";
+			throw new IllegalArgumentException(explanation);
+		}
+		cStart = null;
+		cEnd = null;
+		zone = null;
+		startMillis = aStart;
+		endMillis = anEnd;
 	}
 	
 	/**
@@ -415,11 +519,35 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 *         otherwise
 	 */
 	public boolean coincidesWith(Period another) {
-		if (getStart().before(another.getEnd())
-				&& getEnd().after(another.getStart()))
-			return (true);
-		else
-			return (false);
+		return startMillis < another.endMillis && endMillis > another.startMillis;
+	}
+
+	/**
+	 * Indicates whether this period overlaps the period (aStart,anEnd) given in
+	 * milliseconds since the epoch. Same rules as
+	 * {@link #coincidesWith(Period) coincidesWith(Period)}, without needing a
+	 * Period object.
+	 * 
+	 * @param aStart
+	 *            start of the other period
+	 * @param anEnd
+	 *            end of the other period
+	 * @return true if the two periods overlap, false otherwise
+	 */
+	public boolean coincidesWith(long aStart, long anEnd) {
+		return startMillis < anEnd && endMillis > aStart;
+	}
+
+	/**
+	 * Indicates whether the instant falls within the partially closed interval
+	 * (start,end]. Same rules as {@link #coincidesWith(Calendar)}.
+	 * 
+	 * @param input
+	 *            the instant in milliseconds since the epoch
+	 * @return true if input is within (start,end]
+	 */
+	public boolean coincidesWith(long input) {
+		return startMillis < input && input <= endMillis;
 	}
 
 	/**
@@ -436,10 +564,7 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * @see #coincidesWith(Calendar)
 	 */
 	public boolean coincidesWith(Date input) {
-		if (getStart().before(input) && !getEnd().before(input))
-			return true;
-		else
-			return false;
+		return coincidesWith(input.getTime());
 	}
 
 	/**
@@ -454,11 +579,7 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * @return true if input is within the exclusive interval (start,end)
 	 */
 	public boolean coincidesWith( Calendar input ){
-		if (getcStart().before(input) && !getcEnd().before(input))
-			return true;
-		else
-			return false;
-		
+		return coincidesWith(input.getTimeInMillis());
 	}
 	/**
 	 * Indicates whether the input date falls within the interval See
@@ -478,14 +599,7 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 */
 	public boolean coincidesWith(Date input, boolean includeStart,
 			boolean includeEnd) {
-		if (getStart().before(input) && getEnd().after(input))
-			return true;
-		else if (includeStart && input.equals(getStart()))
-			return true;
-		else if (includeEnd && input.equals(getEnd()))
-			return true;
-		else
-			return false;
+		return coincidesWith(input.getTime(), includeStart, includeEnd);
 	}
 
 	/**
@@ -504,15 +618,32 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 */
 	public boolean coincidesWith(Calendar input, boolean includeStart,
 			boolean includeEnd) {
-		if (getcStart().before(input) && getcEnd().after(input))
+		return coincidesWith(input.getTimeInMillis(), includeStart, includeEnd);
+	}
+
+	/**
+	 * Indicates whether the instant falls within the interval. Same rules as
+	 * {@link #coincidesWith(Calendar, boolean, boolean)}.
+	 * 
+	 * @param input
+	 *            the instant in milliseconds since the epoch
+	 * @param includeStart
+	 *            if input=start then also return true
+	 * @param includeEnd
+	 *            if input=end then also return true
+	 * @return true if input is within the interval (start,end), (start,end],
+	 *         [start,end) or [start,end]
+	 */
+	public boolean coincidesWith(long input, boolean includeStart,
+			boolean includeEnd) {
+		if (startMillis < input && input < endMillis)
 			return true;
-		else if (includeStart && input.equals(getcStart()))
+		else if (includeStart && input == startMillis)
 			return true;
-		else if (includeEnd && input.equals(getcEnd()))
+		else if (includeEnd && input == endMillis)
 			return true;
 		else
 			return false;
-		
 	}
 	/**
 	 * Indicates whether the Period begins
@@ -520,7 +651,7 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * @return true if the Period has a beginning date, false if it doesn't
 	 */
 	public boolean hasBeginning() {
-		return !start.equals(getBeginningOfTime());
+		return startMillis != earliest;
 	}
 
 	/**
@@ -529,7 +660,7 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * @return true if the Period has an ending date, false if it doesn't
 	 */
 	public boolean hasEnd() {
-		return !end.equals(getEndOfTime());
+		return endMillis != latest;
 	}
 
 	/**
@@ -540,7 +671,7 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * @see #getcStart()
 	 */
 	public Date getStart() {
-		return (Date) start.clone();
+		return new Date(startMillis);
 	}
 
 	/**
@@ -550,20 +681,20 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * @see #getcEnd()
 	 */
 	public Date getEnd() {
-		return (Date) end.clone();
+		return new Date(endMillis);
 	}
 
 	public String toString() {
 		String result = null;
 		if (hasBeginning())
-			result = local.format(getStart());
+			result = local.format(new Date(startMillis));
 		else
 			result = "<";
 
 		result = result + " - ";
 
 		if (hasEnd())
-			result = result + local.format(getEnd());
+			result = result + local.format(new Date(endMillis));
 		else
 //			result = result = result + ">";
 			result = result + ">";
@@ -581,13 +712,13 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 */
 	public int compareTo(Object a) {
 		Period aPeriod = (Period) a;
-		if (getStart().before(aPeriod.getStart()))
+		if (startMillis < aPeriod.startMillis)
 			return -1;
-		else if (getStart().after(aPeriod.getStart()))
+		else if (startMillis > aPeriod.startMillis)
 			return 1;
-		else if (getEnd().before(aPeriod.getEnd()))
+		else if (endMillis < aPeriod.endMillis)
 			return -1;
-		else if (getEnd().after(aPeriod.getEnd()))
+		else if (endMillis > aPeriod.endMillis)
 			return 1;
 		else
 			return 0;
@@ -595,9 +726,8 @@ public class Period implements Serializable, Comparable, Cloneable {
 
 	public Object clone() {
 		// Interval i= new Interval(start,end);
-		Period i = new Period(start, end);
-		// I don't use getStart and getEnd because they clone the returned
-		// dates, and the constructor clones the input Date parameters;
+		Period i = new Period(startMillis, endMillis);
+		// calendars are rebuilt on demand by the copy
 		return i;
 	}
 
@@ -665,25 +795,15 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 * @return a new Period covering the same period as both this and the other.
 	 */
 	public Period unionWith(Period another) {
-		Date earliest = null;
+		long first = earliest;
 		if (this.hasBeginning() && another.hasBeginning())
-			earliest = getEarlierOf(start, another.getStart());
+			first = Math.min(startMillis, another.startMillis);
 
-		Date latest = null;
+		long last = latest;
 		if (this.hasEnd() && another.hasEnd())
-			latest = getLaterOf(end, another.getEnd());
-
-		if (earliest == null)
-			if (latest == null)
-				return new Period();
-			else
-				return new Period(latest, false);
-		else // earliest date exists
-		if (latest == null)
-			return new Period(earliest, true);
-		else
-			return new Period(earliest, latest);
+			last = Math.max(endMillis, another.endMillis);
 
+		return new Period(first, last);
 	}
 
 	/**
@@ -695,9 +815,22 @@ public class Period implements Serializable, Comparable, Cloneable {
 	 *         this one.
 	 */
 	public boolean encompasses(Period another) {
-		return !(getEarlierOf(start, another.getStart()).before(start) || getLaterOf(
-				end, another.getEnd()).after(end));
+		return encompasses(another.startMillis, another.endMillis);
+	}
 
+	/**
+	 * Determines whether the period from aStart to anEnd, in milliseconds since
+	 * the epoch, lies within this one.
+	 * 
+	 * @param aStart
+	 *            start of the period to test
+	 * @param anEnd
+	 *            end of the period to test
+	 * @return true if the other period doesn't start earlier nor end later than
+	 *         this one.
+	 */
+	public boolean encompasses(long aStart, long anEnd) {
+		return aStart >= startMillis && anEnd <= endMillis;
 	}
 
 	// I originally used null values for start and end, but think Mark II is an
@@ -708,10 +841,26 @@ public class Period implements Serializable, Comparable, Cloneable {
 	// to work;
 	private static final long latest = 0x7FFFFFFFFFFFFFFFL;
 
+	// Only filled in when the Period is serialized; see writeObject.
 	private Date end;
 
 	private Date start;
 
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		getcStart();
+		getcEnd();
+		start = new Date(startMillis);
+		end = new Date(endMillis);
+		out.defaultWriteObject();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		startMillis = start.getTime();
+		endMillis = end.getTime();
+	}
+
 	static {
 		java.util.Calendar c = java.util.Calendar.getInstance();
 		c.clear();
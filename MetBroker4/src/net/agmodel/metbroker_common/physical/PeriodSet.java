@@ -0,0 +1,555 @@
+package net.agmodel.metbroker_common.physical;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * A set of non-contiguous time ranges.<br>
+ * {@link Period#unionWith(Period) Period.unionWith} returns a single covering
+ * Period and so loses any gaps; a PeriodSet keeps them. The ranges are held as
+ * two sorted arrays of milliseconds since the epoch, disjoint and with gaps
+ * between them, so set operations are linear merges that create no Period
+ * objects.<br>
+ * Each range is the partially closed interval (start,end], consistent with
+ * {@link Period#coincidesWith(Period)} and the interpretation of dateExtremes in
+ * {@link net.agmodel.metbroker_common.weatherData.MetRequest MetRequest}. A
+ * range ending where another starts is therefore merged with it, and a Period
+ * with start equal to end adds nothing.<br>
+ * Typical use in the cache is finding what still has to be fetched:
+ *
+ * <pre>
+ * PeriodSet missing = PeriodSet.of(request.getDateExtremes()).difference(held);
+ * </pre>
+ *
+ * PeriodSets are immutable.
+ */
+public final class PeriodSet implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The set containing no time at all.
+	 */
+	public static final PeriodSet EMPTY = new PeriodSet(new long[0],
+			new long[0]);
+
+	private final long[] starts;
+	private final long[] ends;
+
+	/**
+	 * Wraps arrays which are already sorted, disjoint and non-touching. The
+	 * arrays are not copied.
+	 */
+	private PeriodSet(long[] starts, long[] ends) {
+		this.starts = starts;
+		this.ends = ends;
+	}
+
+	/**
+	 * Creates a set holding one range.
+	 *
+	 * @param aStart
+	 *            start of the range in milliseconds since the epoch
+	 * @param anEnd
+	 *            end of the range in milliseconds since the epoch
+	 * @return the set, or EMPTY if anEnd is not after aStart
+	 */
+	public static PeriodSet of(long aStart, long anEnd) {
+		if (anEnd <= aStart)
+			return EMPTY;
+		return new PeriodSet(new long[] { aStart }, new long[] { anEnd });
+	}
+
+	/**
+	 * Creates a set covering the given periods, which may overlap and be in any
+	 * order.
+	 *
+	 * @param periods
+	 *            the periods to include
+	 * @return the set
+	 */
+	public static PeriodSet of(Period... periods) {
+		long[] s = new long[periods.length];
+		long[] e = new long[periods.length];
+		for (int i = 0; i < periods.length; i++) {
+			s[i] = periods[i].getStartMillis();
+			e[i] = periods[i].getEndMillis();
+		}
+		return normalise(s, e, periods.length);
+	}
+
+	/**
+	 * Creates a set covering the given periods, which may overlap and be in any
+	 * order.
+	 *
+	 * @param periods
+	 *            the periods to include
+	 * @return the set
+	 */
+	public static PeriodSet of(Collection<? extends Period> periods) {
+		long[] s = new long[periods.size()];
+		long[] e = new long[periods.size()];
+		int n = 0;
+		Iterator<? extends Period> i = periods.iterator();
+		while (i.hasNext()) {
+			Period p = i.next();
+			s[n] = p.getStartMillis();
+			e[n] = p.getEndMillis();
+			n++;
+		}
+		return normalise(s, e, n);
+	}
+
+	/**
+	 * Creates a set from parallel arrays of range starts and ends, which may
+	 * overlap and be in any order. The arrays are not modified.
+	 *
+	 * @param rangeStarts
+	 *            starts in milliseconds since the epoch
+	 * @param rangeEnds
+	 *            ends in milliseconds since the epoch
+	 * @return the set
+	 */
+	public static PeriodSet of(long[] rangeStarts, long[] rangeEnds) {
+		if (rangeStarts.length != rangeEnds.length)
+			throw new IllegalArgumentException("PeriodSet.of called with "
+					+ rangeStarts.length + " starts but " + rangeEnds.length
+					+ " ends");
+		return normalise(rangeStarts.clone(), rangeEnds.clone(),
+				rangeStarts.length);
+	}
+
+	/**
+	 * Sorts the first n ranges by start and merges overlapping or touching
+	 * ones. The arrays passed are reordered.
+	 */
+	private static PeriodSet normalise(long[] s, long[] e, int n) {
+		// drop empty ranges
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			if (e[i] > s[i]) {
+				s[m] = s[i];
+				e[m] = e[i];
+				m++;
+			}
+		}
+		if (m == 0)
+			return EMPTY;
+		sortByStart(s, e, 0, m - 1);
+
+		int k = 0;
+		for (int i = 1; i < m; i++) {
+			if (s[i] <= e[k]) {
+				if (e[i] > e[k])
+					e[k] = e[i];
+			} else {
+				k++;
+				s[k] = s[i];
+				e[k] = e[i];
+			}
+		}
+		return new PeriodSet(Arrays.copyOf(s, k + 1), Arrays.copyOf(e, k + 1));
+	}
+
+	/**
+	 * Quicksort of the parallel arrays on s, inclusive bounds.
+	 */
+	private static void sortByStart(long[] s, long[] e, int lo, int hi) {
+		while (lo < hi) {
+			long pivot = s[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (s[i] < pivot)
+					i++;
+				while (s[j] > pivot)
+					j--;
+				if (i <= j) {
+					long t = s[i];
+					s[i] = s[j];
+					s[j] = t;
+					t = e[i];
+					e[i] = e[j];
+					e[j] = t;
+					i++;
+					j--;
+				}
+			}
+			// recurse into the smaller half to bound the stack depth
+			if (j - lo < hi - i) {
+				sortByStart(s, e, lo, j);
+				lo = i;
+			} else {
+				sortByStart(s, e, i, hi);
+				hi = j;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of disjoint ranges in the set.
+	 *
+	 * @return number of ranges
+	 */
+	public int size() {
+		return starts.length;
+	}
+
+	/**
+	 * Indicates whether the set contains no time.
+	 *
+	 * @return true if the set is empty
+	 */
+	public boolean isEmpty() {
+		return starts.length == 0;
+	}
+
+	/**
+	 * Gets the start of a range.
+	 *
+	 * @param index
+	 *            range number, from 0 to size()-1 in time order
+	 * @return the start in milliseconds since the epoch
+	 */
+	public long getStartMillis(int index) {
+		return starts[index];
+	}
+
+	/**
+	 * Gets the end of a range.
+	 *
+	 * @param index
+	 *            range number, from 0 to size()-1 in time order
+	 * @return the end in milliseconds since the epoch
+	 */
+	public long getEndMillis(int index) {
+		return ends[index];
+	}
+
+	/**
+	 * Gets a range as a Period.
+	 *
+	 * @param index
+	 *            range number, from 0 to size()-1 in time order
+	 * @return a new Period
+	 */
+	public Period getPeriod(int index) {
+		return new Period(starts[index], ends[index]);
+	}
+
+	/**
+	 * Gets all the ranges as Periods in time order.
+	 *
+	 * @return a new array of Periods
+	 */
+	public Period[] toPeriods() {
+		Period[] result = new Period[starts.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = new Period(starts[i], ends[i]);
+		return result;
+	}
+
+	/**
+	 * Gets the smallest single Period covering the whole set.
+	 *
+	 * @return the covering Period, or null if the set is empty
+	 */
+	public Period getExtent() {
+		if (isEmpty())
+			return null;
+		return new Period(starts[0], ends[ends.length - 1]);
+	}
+
+	/**
+	 * Gets the total time covered by the set.
+	 *
+	 * @return total length of all ranges in milliseconds
+	 */
+	public long getTotalMillis() {
+		long total = 0;
+		for (int i = 0; i < starts.length; i++)
+			total += ends[i] - starts[i];
+		return total;
+	}
+
+	/**
+	 * Finds the range which could contain the instant t, i.e. the last range
+	 * whose start is before t.
+	 *
+	 * @return the range index, or -1 if every range starts at or after t
+	 */
+	private int floorRange(long t) {
+		int lo = 0;
+		int hi = starts.length - 1;
+		int found = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (starts[mid] < t) {
+				found = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Indicates whether the instant is in the set, using the same (start,end]
+	 * rule as {@link Period#coincidesWith(long)}.
+	 *
+	 * @param instant
+	 *            milliseconds since the epoch
+	 * @return true if the instant is in one of the ranges
+	 */
+	public boolean contains(long instant) {
+		int i = floorRange(instant);
+		return i >= 0 && instant <= ends[i];
+	}
+
+	/**
+	 * Indicates whether the set entirely covers the range (aStart,anEnd]. An
+	 * empty range is covered if its instant is in the set.
+	 *
+	 * @param aStart
+	 *            start of the range in milliseconds since the epoch
+	 * @param anEnd
+	 *            end of the range in milliseconds since the epoch
+	 * @return true if no part of the range is missing from the set
+	 */
+	public boolean covers(long aStart, long anEnd) {
+		if (anEnd <= aStart)
+			return contains(anEnd);
+		int i = floorRange(aStart + 1);
+		return i >= 0 && anEnd <= ends[i];
+	}
+
+	/**
+	 * Indicates whether the set entirely covers a period.
+	 *
+	 * @param aPeriod
+	 *            the period to test
+	 * @return true if no part of the period is missing from the set
+	 */
+	public boolean covers(Period aPeriod) {
+		return covers(aPeriod.getStartMillis(), aPeriod.getEndMillis());
+	}
+
+	/**
+	 * Indicates whether any part of the range (aStart,anEnd] is in the set.
+	 *
+	 * @param aStart
+	 *            start of the range in milliseconds since the epoch
+	 * @param anEnd
+	 *            end of the range in milliseconds since the epoch
+	 * @return true if the range overlaps one of the ranges in the set
+	 */
+	public boolean coincidesWith(long aStart, long anEnd) {
+		int i = floorRange(anEnd);
+		return i >= 0 && ends[i] > aStart;
+	}
+
+	/**
+	 * Indicates whether any part of a period is in the set.
+	 *
+	 * @param aPeriod
+	 *            the period to test
+	 * @return true if the period overlaps one of the ranges in the set
+	 */
+	public boolean coincidesWith(Period aPeriod) {
+		return coincidesWith(aPeriod.getStartMillis(), aPeriod.getEndMillis());
+	}
+
+	/**
+	 * Creates the set of time in this set or the other.
+	 *
+	 * @param another
+	 *            the other set
+	 * @return the union
+	 */
+	public PeriodSet union(PeriodSet another) {
+		if (another.isEmpty())
+			return this;
+		if (isEmpty())
+			return another;
+		int n = starts.length + another.starts.length;
+		long[] s = new long[n];
+		long[] e = new long[n];
+		int k = -1;
+		int i = 0;
+		int j = 0;
+		while (i < starts.length || j < another.starts.length) {
+			long ns;
+			long ne;
+			if (j >= another.starts.length
+					|| (i < starts.length && starts[i] <= another.starts[j])) {
+				ns = starts[i];
+				ne = ends[i];
+				i++;
+			} else {
+				ns = another.starts[j];
+				ne = another.ends[j];
+				j++;
+			}
+			if (k >= 0 && ns <= e[k]) {
+				if (ne > e[k])
+					e[k] = ne;
+			} else {
+				k++;
+				s[k] = ns;
+				e[k] = ne;
+			}
+		}
+		return new PeriodSet(Arrays.copyOf(s, k + 1), Arrays.copyOf(e, k + 1));
+	}
+
+	/**
+	 * Creates the set of time in this set or the period.
+	 *
+	 * @param aPeriod
+	 *            the period to add
+	 * @return the union
+	 */
+	public PeriodSet union(Period aPeriod) {
+		return union(of(aPeriod.getStartMillis(), aPeriod.getEndMillis()));
+	}
+
+	/**
+	 * Creates the set of time in both this set and the other.
+	 *
+	 * @param another
+	 *            the other set
+	 * @return the intersection
+	 */
+	public PeriodSet intersection(PeriodSet another) {
+		if (isEmpty() || another.isEmpty())
+			return EMPTY;
+		int n = starts.length + another.starts.length;
+		long[] s = new long[n];
+		long[] e = new long[n];
+		int k = 0;
+		int i = 0;
+		int j = 0;
+		while (i < starts.length && j < another.starts.length) {
+			long lo = Math.max(starts[i], another.starts[j]);
+			long hi = Math.min(ends[i], another.ends[j]);
+			if (hi > lo) {
+				s[k] = lo;
+				e[k] = hi;
+				k++;
+			}
+			if (ends[i] < another.ends[j])
+				i++;
+			else
+				j++;
+		}
+		if (k == 0)
+			return EMPTY;
+		return new PeriodSet(Arrays.copyOf(s, k), Arrays.copyOf(e, k));
+	}
+
+	/**
+	 * Creates the set of time in both this set and the period.
+	 *
+	 * @param aPeriod
+	 *            the period to intersect with
+	 * @return the intersection
+	 */
+	public PeriodSet intersection(Period aPeriod) {
+		return intersection(of(aPeriod.getStartMillis(), aPeriod.getEndMillis()));
+	}
+
+	/**
+	 * Creates the set of time in this set but not in the other.
+	 *
+	 * @param another
+	 *            the set to remove
+	 * @return the difference
+	 */
+	public PeriodSet difference(PeriodSet another) {
+		if (isEmpty() || another.isEmpty())
+			return this;
+		int n = starts.length + another.starts.length;
+		long[] s = new long[n];
+		long[] e = new long[n];
+		int k = 0;
+		int j = 0;
+		for (int i = 0; i < starts.length; i++) {
+			long lo = starts[i];
+			long hi = ends[i];
+			// skip removals ending before this range
+			while (j < another.starts.length && another.ends[j] <= lo)
+				j++;
+			int jj = j;
+			while (jj < another.starts.length && another.starts[jj] < hi) {
+				if (another.starts[jj] > lo) {
+					s[k] = lo;
+					e[k] = another.starts[jj];
+					k++;
+				}
+				lo = Math.max(lo, another.ends[jj]);
+				if (lo >= hi)
+					break;
+				jj++;
+			}
+			if (hi > lo) {
+				s[k] = lo;
+				e[k] = hi;
+				k++;
+			}
+		}
+		if (k == 0)
+			return EMPTY;
+		return new PeriodSet(Arrays.copyOf(s, k), Arrays.copyOf(e, k));
+	}
+
+	/**
+	 * Creates the set of time in this set but not in the period.
+	 *
+	 * @param aPeriod
+	 *            the period to remove
+	 * @return the difference
+	 */
+	public PeriodSet difference(Period aPeriod) {
+		return difference(of(aPeriod.getStartMillis(), aPeriod.getEndMillis()));
+	}
+
+	/**
+	 * Creates the set of time within the bound which is not in this set, i.e.
+	 * the gaps.
+	 *
+	 * @param bound
+	 *            the period the complement is taken within
+	 * @return the parts of bound not covered by this set
+	 */
+	public PeriodSet complement(Period bound) {
+		return of(bound.getStartMillis(), bound.getEndMillis()).difference(this);
+	}
+
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof PeriodSet))
+			return false;
+		PeriodSet another = (PeriodSet) o;
+		return Arrays.equals(starts, another.starts)
+				&& Arrays.equals(ends, another.ends);
+	}
+
+	public int hashCode() {
+		return 31 * Arrays.hashCode(starts) + Arrays.hashCode(ends);
+	}
+
+	public String toString() {
+		StringBuffer output = new StringBuffer(40 * starts.length + 2);
+		output.append('{');
+		for (int i = 0; i < starts.length; i++) {
+			if (i > 0)
+				output.append(", ");
+			output.append(new Period(starts[i], ends[i]));
+		}
+		output.append('}');
+		return output.toString();
+	}
+}
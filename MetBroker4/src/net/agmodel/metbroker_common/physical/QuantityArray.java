@@ -0,0 +1,357 @@
+package net.agmodel.metbroker_common.physical;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+/**
+ * A column of values of one physical quantity, all in the same unit.<br>
+ * Drivers return whole series of a quantity in one unit, so rather than one
+ * {@link Length} (or other quantity) object per value the series is held as a
+ * double[] and a single Unit. Conversion and arithmetic work on the whole
+ * column in one loop with the per-unit factor worked out once, which the JIT
+ * can vectorise; the only allocation is the result array.<br>
+ * Missing values are NaN and propagate through arithmetic and reductions.
+ *
+ * @param <Q>
+ *            the quantity, e.g. javax.measure.quantity.Length
+ */
+public class QuantityArray<Q extends Quantity> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final double[] values;
+	private final Unit<Q> unit;
+
+	/**
+	 * Creates a column of zeros.
+	 *
+	 * @param size
+	 *            number of values
+	 * @param unit
+	 *            unit of every value
+	 */
+	public QuantityArray(int size, Unit<Q> unit) {
+		this(new double[size], unit);
+	}
+
+	/**
+	 * Creates a column using the array given. The array is not copied, so a
+	 * driver can fill it directly.
+	 *
+	 * @param values
+	 *            the values
+	 * @param unit
+	 *            unit of every value
+	 */
+	public QuantityArray(double[] values, Unit<Q> unit) {
+		this.values = values;
+		this.unit = unit;
+	}
+
+	/**
+	 * Creates a column from Length objects.
+	 *
+	 * @param lengths
+	 *            the lengths
+	 * @param unit
+	 *            unit for the column
+	 * @return the column
+	 */
+	public static QuantityArray<javax.measure.quantity.Length> of(
+			Length[] lengths, Unit<javax.measure.quantity.Length> unit) {
+		double[] v = new double[lengths.length];
+		for (int i = 0; i < v.length; i++)
+			v[i] = lengths[i].getValue(unit);
+		return new QuantityArray<javax.measure.quantity.Length>(v, unit);
+	}
+
+	/**
+	 * Gets the number of values.
+	 *
+	 * @return number of values
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Gets the unit of every value in the column.
+	 *
+	 * @return unit
+	 */
+	public Unit<Q> getUnit() {
+		return unit;
+	}
+
+	/**
+	 * Gets a value in the column's unit.
+	 *
+	 * @param index
+	 *            position in the column
+	 * @return the value
+	 */
+	public double get(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Sets a value in the column's unit.
+	 *
+	 * @param index
+	 *            position in the column
+	 * @param value
+	 *            the value
+	 */
+	public void set(int index, double value) {
+		values[index] = value;
+	}
+
+	/**
+	 * Gets a value in another unit.
+	 *
+	 * @param index
+	 *            position in the column
+	 * @param u
+	 *            unit wanted
+	 * @return the value in u
+	 */
+	public double getValue(int index, Unit<Q> u) {
+		if (u == unit)
+			return values[index];
+		return UnitScale.of(u).fromStandard(
+				UnitScale.of(unit).toStandard(values[index]));
+	}
+
+	/**
+	 * Gets the array backing the column. Changes to it change the column.
+	 *
+	 * @return the values
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Gets a value as a Length object.
+	 *
+	 * @param index
+	 *            position in the column
+	 * @return the Length
+	 * @throws IllegalStateException
+	 *             if the column isn't a length
+	 */
+	@SuppressWarnings("unchecked")
+	public Length getLength(int index) {
+		return new Length(values[index], (Unit<javax.measure.quantity.Length>) lengthUnit());
+	}
+
+	/**
+	 * Sets a value from a Length object.
+	 *
+	 * @param index
+	 *            position in the column
+	 * @param x
+	 *            the Length
+	 * @throws IllegalStateException
+	 *             if the column isn't a length
+	 */
+	@SuppressWarnings("unchecked")
+	public void setLength(int index, Length x) {
+		values[index] = x.getValue((Unit<javax.measure.quantity.Length>) lengthUnit());
+	}
+
+	private Unit<?> lengthUnit() {
+		if (!unit.isCompatible(SI.METRE))
+			throw new IllegalStateException("QuantityArray in " + unit
+					+ " is not a length");
+		return unit;
+	}
+
+	/**
+	 * Converts the whole column to another unit in one pass.
+	 *
+	 * @param u
+	 *            unit wanted
+	 * @return a new column in u
+	 */
+	public QuantityArray<Q> convertTo(Unit<Q> u) {
+		double[] result = new double[values.length];
+		convertInto(u, result);
+		return new QuantityArray<Q>(result, u);
+	}
+
+	/**
+	 * Converts the whole column to another unit, writing into an existing
+	 * array so repeated conversions allocate nothing.
+	 *
+	 * @param u
+	 *            unit wanted
+	 * @param result
+	 *            array to fill, at least size() long. May be getValues().
+	 */
+	public void convertInto(Unit<Q> u, double[] result) {
+		double[] v = values;
+		int n = v.length;
+		if (u == unit) {
+			System.arraycopy(v, 0, result, 0, n);
+			return;
+		}
+		UnitScale from = UnitScale.of(unit);
+		UnitScale to = UnitScale.of(u);
+		if (from.isAffine() && to.isAffine()) {
+			double f = from.factor / to.factor;
+			double o = (from.offset - to.offset) / to.factor;
+			for (int i = 0; i < n; i++)
+				result[i] = v[i] * f + o;
+		} else {
+			for (int i = 0; i < n; i++)
+				result[i] = to.fromStandard(from.toStandard(v[i]));
+		}
+	}
+
+	/**
+	 * Adds another column value by value. The result is in this column's unit.
+	 *
+	 * @param x
+	 *            column of the same size
+	 * @return a new column
+	 */
+	public QuantityArray<Q> add(QuantityArray<Q> x) {
+		double[] other = x.inUnitOf(this);
+		double[] v = values;
+		double[] result = new double[v.length];
+		for (int i = 0; i < v.length; i++)
+			result[i] = v[i] + other[i];
+		return new QuantityArray<Q>(result, unit);
+	}
+
+	/**
+	 * Substracts another column value by value. The result is in this column's
+	 * unit.
+	 *
+	 * @param x
+	 *            column of the same size
+	 * @return a new column
+	 */
+	public QuantityArray<Q> substract(QuantityArray<Q> x) {
+		double[] other = x.inUnitOf(this);
+		double[] v = values;
+		double[] result = new double[v.length];
+		for (int i = 0; i < v.length; i++)
+			result[i] = v[i] - other[i];
+		return new QuantityArray<Q>(result, unit);
+	}
+
+	/**
+	 * Multiplies every value by a scalar.
+	 *
+	 * @param coefficient
+	 *            scalar
+	 * @return a new column
+	 */
+	public QuantityArray<Q> multiply(double coefficient) {
+		double[] v = values;
+		double[] result = new double[v.length];
+		for (int i = 0; i < v.length; i++)
+			result[i] = v[i] * coefficient;
+		return new QuantityArray<Q>(result, unit);
+	}
+
+	/**
+	 * Divides every value by a scalar.
+	 *
+	 * @param coefficient
+	 *            scalar
+	 * @return a new column
+	 */
+	public QuantityArray<Q> divide(double coefficient) {
+		return multiply(1.0 / coefficient);
+	}
+
+	/**
+	 * Gets the values of this column in the unit of another, converting only
+	 * when the units differ.
+	 */
+	private double[] inUnitOf(QuantityArray<Q> target) {
+		if (values.length != target.values.length)
+			throw new IllegalArgumentException("QuantityArray sizes differ ("
+					+ values.length + " and " + target.values.length + ")");
+		if (unit == target.unit)
+			return values;
+		double[] converted = new double[values.length];
+		convertInto(target.unit, converted);
+		return converted;
+	}
+
+	/**
+	 * Gets the sum of the values in the column's unit.
+	 *
+	 * @return the sum, NaN if any value is missing
+	 */
+	public double sum() {
+		double[] v = values;
+		double total = 0.0;
+		for (int i = 0; i < v.length; i++)
+			total += v[i];
+		return total;
+	}
+
+	/**
+	 * Gets the mean of the values in the column's unit.
+	 *
+	 * @return the mean, NaN if the column is empty or any value is missing
+	 */
+	public double mean() {
+		return values.length == 0 ? Double.NaN : sum() / values.length;
+	}
+
+	/**
+	 * Gets the smallest value in the column's unit.
+	 *
+	 * @return the minimum, NaN if the column is empty or any value is missing
+	 */
+	public double min() {
+		double[] v = values;
+		if (v.length == 0)
+			return Double.NaN;
+		double m = v[0];
+		for (int i = 1; i < v.length; i++)
+			m = Math.min(m, v[i]);
+		return m;
+	}
+
+	/**
+	 * Gets the largest value in the column's unit.
+	 *
+	 * @return the maximum, NaN if the column is empty or any value is missing
+	 */
+	public double max() {
+		double[] v = values;
+		if (v.length == 0)
+			return Double.NaN;
+		double m = v[0];
+		for (int i = 1; i < v.length; i++)
+			m = Math.max(m, v[i]);
+		return m;
+	}
+
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof QuantityArray))
+			return false;
+		QuantityArray<?> x = (QuantityArray<?>) o;
+		return unit.equals(x.unit) && Arrays.equals(values, x.values);
+	}
+
+	public int hashCode() {
+		return unit.hashCode() * 31 + Arrays.hashCode(values);
+	}
+
+	public String toString() {
+		return values.length + " values in " + unit;
+	}
+}
@@ -0,0 +1,241 @@
+package net.agmodel.metbroker_common.physical;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.measure.converter.UnitConverter;
+import javax.measure.unit.Unit;
+import javax.measure.unit.UnitFormat;
+
+/**
+ * Shared cache of JScience unit converters and unit symbols.<br>
+ * Building a UnitConverter or formatting a unit symbol through UnitFormat is
+ * expensive compared with the conversion itself, and display and XML export do
+ * it for every value. This class does that work once per unit (or pair of
+ * units) and hands back the same converter and the same interned symbol
+ * String afterwards. It also holds the per-unit UnitScale that Length and
+ * QuantityArray convert through.<br>
+ * All caches are bounded; when full an arbitrary entry is dropped, which in
+ * practice never happens as MetBroker only uses a few dozen units. Hits and
+ * misses are counted separately for converters (including unit scales) and
+ * symbols so the effectiveness of each cache can be checked.
+ */
+public final class UnitCache {
+
+	/**
+	 * Maximum number of converters held.
+	 */
+	public static final int MAX_CONVERTERS = 512;
+
+	/**
+	 * Maximum number of symbols held.
+	 */
+	public static final int MAX_SYMBOLS = 256;
+
+	/**
+	 * Pair of units a converter goes between.
+	 */
+	private static final class Pair {
+		final Unit<?> from;
+		final Unit<?> to;
+		final int hash;
+
+		Pair(Unit<?> from, Unit<?> to) {
+			this.from = from;
+			this.to = to;
+			this.hash = from.hashCode() * 31 + to.hashCode();
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Pair))
+				return false;
+			Pair p = (Pair) o;
+			return from.equals(p.from) && to.equals(p.to);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final ConcurrentMap<Pair, UnitConverter> converters = new ConcurrentHashMap<Pair, UnitConverter>();
+	private static final ConcurrentMap<Unit<?>, UnitScale> scales = new ConcurrentHashMap<Unit<?>, UnitScale>();
+	private static final ConcurrentMap<Unit<?>, String> symbols = new ConcurrentHashMap<Unit<?>, String>();
+
+	private static final LongAdder converterHits = new LongAdder();
+	private static final LongAdder converterMisses = new LongAdder();
+	private static final LongAdder symbolHits = new LongAdder();
+	private static final LongAdder symbolMisses = new LongAdder();
+
+	private UnitCache() {
+	}
+
+	/**
+	 * Gets the converter between two units.
+	 *
+	 * @param from
+	 *            unit converted from
+	 * @param to
+	 *            unit converted to
+	 * @return the converter
+	 * @throws javax.measure.converter.ConversionException
+	 *             if the units are not compatible
+	 */
+	public static UnitConverter getConverter(Unit<?> from, Unit<?> to) {
+		Pair key = new Pair(from, to);
+		UnitConverter c = converters.get(key);
+		if (c != null) {
+			converterHits.increment();
+			return c;
+		}
+		converterMisses.increment();
+		c = from.getConverterTo(to);
+		makeRoom(converters, MAX_CONVERTERS);
+		UnitConverter previous = converters.putIfAbsent(key, c);
+		return previous == null ? c : previous;
+	}
+
+	/**
+	 * Gets the conversion between a unit and its standard unit, working it
+	 * out on first use. Counted with the converters and bounded by
+	 * MAX_CONVERTERS.
+	 *
+	 * @param unit
+	 *            the unit
+	 * @return conversion between unit and unit.getStandardUnit()
+	 */
+	static UnitScale getScale(Unit<?> unit) {
+		UnitScale s = scales.get(unit);
+		if (s != null) {
+			converterHits.increment();
+			return s;
+		}
+		converterMisses.increment();
+		s = new UnitScale(unit.getConverterTo(unit.getStandardUnit()));
+		makeRoom(scales, MAX_CONVERTERS);
+		UnitScale previous = scales.putIfAbsent(unit, s);
+		return previous == null ? s : previous;
+	}
+
+	/**
+	 * Gets the symbol of a unit, e.g. "mm".
+	 *
+	 * @param unit
+	 *            the unit
+	 * @return the symbol, interned
+	 */
+	public static String getSymbol(Unit<?> unit) {
+		String s = symbols.get(unit);
+		if (s != null) {
+			symbolHits.increment();
+			return s;
+		}
+		symbolMisses.increment();
+		try {
+			StringBuilder a = new StringBuilder(8);
+			UnitFormat.getInstance().format(unit, a);
+			s = a.toString().intern();
+		} catch (IOException e) {
+			// can't happen with a StringBuilder
+			return e.getMessage();
+		}
+		makeRoom(symbols, MAX_SYMBOLS);
+		symbols.putIfAbsent(unit, s);
+		return s;
+	}
+
+	private static void makeRoom(ConcurrentMap<?, ?> map, int max) {
+		Iterator<?> i = map.keySet().iterator();
+		while (map.size() >= max && i.hasNext()) {
+			i.next();
+			i.remove();
+		}
+	}
+
+	/**
+	 * Gets the number of converter and unit scale lookups answered from the
+	 * cache.
+	 *
+	 * @return hit count
+	 */
+	public static long getConverterHitCount() {
+		return converterHits.sum();
+	}
+
+	/**
+	 * Gets the number of converter and unit scale lookups which had to build
+	 * one.
+	 *
+	 * @return miss count
+	 */
+	public static long getConverterMissCount() {
+		return converterMisses.sum();
+	}
+
+	/**
+	 * Gets the proportion of converter and unit scale lookups answered from
+	 * the cache.
+	 *
+	 * @return hit rate from 0 to 1, or 1 if there have been no lookups
+	 */
+	public static double getConverterHitRate() {
+		return rate(converterHits.sum(), converterMisses.sum());
+	}
+
+	/**
+	 * Gets the number of symbol lookups answered from the cache.
+	 *
+	 * @return hit count
+	 */
+	public static long getSymbolHitCount() {
+		return symbolHits.sum();
+	}
+
+	/**
+	 * Gets the number of symbol lookups which had to format the symbol.
+	 *
+	 * @return miss count
+	 */
+	public static long getSymbolMissCount() {
+		return symbolMisses.sum();
+	}
+
+	/**
+	 * Gets the proportion of symbol lookups answered from the cache.
+	 *
+	 * @return hit rate from 0 to 1, or 1 if there have been no lookups
+	 */
+	public static double getSymbolHitRate() {
+		return rate(symbolHits.sum(), symbolMisses.sum());
+	}
+
+	private static double rate(long hits, long misses) {
+		long total = hits + misses;
+		return total == 0 ? 1.0 : (double) hits / total;
+	}
+
+	/**
+	 * Gets the number of converters, unit scales and symbols held.
+	 *
+	 * @return number of cache entries
+	 */
+	public static int size() {
+		return converters.size() + scales.size() + symbols.size();
+	}
+
+	/**
+	 * Empties the cache and resets the counters.
+	 */
+	public static void clear() {
+		converters.clear();
+		scales.clear();
+		symbols.clear();
+		converterHits.reset();
+		converterMisses.reset();
+		symbolHits.reset();
+		symbolMisses.reset();
+	}
+}
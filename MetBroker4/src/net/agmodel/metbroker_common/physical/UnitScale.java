@@ -0,0 +1,95 @@
+package net.agmodel.metbroker_common.physical;
+
+import javax.measure.converter.UnitConverter;
+import javax.measure.unit.Unit;
+
+/**
+ * Precomputed conversion between a unit and its standard (SI) unit.<br>
+ * Almost every unit MetBroker deals with is related to its SI unit by
+ * <code>si = value * factor + offset</code>, so the conversion is worked out
+ * once per unit through JScience and then done with plain double arithmetic.
+ * Units which are not affine keep their JScience converter. Instances are
+ * held in the bounded {@link UnitCache}.
+ */
+final class UnitScale {
+
+	/**
+	 * Multiplier from this unit to the standard unit.
+	 */
+	final double factor;
+
+	/**
+	 * Added after multiplying, e.g. 273.15 for Celsius.
+	 */
+	final double offset;
+
+	/**
+	 * Converter to the standard unit, only set when the unit is not affine.
+	 */
+	private final UnitConverter toStandard;
+	private final UnitConverter fromStandard;
+
+	UnitScale(UnitConverter c) {
+		double o = c.convert(0.0);
+		double f = c.convert(1.0) - o;
+		double probe = c.convert(1000.0);
+		double expected = 1000.0 * f + o;
+		if (Math.abs(probe - expected) <= 1e-9 * Math.max(1.0, Math.abs(expected))) {
+			factor = f;
+			offset = o;
+			toStandard = null;
+			fromStandard = null;
+		} else {
+			factor = Double.NaN;
+			offset = Double.NaN;
+			toStandard = c;
+			fromStandard = c.inverse();
+		}
+	}
+
+	/**
+	 * Gets the conversion for a unit, working it out on first use.
+	 *
+	 * @param unit
+	 *            the unit
+	 * @return conversion between unit and unit.getStandardUnit()
+	 */
+	static UnitScale of(Unit<?> unit) {
+		return UnitCache.getScale(unit);
+	}
+
+	/**
+	 * Converts a value in this unit to the standard unit.
+	 *
+	 * @param value
+	 *            value in this unit
+	 * @return value in the standard unit
+	 */
+	double toStandard(double value) {
+		if (toStandard != null)
+			return toStandard.convert(value);
+		return value * factor + offset;
+	}
+
+	/**
+	 * Converts a value in the standard unit to this unit.
+	 *
+	 * @param value
+	 *            value in the standard unit
+	 * @return value in this unit
+	 */
+	double fromStandard(double value) {
+		if (fromStandard != null)
+			return fromStandard.convert(value);
+		return (value - offset) / factor;
+	}
+
+	/**
+	 * Indicates whether conversion is plain arithmetic on factor and offset.
+	 *
+	 * @return true if the unit is affine
+	 */
+	boolean isAffine() {
+		return toStandard == null;
+	}
+}
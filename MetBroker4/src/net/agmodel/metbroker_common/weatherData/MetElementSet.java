@@ -0,0 +1,262 @@
+package net.agmodel.metbroker_common.weatherData;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+* An immutable set of meteorological elements, held as a bitmask indexed by {@link MetElement#ord}.<br>
+* MetRequest uses it to record the requested elements. Because the set is a few long words,
+* comparing the element sets of two requests ({@link #containsAll(MetElementSet)},
+* {@link #intersects(MetElementSet)}, equals and hashCode) takes a few instructions,
+* which is what cache matching and request coalescing need.<br>
+* Iterate without allocating using ordinals:
+* <pre>
+* for (int i = set.nextOrdinal(0); i &gt;= 0; i = set.nextOrdinal(i + 1))
+*   ...
+* </pre>
+*/
+public final class MetElementSet implements Iterable<MetElement>, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final long[] words;
+  private final int hash;
+  private transient MetElement[] elements;
+
+  private MetElementSet(long[] words) {
+    this.words = words;
+    this.hash = Arrays.hashCode(words);
+  }
+
+  private static long[] newWords() {
+    return new long[(MetElement.size() + 63) >>> 6];
+  }
+
+  /**
+  * Creates a set from a Set of MetElements.
+  * @param requestedElements the elements
+  * @return the element set
+  */
+  public static MetElementSet of(Set<?> requestedElements) {
+    long[] w = newWords();
+    Iterator<?> i = requestedElements.iterator();
+    while (i.hasNext()) {
+      int ord = ((MetElement) i.next()).ord;
+      w[ord >>> 6] |= 1L << ord;
+    }
+    return new MetElementSet(w);
+  }
+
+  /**
+  * Creates a set from flags indexed by {@link MetElement#ord}, the form MetRequest
+  * serializes its elements in. Flags beyond {@link MetElement#size()} are ignored.
+  * @param flags true for each ordinal in the set
+  * @return the element set
+  */
+  static MetElementSet of(boolean[] flags) {
+    long[] w = newWords();
+    int n = Math.min(flags.length, MetElement.size());
+    for (int ord = 0; ord < n; ord++)
+      if (flags[ord])
+        w[ord >>> 6] |= 1L << ord;
+    return new MetElementSet(w);
+  }
+
+  /**
+  * Creates a set from MetElements.
+  * @param requestedElements the elements
+  * @return the element set
+  */
+  public static MetElementSet of(MetElement... requestedElements) {
+    long[] w = newWords();
+    for (int i = 0; i < requestedElements.length; i++) {
+      int ord = requestedElements[i].ord;
+      w[ord >>> 6] |= 1L << ord;
+    }
+    return new MetElementSet(w);
+  }
+
+  /**
+  * Indicates whether an element is in the set
+  * @param aMetElement the element of interest
+  * @return true if the set includes the element
+  */
+  public boolean contains(MetElement aMetElement) {
+    return contains(aMetElement.ord);
+  }
+
+  /**
+  * Indicates whether the element with the given ordinal is in the set
+  * @param ord {@link MetElement#ord} of the element
+  * @return true if the set includes the element
+  */
+  public boolean contains(int ord) {
+    int w = ord >>> 6;
+    return w < words.length && (words[w] & (1L << ord)) != 0;
+  }
+
+  /**
+  * Indicates whether every element of another set is in this one
+  * @param another the other set
+  * @return true if another is a subset of this set
+  */
+  public boolean containsAll(MetElementSet another) {
+    long[] a = another.words;
+    for (int i = 0; i < a.length; i++) {
+      long mine = i < words.length ? words[i] : 0L;
+      if ((a[i] & ~mine) != 0)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+  * Indicates whether the two sets have any element in common
+  * @param another the other set
+  * @return true if the sets intersect
+  */
+  public boolean intersects(MetElementSet another) {
+    int n = Math.min(words.length, another.words.length);
+    for (int i = 0; i < n; i++)
+      if ((words[i] & another.words[i]) != 0)
+        return true;
+    return false;
+  }
+
+  /**
+  * Creates the set of elements in this set or the other
+  * @param another the other set
+  * @return the union
+  */
+  public MetElementSet union(MetElementSet another) {
+    long[] w = Arrays.copyOf(words, Math.max(words.length, another.words.length));
+    for (int i = 0; i < another.words.length; i++)
+      w[i] |= another.words[i];
+    return new MetElementSet(w);
+  }
+
+  /**
+  * Creates the set of elements in both this set and the other
+  * @param another the other set
+  * @return the intersection
+  */
+  public MetElementSet intersection(MetElementSet another) {
+    long[] w = Arrays.copyOf(words, words.length);
+    for (int i = 0; i < w.length; i++)
+      w[i] &= i < another.words.length ? another.words[i] : 0L;
+    return new MetElementSet(w);
+  }
+
+  /**
+  * Gets the number of elements in the set
+  * @return number of elements
+  */
+  public int size() {
+    int n = 0;
+    for (int i = 0; i < words.length; i++)
+      n += Long.bitCount(words[i]);
+    return n;
+  }
+
+  /**
+  * Indicates whether the set has no elements
+  * @return true if empty
+  */
+  public boolean isEmpty() {
+    for (int i = 0; i < words.length; i++)
+      if (words[i] != 0)
+        return false;
+    return true;
+  }
+
+  /**
+  * Gets the ordinal of the first element in the set at or after from.
+  * @param from the ordinal to start looking at
+  * @return the ordinal, or -1 if there are no more elements
+  */
+  public int nextOrdinal(int from) {
+    int w = from >>> 6;
+    if (from < 0 || w >= words.length)
+      return -1;
+    long word = words[w] & (-1L << from);
+    while (true) {
+      if (word != 0)
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+      if (++w == words.length)
+        return -1;
+      word = words[w];
+    }
+  }
+
+  /**
+  * Gets the elements in ordinal order.
+  * @return a new array of the elements
+  */
+  public MetElement[] toArray() {
+    return elements().clone();
+  }
+
+  private MetElement[] elements() {
+    MetElement[] e = elements;
+    if (e == null) {
+      e = new MetElement[size()];
+      int n = 0;
+      for (MetElement m = MetElement.first(); m != null && n < e.length; m = m.next())
+        if (contains(m.ord))
+          e[n++] = m;
+      elements = e;
+    }
+    return e;
+  }
+
+  /**
+  * Iterates over the elements in ordinal order.
+  * @return an iterator which doesn't support remove
+  */
+  public Iterator<MetElement> iterator() {
+    final MetElement[] e = elements();
+    return new Iterator<MetElement>() {
+      private int next = 0;
+
+      public boolean hasNext() {
+        return next < e.length;
+      }
+
+      public MetElement next() {
+        if (next >= e.length)
+          throw new NoSuchElementException();
+        return e[next++];
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException("MetElementSet is immutable");
+      }
+    };
+  }
+
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof MetElementSet))
+      return false;
+    MetElementSet another = (MetElementSet) o;
+    return hash == another.hash && Arrays.equals(words, another.words);
+  }
+
+  public int hashCode() {
+    return hash;
+  }
+
+  public String toString() {
+    StringBuffer output = new StringBuffer(50);
+    MetElement[] e = elements();
+    for (int i = 0; i < e.length; i++) {
+      if (i > 0)
+        output.append("\t");
+      output.append(e[i]);
+    }
+    return output.toString();
+  }
+}
@@ -1,8 +1,9 @@
 package net.agmodel.metbroker_common.weatherData;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.Locale;
 import java.util.Set;
 
@@ -28,12 +29,34 @@ import net.agmodel.metbroker_common.physical.Interval;
 * @author Matthew Laurenson
 */
 abstract public class MetRequest implements ServerRequest {
+  // The value computed for the baseline class. Pinned because both the MetElementSet
+  // requested and the phase timing methods change the computed value.
+  private static final long serialVersionUID = 4851729195349457340L;
+
+  /**
+  * The serial form is the one requested had as a boolean[] indexed by {@link MetElement#ord};
+  * see writeObject.
+  */
+  private static final ObjectStreamField[] serialPersistentFields = {
+    new ObjectStreamField("dateExtremes", Interval.class),
+    new ObjectStreamField("resolution", MetDuration.class),
+    new ObjectStreamField("summarise", Boolean.TYPE),
+    new ObjectStreamField("interpolate", Boolean.TYPE),
+    new ObjectStreamField("requested", boolean[].class),
+    new ObjectStreamField("processingCommenced", Long.TYPE),
+    new ObjectStreamField("locale", Locale.class)
+  };
+
   private Interval dateExtremes;
   private MetDuration resolution;
   private boolean summarise;
   private boolean interpolate;
-  private boolean[] requested;
+  private MetElementSet requested;
   private long processingCommenced;
+  // Timing state stays on the server and is not part of the serial form.
+  private transient long commencedNanos;
+  private transient long[] phaseNanos;
+  private transient long[] phaseStarted;
   private Locale locale;
 
 
@@ -70,11 +93,7 @@ abstract public class MetRequest implements ServerRequest {
     this.summarise=summarise;
     this.interpolate=interpolate;
     this.locale = locale;
-    requested = new boolean[MetElement.size()];
-    Arrays.fill(requested,false);
-    Iterator i=requestedElements.iterator();
-    while (i.hasNext())
-      requested[((MetElement) i.next()).ord]=true;
+    requested = MetElementSet.of(requestedElements);
   }
   
   /**
@@ -94,11 +113,7 @@ abstract public class MetRequest implements ServerRequest {
      this.summarise=summarise;
      this.interpolate=interpolate;
      this.locale = Locale.getDefault();
-     requested = new boolean[MetElement.size()];
-     Arrays.fill(requested,false);
-     Iterator i=requestedElements.iterator();
-     while (i.hasNext())
-       requested[((MetElement) i.next()).ord]=true;
+     requested = MetElementSet.of(requestedElements);
    }
 
   /**
@@ -141,7 +156,7 @@ abstract public class MetRequest implements ServerRequest {
   * @return true if the request includes the element, false otherwise
   */
   public boolean containsMetElement(MetElement aMetElement) {
-    return requested[aMetElement.ord];
+    return requested.contains(aMetElement);
   }
 
   /**
@@ -158,14 +173,46 @@ abstract public class MetRequest implements ServerRequest {
   * @return an array of requested elements
   */
   public MetElement[] getRequested() {
-    Set result=new HashSet(MetElement.size());
-    MetElement m=MetElement.first();
-    for (int i=0;i<requested.length;i++) {
-      if (requested[i])
-        result.add(m);
-      m=m.next();
-    }
-    return (MetElement[]) result.toArray(new MetElement[0]);
+    return requested.toArray();
+  }
+
+  /**
+  * Gets all the meteorological elements requested as an immutable set.<br>
+  * Use this rather than {@link #getRequested()} to compare the elements of two requests.
+  * @return the set of requested elements
+  */
+  public MetElementSet getRequestedElements() {
+    return requested;
+  }
+
+  /**
+  * Gets the part of the request which says <u>where</u> the data is to come from,
+  * e.g. the station of a StationMetRequest or the area of a SpatialMetRequest.<br>
+  * Descendants should override this to return an immutable value with equals and hashCode.
+  * The default returns null, so a request which doesn't override it has no {@link #getKey() key}.
+  *
+  * @return the location part of the request, or null
+  */
+  protected Object getLocationKey() {
+    return null;
+  }
+
+  /**
+  * Gets a canonical key for the request.<br>
+  * Requests with equal keys ask for exactly the same data, so MetBroker can
+  * share one driver call or cached result between them.
+  * The key is a snapshot; later calls to setters are not reflected in it.
+  * A request without a {@link #getLocationKey() location key} has no key, and MetBroker
+  * neither caches its result nor shares a driver call with it.
+  *
+  * @return the key, or null if the request has no location key
+  */
+  public MetRequestKey getKey() {
+    Object location=getLocationKey();
+    if (location==null)
+      return null;
+    return new MetRequestKey(getClass(), location, dateExtremes, resolution,
+        requested, summarise, interpolate, locale);
   }
 
   /**
@@ -186,6 +233,9 @@ abstract public class MetRequest implements ServerRequest {
   */
   public void setProcessingCommenced() {
     processingCommenced=System.currentTimeMillis();
+    commencedNanos=System.nanoTime();
+    phaseNanos=null;
+    phaseStarted=null;
   }
 
   /**
@@ -199,6 +249,65 @@ abstract public class MetRequest implements ServerRequest {
     return new Duration(System.currentTimeMillis()-processingCommenced, DurationUnit.MILLISECOND);
   }
 
+  /**
+  * Returns the elapsed time since the last call to setProcessingCommenced without allocating.<br>
+  * Measured with System.nanoTime(), so unaffected by changes to the wall clock.
+  *
+  * @return the elapsed time in nanoseconds
+  */
+  public long getElapsedNanos() {
+    return System.nanoTime()-commencedNanos;
+  }
+
+  /**
+  * Marks the start of a processing phase.<br>
+  * Called by MetBroker; a phase may be entered more than once, e.g. once per driver chunk,
+  * and the times are summed.
+  *
+  * @param phase the phase being started
+  */
+  public void startPhase(RequestPhase phase) {
+    if (phaseStarted==null) {
+      phaseStarted=new long[RequestPhase.values().length];
+      phaseNanos=new long[phaseStarted.length];
+    }
+    phaseStarted[phase.ordinal()]=System.nanoTime();
+  }
+
+  /**
+  * Marks the end of a processing phase started with {@link #startPhase(RequestPhase)}.<br>
+  * Ending a phase which was not started has no effect.
+  *
+  * @param phase the phase being ended
+  */
+  public void endPhase(RequestPhase phase) {
+    if (phaseStarted==null || phaseStarted[phase.ordinal()]==0)
+      return;
+    phaseNanos[phase.ordinal()]+=System.nanoTime()-phaseStarted[phase.ordinal()];
+    phaseStarted[phase.ordinal()]=0;
+  }
+
+  /**
+  * Gets the time spent so far in a phase.
+  *
+  * @param phase the phase
+  * @return nanoseconds, 0 if the phase has not been entered since setProcessingCommenced
+  */
+  public long getPhaseNanos(RequestPhase phase) {
+    return phaseNanos==null ? 0 : phaseNanos[phase.ordinal()];
+  }
+
+  /**
+  * Gets a breakdown of the time spent on this request so far.<br>
+  * Called by MetBroker just before it returns the query results, alongside {@link #getElapsedTime()}.
+  *
+  * @return a snapshot of the phase timings
+  */
+  public RequestTimings getTimings() {
+    long[] phases=phaseNanos==null ? new long[RequestPhase.values().length] : phaseNanos.clone();
+    return new RequestTimings(getElapsedNanos(), phases);
+  }
+
   /**
   * Gets whether the query requests summarisation.<br>
   *
@@ -242,15 +351,38 @@ abstract public class MetRequest implements ServerRequest {
     StringBuffer output=new StringBuffer(50);
     output.append("\n"+getClass().getName()+"\n");
     output.append("\t"+this.getDateExtremes()+"\n\telements");
-    MetElement element=MetElement.first();
-    for (int i=0;i<requested.length;i++) {
-      if (requested[i])
-        output.append("\t"+element);
-      element=element.next();
-    }
+    for (MetElement m : requested)
+      output.append("\t"+m);
     output.append("\n\tresolution\t"+getResolution()+"\n");
     output.append("\tSummarise\t"+summarise+"\t");
     output.append("Interpolate\t"+interpolate+"\n");
     return output.toString();
   }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    boolean[] flags=new boolean[MetElement.size()];
+    for (int i=requested.nextOrdinal(0); i>=0 && i<flags.length; i=requested.nextOrdinal(i+1))
+      flags[i]=true;
+    ObjectOutputStream.PutField fields=out.putFields();
+    fields.put("dateExtremes",dateExtremes);
+    fields.put("resolution",resolution);
+    fields.put("summarise",summarise);
+    fields.put("interpolate",interpolate);
+    fields.put("requested",flags);
+    fields.put("processingCommenced",processingCommenced);
+    fields.put("locale",locale);
+    out.writeFields();
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields=in.readFields();
+    dateExtremes=(Interval) fields.get("dateExtremes",null);
+    resolution=(MetDuration) fields.get("resolution",null);
+    summarise=fields.get("summarise",false);
+    interpolate=fields.get("interpolate",false);
+    processingCommenced=fields.get("processingCommenced",0L);
+    locale=(Locale) fields.get("locale",null);
+    boolean[] flags=(boolean[]) fields.get("requested",null);
+    requested=MetElementSet.of(flags==null ? new boolean[0] : flags);
+  }
 }
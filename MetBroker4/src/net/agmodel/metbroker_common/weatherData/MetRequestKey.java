@@ -0,0 +1,158 @@
+package net.agmodel.metbroker_common.weatherData;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+import net.agmodel.metbroker_common.physical.Interval;
+
+/**
+* A canonical, hashable summary of everything that decides the result of a {@link MetRequest}.<br>
+* Two requests with equal keys ask for the same data: same kind of request, same station or area,
+* same dateExtremes, resolution, elements, summarise and interpolate flags, and locale.
+* MetBroker uses keys to share one driver call between identical concurrent requests
+* and to look up cached results.<br>
+* Keys are immutable and their hash code is computed once.
+* Obtain one with {@link MetRequest#getKey()}.
+*/
+public final class MetRequestKey implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final Class<?> requestClass;
+  private final Object location;
+  private final long start;
+  private final long end;
+  private final MetDuration resolution;
+  private final MetElementSet elements;
+  private final boolean summarise;
+  private final boolean interpolate;
+  private final Locale locale;
+  private final int hash;
+
+  MetRequestKey(Class<?> requestClass, Object location, Interval dateExtremes,
+      MetDuration resolution, MetElementSet elements, boolean summarise,
+      boolean interpolate, Locale locale) {
+    this.requestClass = requestClass;
+    this.location = location;
+    this.start = dateExtremes == null ? Long.MIN_VALUE : dateExtremes.getStartMillis();
+    this.end = dateExtremes == null ? Long.MIN_VALUE : dateExtremes.getEndMillis();
+    this.resolution = resolution;
+    this.elements = elements;
+    this.summarise = summarise;
+    this.interpolate = interpolate;
+    this.locale = locale;
+    int h = requestClass.hashCode();
+    h = h * 31 + (location == null ? 0 : location.hashCode());
+    h = h * 31 + (int) (start ^ (start >>> 32));
+    h = h * 31 + (int) (end ^ (end >>> 32));
+    h = h * 31 + (resolution == null ? 0 : resolution.hashCode());
+    h = h * 31 + elements.hashCode();
+    h = h * 31 + (summarise ? 1 : 0);
+    h = h * 31 + (interpolate ? 1 : 0);
+    h = h * 31 + (locale == null ? 0 : locale.hashCode());
+    this.hash = h;
+  }
+
+  /**
+  * Gets the class of the request, e.g. StationMetRequest
+  * @return the request class
+  */
+  public Class<?> getRequestClass() {
+    return requestClass;
+  }
+
+  /**
+  * Gets the station or area the request is for
+  * @return the value of {@link MetRequest#getLocationKey()}
+  */
+  public Object getLocationKey() {
+    return location;
+  }
+
+  /**
+  * Gets the start of dateExtremes
+  * @return milliseconds since the epoch
+  */
+  public long getStartMillis() {
+    return start;
+  }
+
+  /**
+  * Gets the end of dateExtremes
+  * @return milliseconds since the epoch
+  */
+  public long getEndMillis() {
+    return end;
+  }
+
+  /**
+  * Gets the requested resolution
+  * @return the resolution
+  */
+  public MetDuration getResolution() {
+    return resolution;
+  }
+
+  /**
+  * Gets the requested elements
+  * @return the element set
+  */
+  public MetElementSet getElements() {
+    return elements;
+  }
+
+  /**
+  * Gets whether summarising was requested
+  * @return the summarise flag
+  */
+  public boolean shouldSummarise() {
+    return summarise;
+  }
+
+  /**
+  * Gets whether interpolation was requested
+  * @return the interpolate flag
+  */
+  public boolean shouldInterpolate() {
+    return interpolate;
+  }
+
+  /**
+  * Gets the locale of the request
+  * @return the locale
+  */
+  public Locale getLocale() {
+    return locale;
+  }
+
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof MetRequestKey))
+      return false;
+    MetRequestKey k = (MetRequestKey) o;
+    return hash == k.hash
+        && start == k.start
+        && end == k.end
+        && summarise == k.summarise
+        && interpolate == k.interpolate
+        && requestClass == k.requestClass
+        && equal(location, k.location)
+        && equal(resolution, k.resolution)
+        && elements.equals(k.elements)
+        && equal(locale, k.locale);
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  public int hashCode() {
+    return hash;
+  }
+
+  public String toString() {
+    return requestClass.getName() + "[" + location + ", " + start + "-" + end
+        + ", " + resolution + ", " + elements + ", summarise=" + summarise
+        + ", interpolate=" + interpolate + ", " + locale + "]";
+  }
+}
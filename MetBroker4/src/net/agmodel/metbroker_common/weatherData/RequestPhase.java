@@ -0,0 +1,21 @@
+package net.agmodel.metbroker_common.weatherData;
+
+/**
+* The stages MetBroker goes through to answer a {@link MetRequest}.<br>
+* MetBroker times each stage with {@link MetRequest#startPhase(RequestPhase)} and
+* {@link MetRequest#endPhase(RequestPhase)} so that slow requests can be traced to the stage responsible.
+*/
+public enum RequestPhase {
+  /** looking the request up in the result cache */
+  CACHE_LOOKUP,
+  /** querying the driver for data not in the cache */
+  DRIVER_QUERY,
+  /** summarising higher resolution data to the requested resolution */
+  SUMMARISE,
+  /** filling missing values by temporal or spatial interpolation */
+  INTERPOLATE,
+  /** translating names and labels through the dictionary */
+  LOCALISE,
+  /** producing the response */
+  RENDER
+}
@@ -0,0 +1,61 @@
+package net.agmodel.metbroker_common.weatherData;
+
+import java.io.Serializable;
+
+/**
+* A breakdown of where the server spent its time on one {@link MetRequest}.<br>
+* Obtained from {@link MetRequest#getTimings()} just before the results are returned,
+* alongside the overall server processing time.
+* Times are in nanoseconds; the phases need not add up to the total because
+* some work falls outside any phase.
+*/
+public final class RequestTimings implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final long totalNanos;
+  private final long[] phaseNanos;
+
+  RequestTimings(long totalNanos, long[] phaseNanos) {
+    this.totalNanos = totalNanos;
+    this.phaseNanos = phaseNanos;
+  }
+
+  /**
+  * Gets the time from setProcessingCommenced until the timings were taken
+  * @return nanoseconds
+  */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /**
+  * Gets the time spent in one phase, summed over every time it was entered
+  * @param phase the phase
+  * @return nanoseconds, 0 if the phase was not entered
+  */
+  public long getNanos(RequestPhase phase) {
+    return phaseNanos[phase.ordinal()];
+  }
+
+  /**
+  * Gets the part of the total not spent in any phase
+  * @return nanoseconds
+  */
+  public long getUnaccountedNanos() {
+    long t = totalNanos;
+    for (int i = 0; i < phaseNanos.length; i++)
+      t -= phaseNanos[i];
+    return Math.max(0, t);
+  }
+
+  public String toString() {
+    StringBuffer output = new StringBuffer(100);
+    output.append("total ").append(totalNanos / 1000).append("us");
+    RequestPhase[] phases = RequestPhase.values();
+    for (int i = 0; i < phases.length; i++) {
+      if (phaseNanos[i] != 0)
+        output.append(", ").append(phases[i]).append(' ').append(phaseNanos[i] / 1000).append("us");
+    }
+    return output.toString();
+  }
+}